@@ -54,6 +54,10 @@ CREATE TABLE products (
     stock INT NOT NULL DEFAULT 0,
     featured BOOL NOT NULL DEFAULT 0,
     PRIMARY KEY (product_id),
+    INDEX idx_products_category_price (category_id, price),
+    INDEX idx_products_subcategory_price (subcategory, price),
+    INDEX idx_products_price (price),
+    INDEX idx_products_name (name),
     FOREIGN KEY (category_id) REFERENCES categories(category_id)
 );
 
@@ -87,11 +91,31 @@ CREATE TABLE shopping_cart (
 	user_id INT NOT NULL,
     product_id INT NOT NULL,
     quantity INT NOT NULL DEFAULT 1,
+    -- bumped by every cart write; the expiry sweeper deletes carts idle past a TTL
+    last_modified TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
     PRIMARY KEY (user_id, product_id),
     FOREIGN KEY (user_id) REFERENCES users(user_id),
     FOREIGN KEY (product_id) REFERENCES products(product_id)
 );
 
+CREATE TABLE promotions (
+    promotion_id INT NOT NULL AUTO_INCREMENT,
+    name VARCHAR(100) NOT NULL,
+    -- scope: the most specific of product, category and subcategory that is set; none = whole cart
+    product_id INT NULL,
+    category_id INT NULL,
+    subcategory VARCHAR(20) NULL,
+    -- only applies when the cart subtotal (before discounts) reaches this amount
+    min_cart_total DECIMAL(10, 2) NULL,
+    -- fraction of the line taken off: 0.1000 = 10%
+    discount_percent DECIMAL(5, 4) NOT NULL,
+    starts_at DATETIME NULL,
+    ends_at DATETIME NULL,
+    PRIMARY KEY (promotion_id),
+    FOREIGN KEY (product_id) REFERENCES products(product_id),
+    FOREIGN KEY (category_id) REFERENCES categories(category_id)
+);
+
 
 /*  INSERT Users  */
 INSERT INTO users (username, hashed_password, role) 
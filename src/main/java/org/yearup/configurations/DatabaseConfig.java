@@ -6,7 +6,15 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.yearup.data.*;
+import org.yearup.data.memory.InMemoryCategoryDao;
+import org.yearup.data.memory.InMemoryProductDao;
+import org.yearup.data.memory.ProductFacetIndex;
+import org.yearup.data.memory.ProductTextIndex;
+import org.yearup.data.memory.WriteBehindShoppingCartDao;
 import org.yearup.data.mysql.*;
+import org.yearup.pricing.PromotionEngine;
+
+import java.time.Duration;
 
 @Configuration
 public class DatabaseConfig
@@ -19,15 +27,119 @@ public class DatabaseConfig
     }
 
     @Bean
-    public ShoppingCartDao shoppingCartDao() //register ShoppingCartDao as a Spring bean so ShoppingCartController can be created
+    public ShoppingCartDao shoppingCartDao(@Value("${cart.write-behind.enabled:false}") boolean writeBehind,
+                                           @Value("${cart.write-behind.flush-millis:200}") long flushMillis,
+                                           @Value("${cart-cache.max-size:0}") int cartCacheSize,
+                                           @Value("${cart-versions.max-size:100000}") int cartVersionsSize,
+                                           NotifyingProductDao productDao,
+                                           PromotionEngine promotionEngine,
+                                           CartEventHub cartEventHub) //register ShoppingCartDao as a Spring bean so ShoppingCartController can be created
+    {
+        MySqlShoppingCartDao mySqlShoppingCartDao = new MySqlShoppingCartDao(basicDataSource);
+        ShoppingCartDao shoppingCartDao = mySqlShoppingCartDao;
+
+        // keep active carts in memory and write them to MySQL in batches; close() flushes on shutdown
+        if (writeBehind)
+            shoppingCartDao = new WriteBehindShoppingCartDao(mySqlShoppingCartDao, productDao, flushMillis);
+
+        // cache the computed cart per user; product writes only drop the carts holding that product
+        if (cartCacheSize > 0)
+        {
+            CachingShoppingCartDao cachingShoppingCartDao = new CachingShoppingCartDao(shoppingCartDao, cartCacheSize);
+            productDao.addListener(cachingShoppingCartDao);
+            shoppingCartDao = cachingShoppingCartDao;
+        }
+
+        // every cart handed out carries the current promotion discounts
+        shoppingCartDao = new PromotingShoppingCartDao(shoppingCartDao, promotionEngine);
+
+        // number every change, so clients can apply delta responses and cart events in order
+        shoppingCartDao = new VersioningShoppingCartDao(shoppingCartDao, new CartVersions(cartVersionsSize));
+
+        // push each changed cart to the user's open GET /cart/stream connections
+        return new PublishingShoppingCartDao(shoppingCartDao, cartEventHub);
+    }
+
+    @Bean
+    public CartEventHub cartEventHub(@Value("${cart-stream.max-per-user:5}") int maxPerUser,
+                                     @Value("${cart-stream.dispatch-threads:2}") int dispatchThreads,
+                                     @Value("${cart-stream.heartbeat-seconds:25}") long heartbeatSeconds,
+                                     @Value("${cart-stream.send-timeout-seconds:10}") long sendTimeoutSeconds)
     {
-        return new MySqlShoppingCartDao(basicDataSource);
+        CartEventHub hub = new CartEventHub(maxPerUser, dispatchThreads, sendTimeoutSeconds * 1000);
+        hub.startHeartbeats(heartbeatSeconds);
+        return hub;
+    }
+
+    @Bean
+    public CartExpirySweeper cartExpirySweeper(ShoppingCartDao shoppingCartDao,
+                                               @Value("${cart-expiry.enabled:false}") boolean enabled,
+                                               @Value("${cart-expiry.ttl-hours:720}") long ttlHours,
+                                               @Value("${cart-expiry.batch-size:200}") int batchSize,
+                                               @Value("${cart-expiry.max-batches-per-pass:25}") int maxBatches,
+                                               @Value("${cart-expiry.interval-minutes:10}") long intervalMinutes)
+    {
+        // deletes abandoned carts in small batches; goes through shoppingCartDao so cached carts are dropped too
+        CartExpirySweeper sweeper = new CartExpirySweeper(shoppingCartDao, Duration.ofHours(ttlHours), batchSize, maxBatches);
+        if (enabled)
+            sweeper.start(Duration.ofMinutes(intervalMinutes));
+        return sweeper;
+    }
+
+    @Bean
+    public FlashSaleStock flashSaleStock(NotifyingProductDao productDao,
+                                         @Value("${flash-sale.stripes:16}") int stripes,
+                                         @Value("${flash-sale.max-concurrent-checkouts:64}") int maxConcurrent,
+                                         @Value("${flash-sale.admission-wait-millis:200}") long admissionWaitMillis,
+                                         @Value("${flash-sale.reconcile-millis:500}") long reconcileMillis)
+    {
+        // stock of flash-sale products is held in memory and written back in batches; close() writes the rest
+        FlashSaleStock flashSaleStock = new FlashSaleStock(new MySqlStockDao(basicDataSource), productDao::stockChanged,
+                stripes, maxConcurrent, admissionWaitMillis);
+        flashSaleStock.startReconciling(reconcileMillis);
+        return flashSaleStock;
+    }
+
+    @Bean
+    public CheckoutPipeline checkoutPipeline(OrdersDao ordersDao,
+                                             ShoppingCartDao shoppingCartDao,
+                                             FlashSaleStock flashSaleStock,
+                                             NotifyingProductDao productDao,
+                                             @Value("${checkout.async.enabled:false}") boolean enabled,
+                                             @Value("${checkout.async.workers:2}") int workers,
+                                             @Value("${checkout.async.batch-size:50}") int batchSize,
+                                             @Value("${checkout.async.max-queued:5000}") int maxQueued,
+                                             @Value("${checkout.async.max-statuses:20000}") int maxStatuses)
+    {
+        // queued checkouts are placed by a few workers, many orders per transaction
+        CheckoutPipeline pipeline = new CheckoutPipeline(ordersDao, shoppingCartDao, flashSaleStock, productDao::stockChanged,
+                workers, batchSize, maxQueued, maxStatuses);
+        if (enabled)
+            pipeline.start();
+        return pipeline;
+    }
+
+    // one store for synchronous and queued checkouts: it holds the Order or the CheckoutStatus,
+    // so a key is only ever run once whichever mode its requests ask for
+    @Bean
+    public IdempotencyStore<Object> checkoutResults(@Value("${idempotency.max-keys:10000}") int maxKeys,
+                                                    @Value("${idempotency.ttl-hours:24}") long ttlHours,
+                                                    @Value("${idempotency.wait-seconds:30}") long waitSeconds)
+    {
+        return new IdempotencyStore<>(maxKeys, Duration.ofHours(ttlHours), waitSeconds * 1000);
+    }
+
+    @Bean
+    public PromotionEngine promotionEngine(@Value("${promotions.refresh-seconds:60}") long refreshSeconds)
+    {
+        return new PromotionEngine(new MySqlPromotionDao(basicDataSource), refreshSeconds);
     }
     @Bean
     public CategoryDao categoryDao()
     {
-        // Used the existing MySqlCategoriesDao implementation (no new DAO created)
-        return new MySqlCategoryDao(basicDataSource);
+        // MySqlCategoryDao behind a versioned in-memory snapshot, so category reads never need a
+        // connection; the snapshot version is the categories' ETag
+        return new InMemoryCategoryDao(new MySqlCategoryDao(basicDataSource));
     }
     //Constructor that initializes the BasicDataSource with database credentials
     @Autowired
@@ -41,9 +153,48 @@ public class DatabaseConfig
         basicDataSource.setPassword(password);
     }
     @Bean
-    public ProductDao productDao()
+    public ProductCache productCache(@Value("${catalog.in-memory:false}") boolean inMemoryCatalog,
+                                     @Value("${product-cache.max-size:0}") int maxSize,
+                                     @Value("${product-cache.ttl-seconds:300}") long ttlSeconds)
+    {
+        // the in-memory catalog already answers getById, so the cache is only put in front of MySQL
+        // without it; turned off otherwise, so /products/cache/stats does not report an unused cache
+        return new ProductCache(inMemoryCatalog ? 0 : maxSize, ttlSeconds);
+    }
+
+    @Bean
+    public NotifyingProductDao productDao(@Value("${catalog.in-memory:false}") boolean inMemoryCatalog, ProductCache productCache)
+    {
+        ProductDao productDao = new MySqlProductDao(basicDataSource);
+
+        // serve product reads from an in-memory snapshot; writes still go to MySQL first
+        if (inMemoryCatalog)
+            productDao = new InMemoryProductDao(productDao);
+
+        // without the snapshot, at least keep getById (cart existence checks, detail pages) off the database
+        else if (productCache.isEnabled())
+            productDao = new CachingProductDao(productDao, productCache);
+
+        // lets the indexes below follow product writes
+        return new NotifyingProductDao(productDao);
+    }
+
+    @Bean
+    public ProductTextIndex productTextIndex(NotifyingProductDao productDao)
+    {
+        // keyword search index, loaded on the first query and then updated per product write
+        ProductTextIndex index = new ProductTextIndex(() -> productDao.search(null, null, null, null));
+        productDao.addListener(index);
+        return index;
+    }
+
+    @Bean
+    public ProductFacetIndex productFacetIndex(NotifyingProductDao productDao)
     {
-        return new MySqlProductDao(basicDataSource);
+        // facet counts, rebuilt on the first request after a product write
+        ProductFacetIndex index = new ProductFacetIndex(() -> productDao.search(null, null, null, null));
+        productDao.addListener(index);
+        return index;
     }
 
     @Bean
@@ -2,6 +2,9 @@ package org.yearup.controllers;
 
 import javax.validation.Valid;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -13,31 +16,48 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 
+import org.yearup.models.CartOperation;
 import org.yearup.models.Profile;
+import org.yearup.data.ProductDao;
 import org.yearup.data.ProfileDao;
+import org.yearup.data.ShoppingCartDao;
 import org.yearup.data.UserDao;
 import org.yearup.models.authentication.LoginDto;
 import org.yearup.models.authentication.LoginResponseDto;
 import org.yearup.models.authentication.RegisterUserDto;
 import org.yearup.models.User;
+import org.yearup.security.GuestCartCodec;
 import org.yearup.security.jwt.JWTFilter;
 import org.yearup.security.jwt.TokenProvider;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 @RestController
 @CrossOrigin
 @PreAuthorize("permitAll()")
 public class AuthenticationController {
 
+    private final Logger logger = LoggerFactory.getLogger(AuthenticationController.class);
+
     private final TokenProvider tokenProvider;
     private final AuthenticationManagerBuilder authenticationManagerBuilder;
     private UserDao userDao;
     private ProfileDao profileDao;
+    private final GuestCartCodec guestCartCodec;
+    private final ShoppingCartDao shoppingCartDao;
+    private final ProductDao productDao;
 
-    public AuthenticationController(TokenProvider tokenProvider, AuthenticationManagerBuilder authenticationManagerBuilder, UserDao userDao, ProfileDao profileDao) {
+    public AuthenticationController(TokenProvider tokenProvider, AuthenticationManagerBuilder authenticationManagerBuilder, UserDao userDao, ProfileDao profileDao,
+                                    GuestCartCodec guestCartCodec, @Qualifier("shoppingCartDao") ShoppingCartDao shoppingCartDao, ProductDao productDao) {
         this.tokenProvider = tokenProvider;
         this.authenticationManagerBuilder = authenticationManagerBuilder;
         this.userDao = userDao;
         this.profileDao = profileDao;
+        this.guestCartCodec = guestCartCodec;
+        this.shoppingCartDao = shoppingCartDao;
+        this.productDao = productDao;
     }
 
     @RequestMapping(value = "/login", method = RequestMethod.POST)
@@ -54,6 +74,7 @@ public class AuthenticationController {
         {
             User user = userDao.getByUserName(loginDto.getUsername());
             if (user == null) throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+            mergeGuestCart(user.getId(), loginDto.getGuestCart());
             HttpHeaders httpHeaders = new HttpHeaders();
             httpHeaders.add(JWTFilter.AUTHORIZATION_HEADER, "Bearer " + jwt);
             return new ResponseEntity<>(new LoginResponseDto(jwt, user), httpHeaders, HttpStatus.OK);
@@ -65,6 +86,36 @@ public class AuthenticationController {
         }
     }
 
+    // Moves the products of a guest cart token into the user's cart as one batched cart change.
+    // Each line is raised to the guest quantity ("max"), never added on top, so a retried login or a
+    // token sent twice leaves the cart as the first merge did.
+    // Nothing here may block the login: a bad or expired token is skipped, and so is the merge when
+    // the cart cannot be written (the client still holds the token and the user gets the JWT).
+    private void mergeGuestCart(int userId, String token) {
+        Map<Integer, Integer> quantities;
+        try {
+            quantities = guestCartCodec.decode(token);
+        }
+        catch (IllegalArgumentException ex) {
+            logger.info("Ignoring guest cart on login: " + ex.getMessage());
+            return;
+        }
+
+        try {
+            // products deleted since they were put in the guest cart are left out
+            quantities.keySet().retainAll(productDao.getByIds(quantities.keySet()).keySet());
+            if (quantities.isEmpty())
+                return;
+
+            List<CartOperation> operations = new ArrayList<>();
+            quantities.forEach((productId, quantity) -> operations.add(new CartOperation("max", productId, quantity)));
+            shoppingCartDao.applyOperations(userId, operations);
+        }
+        catch (RuntimeException ex) {
+            logger.warn("Could not merge the guest cart of user " + userId + " on login: " + ex.getMessage());
+        }
+    }
+
     @ResponseStatus(HttpStatus.CREATED)
     @RequestMapping(value = "/register", method = RequestMethod.POST)
     public ResponseEntity<User> register(@Valid @RequestBody RegisterUserDto newUser) {
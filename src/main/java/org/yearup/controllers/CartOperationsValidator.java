@@ -0,0 +1,52 @@
+package org.yearup.controllers;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.yearup.data.ProductDao;
+import org.yearup.models.CartOperation;
+
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+// Checks the body of PATCH /cart and PATCH /guest-cart the same way:
+// 400 for an empty or too long list or a bad operation, 404 naming the products that do not exist
+@Component
+public class CartOperationsValidator {
+
+    // upper bound for one PATCH request
+    public static final int MAX_OPERATIONS = 100;
+
+    private final ProductDao productDao;
+
+    public CartOperationsValidator(ProductDao productDao) {
+        this.productDao = productDao;
+    }
+
+    public void validate(List<CartOperation> operations) {
+        if (operations == null || operations.isEmpty())
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At least one operation is required.");
+        if (operations.size() > MAX_OPERATIONS)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + MAX_OPERATIONS + " operations per request.");
+
+        try {
+            for (CartOperation operation : operations)
+                operation.validate();
+        }
+        catch (IllegalArgumentException ex) {
+            // unknown op or a bad quantity
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
+
+        // every product id checked with one batched lookup instead of one per line
+        Set<Integer> productIds = operations.stream()
+                .map(CartOperation::getProductId)
+                .collect(Collectors.toSet());
+        Set<Integer> missing = new TreeSet<>(productIds);
+        missing.removeAll(productDao.getByIds(productIds).keySet());
+        if (!missing.isEmpty())
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Products not found: " + missing);
+    }
+}
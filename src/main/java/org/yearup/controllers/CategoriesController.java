@@ -1,16 +1,26 @@
 package org.yearup.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.context.request.WebRequest;
 import org.yearup.data.CategoryDao;
+import org.yearup.data.ProductCursor;
 import org.yearup.data.ProductDao;
+import org.yearup.data.ProductSort;
 import org.yearup.models.Category;
 import org.yearup.models.Product;
+import org.yearup.models.ProductField;
 
 import java.util.List;
+import java.util.Set;
 
 // Marks this class as a REST controller (returns JSON instead of views)
 @RestController
@@ -19,55 +29,119 @@ import java.util.List;
 @RequestMapping("/categories")
 
 // Allows the front-end (different origin/port) to call these endpoints
-@CrossOrigin
+// (and read the paging header)
+@CrossOrigin(exposedHeaders = ProductsController.NEXT_CURSOR_HEADER)
 public class CategoriesController
 {
-    // DAO used to access category data in the database
+    // DAO used to access category data; its version is the ETag of category responses
     private final CategoryDao categoryDao;
 
     // DAO used to access product data (needed for /categories/{id}/products)
     private final ProductDao productDao;
 
+    // Writes products one at a time to streamed responses
+    private final ObjectWriter productWriter;
+
     // Constructor injection: Spring provides the correct DAO implementations
     @Autowired
-    public CategoriesController(CategoryDao categoryDao, ProductDao productDao)
+    public CategoriesController(
+            // the configured category DAO (the in-memory snapshot in front of MySQL), not the MySQL one itself
+            @Qualifier("categoryDao") CategoryDao categoryDao,
+            ProductDao productDao,
+            ObjectMapper objectMapper)
     {
         this.categoryDao = categoryDao;
         this.productDao = productDao;
+        this.productWriter = ProductsController.productWriter(objectMapper);
     }
 
     // GET /categories
     // Returns the full list of categories
+    // The ETag is the category version: a client sending it back in If-None-Match gets 304 Not Modified
+    // (read before the categories, so a change in between only costs the client one more full response)
     @GetMapping
-    public List<Category> getAll()
+    public List<Category> getAll(WebRequest request)
     {
+        long version = categoryDao.getVersion();
+        if (notModified(request, version))
+            return null;
+
         return categoryDao.getAllCategories();
     }
 
     // GET /categories/{id}
     // Returns one category by id
     @GetMapping("/{id}")
-    public Category getById(@PathVariable int id)
+    public Category getById(@PathVariable int id, WebRequest request)
     {
+        long version = categoryDao.getVersion();
+
         // Look up category by id
         Category category = categoryDao.getById(id);
 
         // FIXED: If the category doesn't exist, return 404 Not Found.
         // This prevents returning null with a 200 OK, and matches expected REST behavior.
+        // Checked before the ETag, so a deleted category is never answered with 304
         if (category == null)
             throw new ResponseStatusException(HttpStatus.NOT_FOUND);
 
+        if (notModified(request, version))
+            return null;
+
         // Return the category if found
         return category;
     }
 
     // GET /categories/{categoryId}/products
     // Returns all products for a specific category
+    // Optional paging: sort (id, price or name), limit, after (cursor from X-Next-Cursor)
+    // Optional fields: comma separated properties to return (see GET /products)
     @GetMapping("/{categoryId}/products")
-    public List<Product> getProductsById(@PathVariable int categoryId)
+    public ResponseEntity<List<?>> getProductsById(
+            @PathVariable int categoryId,
+            @RequestParam(name="sort", required = false) String sort,
+            @RequestParam(name="limit", required = false) Integer limit,
+            @RequestParam(name="after", required = false) String after,
+            @RequestParam(name="fields", required = false) String fields)
+    {
+        // No paging or projection parameters: uses ProductDao to list every product in this category
+        if (sort == null && limit == null && after == null && fields == null)
+            return ResponseEntity.ok(productDao.listByCategoryId(categoryId));
+
+        try
+        {
+            ProductSort productSort = ProductSort.parse(sort);
+            Set<ProductField> productFields = ProductField.parse(fields);
+            return ProductsController.toResponse(productDao.search(categoryId, null, null, null,
+                    productSort, ProductCursor.decode(after, productSort), ProductsController.pageSize(limit),
+                    productFields), productFields);
+        }
+        catch (IllegalArgumentException ex)
+        {
+            // Unknown sort or field, or a bad/foreign cursor
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
+    }
+
+    // GET /categories/{categoryId}/products/stream
+    // Streams the products of a category row by row instead of building the whole list first
+    @GetMapping("/{categoryId}/products/stream")
+    public ResponseEntity<StreamingResponseBody> streamProductsById(
+            @PathVariable int categoryId,
+            @RequestParam(name="fields", required = false) String fields)
     {
-        // Uses ProductDao to list products in this category
-        return productDao.listByCategoryId(categoryId);
+        Set<ProductField> productFields;
+        try
+        {
+            productFields = ProductField.parse(fields);
+        }
+        catch (IllegalArgumentException ex)
+        {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
+
+        return ProductsController.streamJson(productWriter, productFields,
+                handler -> productDao.streamSearch(categoryId, null, null, null, productFields, handler));
     }
 
     // POST /categories (ADMIN only)
@@ -140,4 +214,10 @@ public class CategoriesController
 
         // No return body because we use 204 No Content
     }
+
+    // every category response of one version shares it as the ETag; without a version there is none
+    private static boolean notModified(WebRequest request, long version)
+    {
+        return version != 0 && request.checkNotModified("\"categories-" + version + "\"");
+    }
 }
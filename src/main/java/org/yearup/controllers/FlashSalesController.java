@@ -0,0 +1,71 @@
+package org.yearup.controllers;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.yearup.data.CheckoutConflictException;
+import org.yearup.data.FlashSaleStock;
+import org.yearup.models.FlashSaleStatus;
+
+import java.util.List;
+
+// Turns flash-sale mode on and off per product (Admin only). While a product is on sale its stock
+// lives in memory (see FlashSaleStock) and is written back to products.stock in batches.
+@RestController
+@RequestMapping("/flash-sales")
+@CrossOrigin
+@PreAuthorize("hasRole('ADMIN')")
+public class FlashSalesController {
+
+    private final FlashSaleStock flashSaleStock;
+
+    public FlashSalesController(FlashSaleStock flashSaleStock) {
+        this.flashSaleStock = flashSaleStock;
+    }
+
+    // GET /flash-sales
+    // Stock left, units sold and units not yet written back, per product on sale
+    @GetMapping
+    public List<FlashSaleStatus> getStatus() {
+        return flashSaleStock.getStatus();
+    }
+
+    // PUT /flash-sales/{productId}
+    // Puts the product on sale: its current stock moves into memory (409 while its last sale is still ending)
+    @PutMapping("/{productId}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void start(@PathVariable int productId) {
+        try {
+            if (!flashSaleStock.start(productId))
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+        }
+        catch (ResponseStatusException ex) {
+            throw ex;
+        }
+        catch (CheckoutConflictException ex) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, ex.getMessage());
+        }
+        catch (Exception ex) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Oops... our bad.");
+        }
+    }
+
+    // DELETE /flash-sales/{productId}
+    // Ends the sale: checkouts of the product are refused right away, and once the admitted ones finished and
+    // what was sold is written to products.stock the product is back to normal (GET shows it as ending until then)
+    @DeleteMapping("/{productId}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void stop(@PathVariable int productId) {
+        try {
+            if (!flashSaleStock.stop(productId))
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+        }
+        catch (ResponseStatusException ex) {
+            throw ex;
+        }
+        catch (Exception ex) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Oops... our bad.");
+        }
+    }
+}
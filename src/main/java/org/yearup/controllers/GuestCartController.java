@@ -0,0 +1,150 @@
+package org.yearup.controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.yearup.data.ProductDao;
+import org.yearup.models.CartOperation;
+import org.yearup.models.Product;
+import org.yearup.models.ShoppingCart;
+import org.yearup.models.ShoppingCartItem;
+import org.yearup.pricing.PromotionEngine;
+import org.yearup.security.GuestCartCodec;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Cart for shoppers who are not logged in. The cart lives in a signed token the client sends in the
+// X-Guest-Cart header; every response carries the updated token in the same header, and nothing is
+// stored on the server. POST /login with the token as "guestCart" moves it into the user's cart.
+@RestController
+@RequestMapping("/guest-cart")
+@CrossOrigin(exposedHeaders = GuestCartCodec.HEADER)
+@PreAuthorize("permitAll()")
+public class GuestCartController {
+
+    private final GuestCartCodec guestCartCodec;
+    private final ProductDao productDao;
+    private final PromotionEngine promotionEngine;
+
+    // same PATCH body checks as PATCH /cart
+    private final CartOperationsValidator cartOperationsValidator;
+
+    @Autowired
+    public GuestCartController(GuestCartCodec guestCartCodec, ProductDao productDao, PromotionEngine promotionEngine,
+                               CartOperationsValidator cartOperationsValidator) {
+        this.guestCartCodec = guestCartCodec;
+        this.productDao = productDao;
+        this.promotionEngine = promotionEngine;
+        this.cartOperationsValidator = cartOperationsValidator;
+    }
+
+    // GET /guest-cart
+    // Returns the priced cart held in the token (an empty cart without one)
+    @GetMapping("")
+    public ResponseEntity<ShoppingCart> getCart(@RequestHeader(value = GuestCartCodec.HEADER, required = false) String token) {
+        try {
+            return respond(guestCartCodec.decode(token));
+        }
+        catch (IllegalArgumentException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
+        catch (Exception ex) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Oops... our bad.");
+        }
+    }
+
+    // POST /guest-cart/products/{productId}
+    // Adds one of the product (or one more) to the guest cart
+    @PostMapping("/products/{productId}")
+    public ResponseEntity<ShoppingCart> addProductToCart(@PathVariable int productId,
+                                                         @RequestHeader(value = GuestCartCodec.HEADER, required = false) String token) {
+        try {
+            if (productDao.getById(productId) == null)
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+
+            Map<Integer, Integer> quantities = guestCartCodec.decode(token);
+            quantities.merge(productId, 1, Integer::sum);
+            return respond(quantities);
+        }
+        catch (ResponseStatusException ex) {
+            throw ex;
+        }
+        catch (IllegalArgumentException ex) {
+            // bad token, or the cart would exceed the token limits
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
+        catch (Exception ex) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Oops... our bad.");
+        }
+    }
+
+    // PATCH /guest-cart
+    // Same operations as PATCH /cart, applied to the guest cart
+    @PatchMapping("")
+    public ResponseEntity<ShoppingCart> updateCart(@RequestBody List<CartOperation> operations,
+                                                   @RequestHeader(value = GuestCartCodec.HEADER, required = false) String token) {
+        try {
+            cartOperationsValidator.validate(operations);
+
+            Map<Integer, Integer> quantities = guestCartCodec.decode(token);
+            for (CartOperation operation : operations)
+                operation.applyTo(quantities);
+            return respond(quantities);
+        }
+        catch (ResponseStatusException ex) {
+            throw ex;
+        }
+        catch (IllegalArgumentException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
+        catch (Exception ex) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Oops... our bad.");
+        }
+    }
+
+    // DELETE /guest-cart/products/{productId}
+    // Removes a single product from the guest cart
+    @DeleteMapping("/products/{productId}")
+    public ResponseEntity<ShoppingCart> removeProductFromCart(@PathVariable int productId,
+                                                              @RequestHeader(value = GuestCartCodec.HEADER, required = false) String token) {
+        try {
+            Map<Integer, Integer> quantities = guestCartCodec.decode(token);
+            quantities.remove(productId);
+            return respond(quantities);
+        }
+        catch (IllegalArgumentException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
+        catch (Exception ex) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Oops... our bad.");
+        }
+    }
+
+    // prices the cart with one product lookup and sends it back with a freshly signed token;
+    // products deleted since they were added are dropped from both
+    private ResponseEntity<ShoppingCart> respond(Map<Integer, Integer> quantities) {
+        Map<Integer, Product> products = productDao.getByIds(quantities.keySet());
+        quantities.keySet().retainAll(products.keySet());
+
+        Map<Integer, ShoppingCartItem> items = new HashMap<>();
+        quantities.forEach((productId, quantity) -> {
+            ShoppingCartItem item = new ShoppingCartItem();
+            item.setProduct(products.get(productId));
+            item.setQuantity(quantity);
+            items.put(productId, item);
+        });
+
+        ShoppingCart cart = new ShoppingCart();
+        cart.setItems(items);
+        promotionEngine.apply(cart);
+
+        return ResponseEntity.ok()
+                .header(GuestCartCodec.HEADER, guestCartCodec.encode(quantities))
+                .body(cart);
+    }
+}
@@ -1,18 +1,35 @@
 package org.yearup.controllers;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.yearup.data.CheckoutConflictException;
+import org.yearup.data.CheckoutPipeline;
+import org.yearup.data.FlashSaleStock;
+import org.yearup.data.IdempotencyConflictException;
+import org.yearup.data.IdempotencyStore;
+import org.yearup.data.InsufficientStockException;
 import org.yearup.data.OrdersDao;
+import org.yearup.data.ProductDao;
 import org.yearup.data.ShoppingCartDao;
 import org.yearup.data.UserDao;
+import org.yearup.models.CheckoutStatus;
 import org.yearup.models.Order;
+import org.yearup.models.OrderLineItem;
+import org.yearup.models.Product;
 import org.yearup.models.ShoppingCart;
+import org.yearup.models.StockShortage;
 import org.yearup.models.User;
 
+import java.net.URI;
 import java.security.Principal;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 // Marks this class as a REST controller (returns JSON responses)
 @RestController
@@ -24,6 +41,11 @@ import java.util.List;
 @CrossOrigin
 public class OrdersController {
 
+    private final Logger logger = LoggerFactory.getLogger(OrdersController.class);
+
+    // Longest Idempotency-Key accepted (clients usually send a UUID)
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+
     // DAO for reading and clearing the shopping cart
     private final ShoppingCartDao cartDao;
 
@@ -33,16 +55,38 @@ public class OrdersController {
     // DAO for creating orders and fetching order history/details
     private final OrdersDao ordersDao;
 
+    // DAO used to attach product data to order line items
+    private final ProductDao productDao;
+
+    // In-memory stock of flash-sale products, taken before checkout reaches the database
+    private final FlashSaleStock flashSaleStock;
+
+    // What checkouts sent with an Idempotency-Key produced, so a retried POST replays it: the order,
+    // or the checkout handle when the checkout was queued
+    private final IdempotencyStore<Object> checkoutResults;
+
+    // Queue and workers of asynchronous checkouts (only running when that mode is turned on)
+    private final CheckoutPipeline checkoutPipeline;
+
     // Constructor injection: Spring supplies the correct DAO implementations
     public OrdersController(
-            // FIXED: Forces Spring to inject the MySQL shopping cart DAO when multiple ShoppingCartDao beans exist
-            @Qualifier("mySqlShoppingCartDao") ShoppingCartDao cartDao,
+            // FIXED: Forces Spring to inject the configured shopping cart DAO when multiple ShoppingCartDao beans exist
+            // (the write-behind cart store when it is turned on, otherwise the MySQL one)
+            @Qualifier("shoppingCartDao") ShoppingCartDao cartDao,
             UserDao userDao,
-            OrdersDao ordersDao
+            OrdersDao ordersDao,
+            ProductDao productDao,
+            FlashSaleStock flashSaleStock,
+            IdempotencyStore<Object> checkoutResults,
+            CheckoutPipeline checkoutPipeline
     ) {
         this.cartDao = cartDao;
         this.userDao = userDao;
         this.ordersDao = ordersDao;
+        this.productDao = productDao;
+        this.flashSaleStock = flashSaleStock;
+        this.checkoutResults = checkoutResults;
+        this.checkoutPipeline = checkoutPipeline;
     }
 
     // GET /orders
@@ -89,17 +133,23 @@ public class OrdersController {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Order not found.");
         }
 
+        // Attach product data to every line with one batched lookup
+        attachProducts(order);
+
         // Return the order details as JSON
         return order;
     }
 
     // POST /orders
     // Creates a new order from the current user's cart (checkout)
+    // FIXED: Returns 201 Created with the order when checkout succeeds
+    // With ?async=true or "Prefer: respond-async" (and the checkout pipeline turned on) the checkout is
+    // only queued: 202 Accepted with its status, which GET /orders/{checkoutId}/status reports from then on
     @PostMapping
-
-    // FIXED: Returns 201 Created when checkout succeeds
-    @ResponseStatus(HttpStatus.CREATED)
-    public Order checkout(Principal principal) {
+    public ResponseEntity<Object> checkout(@RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                                           @RequestParam(defaultValue = "false") boolean async,
+                                           @RequestHeader(value = "Prefer", required = false) String prefer,
+                                           Principal principal) throws InterruptedException {
 
         // 1) Identify the logged-in user from the token
         String username = principal.getName();
@@ -112,21 +162,169 @@ public class OrdersController {
 
         int userId = user.getId();
 
-        // 2) Load the user's shopping cart from the database
-        ShoppingCart cart = cartDao.getByUserId(userId);
+        // Reject keys that are blank or too long to be a client-generated id, return 400 Bad Request
+        if (idempotencyKey != null && (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Idempotency-Key must be 1 to "
+                    + MAX_IDEMPOTENCY_KEY_LENGTH + " characters.");
+        }
 
-        // FIXED: Prevent checkout if cart is empty, return 400 Bad Request
-        if (cart == null || cart.getItems() == null || cart.getItems().isEmpty()) {
+        // 2) Flash sales have their own admission control, so their checkouts are never queued
+        boolean queued = checkoutPipeline.isRunning() && wantsAsync(async, prefer) && !flashSaleStock.isActive();
+
+        // 3) No key: every request is a new checkout
+        if (idempotencyKey == null) {
+            return queued ? accepted(enqueue(userId), false) : created(placeOrder(userId), false);
+        }
+
+        // 4) A retry of a checkout that created an order (or was queued) gets the same answer again,
+        //    marked with Idempotent-Replayed, instead of a second order; a retry while it still runs waits for it.
+        //    Keys are per user, so one user's key never returns another user's order.
+        //    A retry is answered the way the first request was, even if it asks for the other mode
+        String key = userId + ":" + idempotencyKey;
+        try {
+            IdempotencyStore.Result<Object> result = checkoutResults.execute(key,
+                    () -> queued ? enqueue(userId) : placeOrder(userId));
+            if (result.getValue() instanceof CheckoutStatus status) {
+                CheckoutStatus current = checkoutPipeline.getStatus(userId, status.getCheckoutId());
+                return accepted(current == null ? status : current, result.isReplayed());
+            }
+            return created((Order) result.getValue(), result.isReplayed());
+        } catch (IdempotencyConflictException ex) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, ex.getMessage());
+        }
+    }
+
+    // GET /orders/{checkoutId}/status
+    // Where a checkout queued with POST /orders?async=true stands: queued, processing, completed (with the order)
+    // or failed (with the reason, and the short lines when it was stock)
+    @GetMapping("/{checkoutId}/status")
+    public CheckoutStatus getCheckoutStatus(@PathVariable long checkoutId, Principal principal) {
+
+        // Get the authenticated user
+        User user = userDao.getByUserName(principal.getName());
+
+        // Return 401 if the token is valid but the user no longer exists in the DB
+        if (user == null) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not found.");
+        }
+
+        // Only the user's own checkouts are found; statuses are kept for the most recent checkouts only
+        CheckoutStatus status = checkoutPipeline.getStatus(user.getId(), checkoutId);
+        if (status == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Checkout not found.");
+        }
+        return status;
+    }
+
+    // Checks the cart is worth queueing and queues the checkout; the cart usually comes from the cart cache
+    private CheckoutStatus enqueue(int userId) {
+        cartDao.flush(userId);
+        if (cartDao.getByUserId(userId).getItems().isEmpty()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cart is empty.");
         }
 
-        // 3) Create the order in the database (and insert order line items)
-        Order created = ordersDao.createOrderFromCart(userId, cart);
+        // A full queue means the workers are behind: 503, so clients back off instead of piling on
+        try {
+            return checkoutPipeline.submit(userId);
+        } catch (IllegalStateException ex) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage());
+        }
+    }
+
+    private static ResponseEntity<Object> created(Order order, boolean replayed) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.CREATED);
+        if (replayed) response.header("Idempotent-Replayed", "true");
+        return response.body(order);
+    }
+
+    private static ResponseEntity<Object> accepted(CheckoutStatus status, boolean replayed) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.accepted()
+                .location(URI.create("/orders/" + status.getCheckoutId() + "/status"));
+        if (replayed) response.header("Idempotent-Replayed", "true");
+        return response.body(status);
+    }
+
+    // Async mode is asked for with ?async=true or "Prefer: respond-async" (RFC 7240)
+    private static boolean wantsAsync(boolean async, String prefer) {
+        return async || (prefer != null && prefer.contains("respond-async"));
+    }
+
+    // Runs one checkout for the user and returns the created order
+    private Order placeOrder(int userId) throws InterruptedException {
+
+        // 1) Write any buffered cart changes, so the database holds the whole cart
+        cartDao.flush(userId);
+
+        // 2) During a flash sale, take the sale products' units from memory first (the cart usually
+        //    comes from the cart cache): shoppers who miss out are turned away before the database
+        //    A flash sale that is busy or ending, or a cart that changed meanwhile, gives 409: nothing
+        //    was written and the client can simply try again
+        FlashSaleStock.Reservation reservation = flashSaleStock.none();
+        Order created;
+        try {
+            if (flashSaleStock.isActive()) {
+                ShoppingCart cart = cartDao.getByUserId(userId);
+                reservation = flashSaleStock.reserve(cart);
+            }
+
+            // 3) Read the cart, reserve the (other) stock, create the order and its line items and clear the cart,
+            //    all in one database transaction (the cart stays as it was if anything fails);
+            //    lines that are not in stock fail the checkout with 409 (see handleInsufficientStock)
+            created = ordersDao.checkout(userId, reservation);
+        } catch (CheckoutConflictException ex) {
+            reservation.release();
+            throw new ResponseStatusException(HttpStatus.CONFLICT, ex.getMessage());
+        } catch (RuntimeException ex) {
+            reservation.release();
+            throw ex;
+        }
+
+        // FIXED: Prevent checkout if cart is empty, return 400 Bad Request
+        if (created == null) {
+            reservation.release();
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cart is empty.");
+        }
+        reservation.commit();
 
-        // 4) Clear the cart so it is empty after checkout
-        cartDao.clearCart(userId);
+        // 4) The cart was emptied in the database; drop what the cart layers still hold for it,
+        //    and have the product layers re-read the stock the order took
+        cartDao.evict(userId);
+        refreshStock(created);
 
         // Return the created order (can include id, totals, items depending on DAO)
         return created;
     }
+
+    // Checkout failed because some lines are not in stock: 409 with one entry per short line
+    // (product, quantity requested, quantity left), so the client can adjust the cart
+    @ExceptionHandler(InsufficientStockException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public List<StockShortage> handleInsufficientStock(InsufficientStockException ex) {
+        return ex.getShortages();
+    }
+
+    // The order is placed either way, so a failed refresh only leaves the product views behind for a while
+    private void refreshStock(Order order) {
+        try {
+            productDao.stockChanged(order.getItems().stream()
+                    .map(OrderLineItem::getProductId)
+                    .collect(Collectors.toList()));
+        } catch (RuntimeException ex) {
+            logger.warn("Refreshing the stock of order " + order.getOrderId() + " failed: " + ex.getMessage());
+        }
+    }
+
+    // Loads the products of all line items in one getByIds call instead of one query per line
+    private void attachProducts(Order order) {
+        if (order.getItems() == null || order.getItems().isEmpty()) return;
+
+        List<Integer> productIds = order.getItems().stream()
+                .map(OrderLineItem::getProductId)
+                .collect(Collectors.toList());
+        Map<Integer, Product> products = productDao.getByIds(productIds);
+
+        for (OrderLineItem item : order.getItems()) {
+            item.setProduct(products.get(item.getProductId()));
+        }
+    }
 }
@@ -1,15 +1,37 @@
 package org.yearup.controllers;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.yearup.data.ProductCache;
+import org.yearup.data.ProductCursor;
+import org.yearup.data.ProductHandler;
+import org.yearup.data.ProductSort;
+import org.yearup.data.memory.ProductFacetIndex;
+import org.yearup.data.memory.ProductTextIndex;
+import org.yearup.models.CacheStats;
 import org.yearup.models.Product;
 import org.yearup.data.ProductDao;
+import org.yearup.models.ProductFacets;
+import org.yearup.models.ProductField;
+import org.yearup.models.ProductPage;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 // Marks this class as a REST controller (returns JSON)
 @RestController
@@ -19,18 +41,51 @@ import java.util.List;
 @RequestMapping("/products")
 
 // Allows the front-end (different origin/port) to call these endpoints
-@CrossOrigin
+// (and read the paging header)
+@CrossOrigin(exposedHeaders = ProductsController.NEXT_CURSOR_HEADER)
 public class ProductsController
 {
+    // Response header carrying the cursor for the next page (absent on the last page)
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    // Largest page a client can ask for
+    public static final int MAX_PAGE_SIZE = 200;
+
+    // Page size of a paged listing when the client does not ask for one
+    public static final int DEFAULT_PAGE_SIZE = 50;
+
+    // Most ids accepted by GET /products?ids=
+    public static final int MAX_IDS = 200;
+
+    // Keyword search results returned when the client does not ask for a number
+    public static final int DEFAULT_SEARCH_LIMIT = 20;
+
     // DAO used to access product data in the database
     // This controller depends on ProductDao for search, create, update, delete operations
     private ProductDao productDao;
 
-    // Constructor injection: Spring provides the ProductDao implementation
+    // In-memory keyword index over product names and descriptions
+    private final ProductTextIndex productTextIndex;
+
+    // In-memory column store used for facet counts
+    private final ProductFacetIndex productFacetIndex;
+
+    // getById cache (only its statistics are used here)
+    private final ProductCache productCache;
+
+    // Writes products one at a time to streamed responses
+    private final ObjectWriter productWriter;
+
+    // Constructor injection: Spring provides the ProductDao implementation, the in-memory indexes and Jackson's ObjectMapper
     @Autowired
-    public ProductsController(ProductDao productDao)
+    public ProductsController(ProductDao productDao, ProductTextIndex productTextIndex, ProductFacetIndex productFacetIndex,
+                              ProductCache productCache, ObjectMapper objectMapper)
     {
         this.productDao = productDao;
+        this.productTextIndex = productTextIndex;
+        this.productFacetIndex = productFacetIndex;
+        this.productCache = productCache;
+        this.productWriter = productWriter(objectMapper);
     }
 
     // GET /products
@@ -39,24 +94,46 @@ public class ProductsController
     // - minPrice
     // - maxPrice
     // - subCategory
+    // and optional paging parameters:
+    // - sort (id, price or name)
+    // - limit (page size, DEFAULT_PAGE_SIZE when omitted, at most MAX_PAGE_SIZE)
+    // - after (cursor from the X-Next-Cursor header of the previous page)
+    // - fields (comma separated properties to return, e.g. productId,name,price,imageUrl)
     @GetMapping("")
     @PreAuthorize("permitAll()") // Anyone can search/browse products (no login required)
-    public List<Product> search(
+    public ResponseEntity<List<?>> search(
             @RequestParam(name="cat", required = false) Integer categoryId,
             @RequestParam(name="minPrice", required = false) BigDecimal minPrice,
             @RequestParam(name="maxPrice", required = false) BigDecimal maxPrice,
-            @RequestParam(name="subCategory", required = false) String subCategory
+            @RequestParam(name="subCategory", required = false) String subCategory,
+            @RequestParam(name="sort", required = false) String sort,
+            @RequestParam(name="limit", required = false) Integer limit,
+            @RequestParam(name="after", required = false) String after,
+            @RequestParam(name="fields", required = false) String fields
     )
     {
         try {
-            // Calls the DAO search method that applies filters based on provided parameters
-            return productDao.search(categoryId, minPrice, maxPrice, subCategory);
+            // No paging or projection parameters: keep the original unpaged response
+            if (sort == null && limit == null && after == null && fields == null)
+                return ResponseEntity.ok(productDao.search(categoryId, minPrice, maxPrice, subCategory));
+
+            ProductSort productSort = ProductSort.parse(sort);
+            Set<ProductField> productFields = ProductField.parse(fields);
+            ProductPage page = productDao.search(categoryId, minPrice, maxPrice, subCategory,
+                    productSort, ProductCursor.decode(after, productSort), pageSize(limit), productFields);
+
+            return toResponse(page, productFields);
         }
         catch(ResponseStatusException ex)
         {
             // If DAO/controller intentionally throws a ResponseStatusException, preserve it
             throw ex;
         }
+        catch(IllegalArgumentException ex)
+        {
+            // Unknown sort or a bad/foreign cursor is the client's mistake
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
         catch(Exception ex)
         {
             // FIXED: Ensures unexpected errors return a clean 500 response instead of crashing
@@ -64,6 +141,129 @@ public class ProductsController
         }
     }
 
+    // GET /products?ids=1,2,3
+    // Returns the listed products in the requested order with one batched lookup; unknown ids are skipped
+    // Also accepts fields= like GET /products
+    @GetMapping(value = "", params = "ids")
+    @PreAuthorize("permitAll()")
+    public List<?> getByIds(
+            @RequestParam(name="ids") List<Integer> ids,
+            @RequestParam(name="fields", required = false) String fields
+    )
+    {
+        if (ids.size() > MAX_IDS)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + MAX_IDS + " ids per request.");
+        // an empty entry (ids=1,,3 or ids=) binds as null
+        if (ids.contains(null))
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Every id must be a number.");
+
+        try {
+            Set<ProductField> productFields = ProductField.parse(fields);
+            Map<Integer, Product> found = productDao.getByIds(ids);
+
+            List<Product> products = new ArrayList<>();
+            for (Integer id : ids)
+            {
+                Product product = found.get(id);
+                if (product != null)
+                    products.add(product);
+            }
+            return project(products, productFields);
+        }
+        catch(IllegalArgumentException ex)
+        {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
+        catch(Exception ex)
+        {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Oops... our bad.");
+        }
+    }
+
+    // GET /products/facets
+    // Takes the same filters as GET /products and returns how many products fall in each
+    // category, subcategory and price bucket, all counted in one pass over the in-memory columns
+    @GetMapping("/facets")
+    @PreAuthorize("permitAll()")
+    public ProductFacets facets(
+            @RequestParam(name="cat", required = false) Integer categoryId,
+            @RequestParam(name="minPrice", required = false) BigDecimal minPrice,
+            @RequestParam(name="maxPrice", required = false) BigDecimal maxPrice,
+            @RequestParam(name="subCategory", required = false) String subCategory
+    )
+    {
+        try {
+            return productFacetIndex.facets(categoryId, minPrice, maxPrice, subCategory);
+        }
+        catch(Exception ex)
+        {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Oops... our bad.");
+        }
+    }
+
+    // GET /products/search?q=
+    // Keyword search over product name and description, best matches first.
+    // Every word must match, and a word also matches longer words it starts (q=head finds "headphones").
+    @GetMapping("/search")
+    @PreAuthorize("permitAll()")
+    public List<Product> keywordSearch(
+            @RequestParam(name="q") String query,
+            @RequestParam(name="limit", required = false) Integer limit
+    )
+    {
+        // An empty query would match nothing useful, so reject it
+        if (query.isBlank())
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "q must not be empty.");
+
+        try {
+            int size = limit == null ? DEFAULT_SEARCH_LIMIT : pageSize(limit);
+            return productTextIndex.search(query, size);
+        }
+        catch(IllegalArgumentException ex)
+        {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
+        catch(Exception ex)
+        {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Oops... our bad.");
+        }
+    }
+
+    // GET /products/stream
+    // Same filters (and fields=) as GET /products, but each row is written to the response as it
+    // is read from the database, so memory use stays flat no matter how many products match
+    @GetMapping("/stream")
+    @PreAuthorize("permitAll()")
+    public ResponseEntity<StreamingResponseBody> streamSearch(
+            @RequestParam(name="cat", required = false) Integer categoryId,
+            @RequestParam(name="minPrice", required = false) BigDecimal minPrice,
+            @RequestParam(name="maxPrice", required = false) BigDecimal maxPrice,
+            @RequestParam(name="subCategory", required = false) String subCategory,
+            @RequestParam(name="fields", required = false) String fields
+    )
+    {
+        Set<ProductField> productFields;
+        try {
+            productFields = ProductField.parse(fields);
+        }
+        catch(IllegalArgumentException ex)
+        {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
+
+        return streamJson(productWriter, productFields,
+                handler -> productDao.streamSearch(categoryId, minPrice, maxPrice, subCategory, productFields, handler));
+    }
+
+    // GET /products/cache/stats
+    // Hit/miss/eviction counters of the product cache (Admin only)
+    @GetMapping("/cache/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public CacheStats cacheStats()
+    {
+        return productCache.getStats();
+    }
+
     // GET /products/{id}
     // Returns a single product by id
     @GetMapping("/{id}")
@@ -170,4 +370,80 @@ public class ProductsController
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Oops... our bad.");
         }
     }
+
+    // Shared with CategoriesController so both listings page the same way
+    static int pageSize(Integer limit)
+    {
+        if (limit == null)
+            return DEFAULT_PAGE_SIZE;
+        if (limit < 1)
+            throw new IllegalArgumentException("limit must be 1 or greater.");
+        return Math.min(limit, MAX_PAGE_SIZE);
+    }
+
+    static ResponseEntity<List<?>> toResponse(ProductPage page, Set<ProductField> fields)
+    {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNext() != null)
+            response.header(NEXT_CURSOR_HEADER, page.getNext());
+        return response.body(project(page.getItems(), fields));
+    }
+
+    // With fields= the JSON only carries the requested properties, without it the full products
+    static List<?> project(List<Product> products, Set<ProductField> fields)
+    {
+        if (fields == null)
+            return products;
+
+        List<Map<String, Object>> projected = new ArrayList<>(products.size());
+        for (Product product : products)
+            projected.add(ProductField.project(product, fields));
+        return projected;
+    }
+
+    static ObjectWriter productWriter(ObjectMapper objectMapper)
+    {
+        // flushing after every product would turn each row into its own socket write
+        return objectMapper.writerFor(Product.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    // Writes a JSON array straight to the response, one product per DAO callback
+    static ResponseEntity<StreamingResponseBody> streamJson(ObjectWriter writer, Set<ProductField> fields,
+                                                            Consumer<ProductHandler> source)
+    {
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = writer.getFactory().createGenerator(outputStream))
+            {
+                generator.writeStartArray();
+                source.accept(product -> {
+                    if (fields == null)
+                        writer.writeValue(generator, product);
+                    else
+                        writeProjected(generator, product, fields);
+                });
+                generator.writeEndArray();
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    private static void writeProjected(JsonGenerator generator, Product product, Set<ProductField> fields) throws IOException
+    {
+        generator.writeStartObject();
+        for (ProductField field : fields)
+        {
+            generator.writeFieldName(field.getJsonName());
+            Object value = field.valueOf(product);
+            if (value == null) generator.writeNull();
+            else if (value instanceof String text) generator.writeString(text);
+            else if (value instanceof Integer number) generator.writeNumber(number);
+            else if (value instanceof BigDecimal decimal) generator.writeNumber(decimal);
+            else if (value instanceof Boolean flag) generator.writeBoolean(flag);
+            else generator.writeObject(value);
+        }
+        generator.writeEndObject();
+    }
 }
@@ -1,18 +1,29 @@
 package org.yearup.controllers;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.yearup.data.CartEventHub;
+import org.yearup.data.CartExpirySweeper;
 import org.yearup.data.ProductDao;
 import org.yearup.data.ShoppingCartDao;
 import org.yearup.data.UserDao;
+import org.yearup.models.CartDelta;
+import org.yearup.models.CartExpiryStats;
+import org.yearup.models.CartOperation;
 import org.yearup.models.ShoppingCart;
 import org.yearup.models.ShoppingCartItem;
 import org.yearup.models.User;
 
 import java.security.Principal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 // Marks this class as a REST controller (returns JSON responses)
 @RestController
@@ -28,6 +39,9 @@ import java.security.Principal;
 @PreAuthorize("isAuthenticated()")
 public class ShoppingCartController {
 
+    // Accept profile for delta responses (same as ?delta=true)
+    public static final String DELTA_MEDIA_TYPE = "application/vnd.easyshop.cart-delta+json";
+
     // DAO used for cart operations (get cart, add product, update quantity, clear cart, remove product)
     private final ShoppingCartDao shoppingCartDao;
 
@@ -37,12 +51,31 @@ public class ShoppingCartController {
     // DAO used to validate that a product exists before adding/updating/removing
     private final ProductDao productDao;
 
+    // Background job that deletes abandoned carts (only read here for its stats)
+    private final CartExpirySweeper cartExpirySweeper;
+
+    // Pushes changed carts to GET /cart/stream connections
+    private final CartEventHub cartEventHub;
+
+    // How long one GET /cart/stream connection stays open
+    private final long streamTimeoutMillis;
+
+    // Checks PATCH bodies (shared with PATCH /guest-cart)
+    private final CartOperationsValidator cartOperationsValidator;
+
     // Constructor injection: Spring provides DAO implementations
     @Autowired
-    public ShoppingCartController(ShoppingCartDao shoppingCartDao, UserDao userDao, ProductDao productDao) {
+    public ShoppingCartController(ShoppingCartDao shoppingCartDao, UserDao userDao, ProductDao productDao,
+                                  CartExpirySweeper cartExpirySweeper, CartEventHub cartEventHub,
+                                  CartOperationsValidator cartOperationsValidator,
+                                  @Value("${cart-stream.timeout-minutes:30}") long streamTimeoutMinutes) {
         this.shoppingCartDao = shoppingCartDao;
         this.userDao = userDao;
         this.productDao = productDao;
+        this.cartExpirySweeper = cartExpirySweeper;
+        this.cartEventHub = cartEventHub;
+        this.streamTimeoutMillis = TimeUnit.MINUTES.toMillis(streamTimeoutMinutes);
+        this.cartOperationsValidator = cartOperationsValidator;
     }
 
     // GET /cart
@@ -75,11 +108,62 @@ public class ShoppingCartController {
         }
     }
 
+    // GET /cart/stream
+    // Server-sent events instead of polling GET /cart: a "cart" event with the current cart right away,
+    // then one with the new cart after every change (from any tab or device), and keep-alive comments
+    // in between. The connection ends after cart-stream.timeout-minutes; clients then reconnect.
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamCart(Principal principal) {
+        try {
+            User user = userDao.getByUserName(principal.getName());
+            if (user == null) throw new ResponseStatusException(HttpStatus.UNAUTHORIZED);
+
+            SseEmitter emitter = new SseEmitter(streamTimeoutMillis);
+            CartEventHub.Subscription subscription = cartEventHub.subscribe(user.getId(), new CartEventHub.CartListener() {
+                @Override
+                public void onCart(ShoppingCart cart) throws Exception {
+                    emitter.send(SseEmitter.event().name("cart").data(cart, MediaType.APPLICATION_JSON));
+                }
+
+                @Override
+                public void onHeartbeat() throws Exception {
+                    emitter.send(SseEmitter.event().comment("keep-alive"));
+                }
+
+                @Override
+                public void onDropped() {
+                    // too slow to keep up; the client reconnects and starts from the current cart
+                    emitter.complete();
+                }
+            });
+            emitter.onCompletion(subscription::close);
+            emitter.onTimeout(subscription::close);
+            emitter.onError(ex -> subscription.close());
+
+            // subscribe first, then read, so no change between the two is lost
+            subscription.offerInitial(shoppingCartDao.getByUserId(user.getId()));
+            return emitter;
+        }
+        catch (ResponseStatusException ex) {
+            throw ex;
+        }
+        catch (IllegalStateException ex) {
+            // too many open streams for this user
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, ex.getMessage());
+        }
+        catch (Exception ex) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Oops... our bad.");
+        }
+    }
+
     // POST /cart/products/{productId}
     // Adds a product to the user's cart
     // Capstone behavior: adding the same product typically increases quantity by 1
+    // Like PUT and PATCH, returns a CartDelta instead of the whole cart in delta mode (see respond)
     @PostMapping("/products/{productId}")
-    public ShoppingCart addProductToCart(@PathVariable int productId, Principal principal) {
+    public ResponseEntity<Object> addProductToCart(@PathVariable int productId, Principal principal,
+                                                   @RequestParam(defaultValue = "false") boolean delta,
+                                                   @RequestHeader(value = "Accept", required = false) String accept) {
         try {
             // Get the logged-in username
             String userName = principal.getName();
@@ -92,16 +176,16 @@ public class ShoppingCartController {
 
             // Get userId
             int userId = user.getId();
+            ShoppingCart before = wantsDelta(delta, accept) ? shoppingCartDao.getByUserIdWithoutDescriptions(userId) : null;
 
-            // FIXED: Validate the product exists before adding to cart
-            if (productDao.getById(productId) == null)
+            // Add product to cart and get the updated cart back in one DAO call
+            // The DAO returns null when the product does not exist (rejected by the foreign key)
+            ShoppingCart cart = shoppingCartDao.addProduct(userId, productId);
+            if (cart == null)
                 throw new ResponseStatusException(HttpStatus.NOT_FOUND);
 
-            // Add product to cart using DAO logic
-            shoppingCartDao.addProduct(userId, productId);
-
             // Return the updated cart so the front end can refresh UI
-            return shoppingCartDao.getByUserId(userId);
+            return respond(before, cart);
         }
         catch (ResponseStatusException ex) {
             // Preserve intended status codes (404, 401, etc.)
@@ -117,10 +201,12 @@ public class ShoppingCartController {
     // Updates the quantity of a product in the user's cart
     // Request body: ShoppingCartItem (only quantity is used)
     @PutMapping("/products/{productId}")
-    public ShoppingCart updateProductInCart(
+    public ResponseEntity<Object> updateProductInCart(
             @PathVariable int productId,
             @RequestBody ShoppingCartItem item,
-            Principal principal
+            Principal principal,
+            @RequestParam(defaultValue = "false") boolean delta,
+            @RequestHeader(value = "Accept", required = false) String accept
     ) {
         try {
             // Get logged-in username
@@ -144,11 +230,13 @@ public class ShoppingCartController {
             if (item == null || item.getQuantity() < 0)
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Quantity must be 0 or greater.");
 
+            ShoppingCart before = wantsDelta(delta, accept) ? shoppingCartDao.getByUserIdWithoutDescriptions(userId) : null;
+
             // Update the quantity in the cart
             shoppingCartDao.updateProduct(userId, productId, item.getQuantity());
 
             // Return updated cart
-            return shoppingCartDao.getByUserId(userId);
+            return respond(before, shoppingCartDao.getByUserId(userId));
         }
         catch (ResponseStatusException ex) {
             // Preserve intended HTTP errors (400, 401, 404, etc.)
@@ -160,6 +248,47 @@ public class ShoppingCartController {
         }
     }
 
+    // PATCH /cart
+    // Applies several add/set/remove operations in one go and returns the resulting cart once
+    // Request body: [ { "op": "set", "productId": 3, "quantity": 2 }, { "op": "remove", "productId": 7 } ]
+    @PatchMapping("")
+    public ResponseEntity<Object> updateCart(@RequestBody List<CartOperation> operations, Principal principal,
+                                             @RequestParam(defaultValue = "false") boolean delta,
+                                             @RequestHeader(value = "Accept", required = false) String accept) {
+        try {
+            // Look up the logged-in user
+            User user = userDao.getByUserName(principal.getName());
+            if (user == null) throw new ResponseStatusException(HttpStatus.UNAUTHORIZED);
+
+            // 400 for a bad operation, 404 for products that do not exist (one batched lookup)
+            cartOperationsValidator.validate(operations);
+
+            ShoppingCart before = wantsDelta(delta, accept) ? shoppingCartDao.getByUserIdWithoutDescriptions(user.getId()) : null;
+
+            // All operations are applied together, so the cart never shows half of the edit
+            return respond(before, shoppingCartDao.applyOperations(user.getId(), operations));
+        }
+        catch (ResponseStatusException ex) {
+            // Preserve intended HTTP errors (400, 401, 404, etc.)
+            throw ex;
+        }
+        catch (IllegalArgumentException ex) {
+            // Unknown op or a bad quantity
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
+        catch (Exception ex) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Oops... our bad.");
+        }
+    }
+
+    // GET /cart/expiry/stats
+    // Counters of the abandoned-cart sweeper: passes, batches, carts and rows deleted (Admin only)
+    @GetMapping("/expiry/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public CartExpiryStats expiryStats() {
+        return cartExpirySweeper.getStats();
+    }
+
     // DELETE /cart
     // Clears all products from the current user's cart
     @DeleteMapping
@@ -209,4 +338,21 @@ public class ShoppingCartController {
         // Remove the product from cart in DB
         shoppingCartDao.removeProduct(userId, productId);
     }
+
+    // Delta mode is asked for with ?delta=true or an Accept header with the delta profile
+    private static boolean wantsDelta(boolean delta, String accept) {
+        return delta || (accept != null && accept.contains(DELTA_MEDIA_TYPE));
+    }
+
+    // The whole cart, or in delta mode (before was loaded) only the changed lines, the new total and
+    // the versions; the usually cached read of the cart before the change is cheaper than serializing it,
+    // and is only compared, so it is read without product descriptions
+    private ResponseEntity<Object> respond(ShoppingCart before, ShoppingCart after) {
+        if (before == null)
+            return ResponseEntity.ok(after);
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(DELTA_MEDIA_TYPE))
+                .body(CartDelta.between(before, after));
+    }
 }
@@ -0,0 +1,114 @@
+package org.yearup.data;
+
+import org.yearup.models.Product;
+import org.yearup.models.ProductField;
+import org.yearup.models.ProductPage;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ProductDao decorator that serves getById from a {@link ProductCache}.
+ * Cart existence checks and product detail pages hit this on every request.
+ * Writes go to the wrapped dao first and then refresh or drop the cached entry.
+ */
+public class CachingProductDao implements ProductDao
+{
+    private final ProductDao delegate;
+    private final ProductCache cache;
+
+    public CachingProductDao(ProductDao delegate, ProductCache cache)
+    {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public List<Product> search(Integer categoryId, BigDecimal minPrice, BigDecimal maxPrice, String subCategory)
+    {
+        return delegate.search(categoryId, minPrice, maxPrice, subCategory);
+    }
+
+    @Override
+    public ProductPage search(Integer categoryId, BigDecimal minPrice, BigDecimal maxPrice, String subCategory,
+                              ProductSort sort, ProductCursor after, int limit, Set<ProductField> fields)
+    {
+        return delegate.search(categoryId, minPrice, maxPrice, subCategory, sort, after, limit, fields);
+    }
+
+    @Override
+    public void streamSearch(Integer categoryId, BigDecimal minPrice, BigDecimal maxPrice, String subCategory,
+                             Set<ProductField> fields, ProductHandler handler)
+    {
+        delegate.streamSearch(categoryId, minPrice, maxPrice, subCategory, fields, handler);
+    }
+
+    @Override
+    public List<Product> listByCategoryId(int categoryId)
+    {
+        return delegate.listByCategoryId(categoryId);
+    }
+
+    @Override
+    public Product getById(int productId)
+    {
+        return cache.get(productId, delegate::getById);
+    }
+
+    @Override
+    public Map<Integer, Product> getByIds(Collection<Integer> productIds)
+    {
+        // only the ids the cache does not know are fetched, in one batched call
+        ProductDao.checkIds(productIds);
+        return cache.getAll(productIds, delegate::getByIds);
+    }
+
+    @Override
+    public Product create(Product product)
+    {
+        Product created = delegate.create(product);
+
+        // the new id may have been cached as "not found" before
+        cache.invalidate(created.getProductId());
+        cache.put(created);
+        return created;
+    }
+
+    @Override
+    public void update(int productId, Product product)
+    {
+        try
+        {
+            delegate.update(productId, product);
+        }
+        finally
+        {
+            // drop the entry even if the update failed half way; the next read reloads it
+            cache.invalidate(productId);
+        }
+    }
+
+    @Override
+    public void delete(int productId)
+    {
+        try
+        {
+            delegate.delete(productId);
+        }
+        finally
+        {
+            cache.invalidate(productId);
+        }
+    }
+
+    @Override
+    public void stockChanged(Collection<Integer> productIds)
+    {
+        delegate.stockChanged(productIds);
+        for (Integer productId : productIds)
+            cache.invalidate(productId);
+    }
+}
@@ -0,0 +1,333 @@
+package org.yearup.data;
+
+import org.yearup.models.CartOperation;
+import org.yearup.models.ExpiredCarts;
+import org.yearup.models.Product;
+import org.yearup.models.ShoppingCart;
+import org.yearup.models.ShoppingCartItem;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ShoppingCartDao decorator that keeps the computed cart of recently active users, so GET /cart
+ * on every page load does not re-run the cart join. An entry is dropped when that user's cart
+ * changes through this dao, or when a product in it is saved or deleted (it is registered as a
+ * {@link ProductChangeListener}). A reverse index from product id to the users whose cached
+ * cart holds it means a product write only drops the carts that contain that product.
+ * Callers get a copy, so they may apply promotions to it without touching the cached cart.
+ */
+public class CachingShoppingCartDao implements ShoppingCartDao, ProductChangeListener, AutoCloseable
+{
+    private final ShoppingCartDao delegate;
+    private final int maxSize;
+
+    // all state below is guarded by this
+    private final LinkedHashMap<Integer, ShoppingCart> carts = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Integer, Set<Integer>> usersByProduct = new HashMap<>();
+    // A load (or write) is cached only if neither its user's cart nor any product in it changed since
+    // it started. Stamps come from one clock; each user's stamp is taken again before and after every
+    // write, each product's when it changes. Users not written recently are forgotten, oldest stamp
+    // first, and then count as changed at forgottenUpTo, so a load can never miss a write.
+    private long clock;
+    private final LinkedHashMap<Integer, Long> userChanges;
+    private final Map<Integer, Long> productChanges = new HashMap<>();
+    private long forgottenUpTo;
+
+    public CachingShoppingCartDao(ShoppingCartDao delegate, int maxSize)
+    {
+        this.delegate = delegate;
+        this.maxSize = maxSize;
+        this.userChanges = new LinkedHashMap<>()
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Long> eldest)
+            {
+                // cached users plus room for the ones with a write in flight
+                if (size() <= maxSize * 2)
+                    return false;
+                forgottenUpTo = eldest.getValue();
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public ShoppingCart getByUserId(int userId)
+    {
+        long startedAt;
+        synchronized (this)
+        {
+            ShoppingCart cached = carts.get(userId);
+            if (cached != null)
+                return copy(cached);
+            startedAt = clock;
+        }
+
+        ShoppingCart cart = delegate.getByUserId(userId);
+        synchronized (this)
+        {
+            if (cart != null && isUnchangedSince(userId, cart, startedAt))
+                put(userId, cart);
+        }
+        return cart == null ? null : copy(cart);
+    }
+
+    // A cached cart is as good; a miss is read without descriptions and not cached, as the cache holds whole carts
+    @Override
+    public ShoppingCart getByUserIdWithoutDescriptions(int userId)
+    {
+        synchronized (this)
+        {
+            ShoppingCart cached = carts.get(userId);
+            if (cached != null)
+                return copy(cached);
+        }
+        return delegate.getByUserIdWithoutDescriptions(userId);
+    }
+
+    @Override
+    public ShoppingCart addProduct(int userId, int productId)
+    {
+        long startedAt = startWrite(userId);
+        ShoppingCart cart = null;
+        try
+        {
+            cart = delegate.addProduct(userId, productId);
+        }
+        finally
+        {
+            finishWrite(userId, cart, startedAt);
+        }
+        return cart == null ? null : copy(cart);
+    }
+
+    @Override
+    public void updateProduct(int userId, int productId, int quantity)
+    {
+        long startedAt = startWrite(userId);
+        try
+        {
+            delegate.updateProduct(userId, productId, quantity);
+        }
+        finally
+        {
+            finishWrite(userId, null, startedAt);
+        }
+    }
+
+    @Override
+    public void clearCart(int userId)
+    {
+        long startedAt = startWrite(userId);
+        try
+        {
+            delegate.clearCart(userId);
+        }
+        finally
+        {
+            finishWrite(userId, null, startedAt);
+        }
+    }
+
+    @Override
+    public void removeProduct(int userId, int productId)
+    {
+        long startedAt = startWrite(userId);
+        try
+        {
+            delegate.removeProduct(userId, productId);
+        }
+        finally
+        {
+            finishWrite(userId, null, startedAt);
+        }
+    }
+
+    @Override
+    public ShoppingCart applyOperations(int userId, List<CartOperation> operations)
+    {
+        long startedAt = startWrite(userId);
+        ShoppingCart cart = null;
+        try
+        {
+            cart = delegate.applyOperations(userId, operations);
+        }
+        finally
+        {
+            finishWrite(userId, cart, startedAt);
+        }
+        return cart == null ? null : copy(cart);
+    }
+
+    @Override
+    public void flush(int userId)
+    {
+        delegate.flush(userId);
+    }
+
+    @Override
+    public void evict(int userId)
+    {
+        long startedAt = startWrite(userId);
+        try
+        {
+            delegate.evict(userId);
+        }
+        finally
+        {
+            finishWrite(userId, null, startedAt);
+        }
+    }
+
+    @Override
+    public ExpiredCarts deleteIdleCarts(LocalDateTime idleSince, int afterUserId, int limit)
+    {
+        ExpiredCarts expired = delegate.deleteIdleCarts(idleSince, afterUserId, limit);
+        synchronized (this)
+        {
+            for (Integer userId : expired.getUserIds())
+                changed(userId);
+        }
+        return expired;
+    }
+
+    @Override
+    public void productSaved(Product product)
+    {
+        invalidateProduct(product.getProductId());
+    }
+
+    @Override
+    public void productDeleted(int productId)
+    {
+        invalidateProduct(productId);
+    }
+
+    @Override
+    public void stockChanged(Collection<Integer> productIds)
+    {
+        // cached carts show each line's product, stock included
+        for (Integer productId : productIds)
+            invalidateProduct(productId);
+    }
+
+    public synchronized int size()
+    {
+        return carts.size();
+    }
+
+    @Override
+    public void close() throws Exception
+    {
+        if (delegate instanceof AutoCloseable closeable)
+            closeable.close();
+    }
+
+    // drops the user's cart before the delegate write, so loads already running are not cached
+    private synchronized long startWrite(int userId)
+    {
+        return changed(userId);
+    }
+
+    // The write is done (or failed): stamped again, so loads that started during it are not cached either.
+    // The cart the write returned is cached unless another write to the same cart started meanwhile.
+    private synchronized void finishWrite(int userId, ShoppingCart cart, long startedAt)
+    {
+        boolean cacheable = cart != null && isUnchangedSince(userId, cart, startedAt);
+        changed(userId);
+        if (cacheable)
+            put(userId, cart);
+    }
+
+    // must hold this; drops the user's cart and returns the new stamp
+    private long changed(int userId)
+    {
+        remove(userId);
+        userChanges.remove(userId);
+        userChanges.put(userId, ++clock);
+        return clock;
+    }
+
+    // must hold this
+    private boolean isUnchangedSince(int userId, ShoppingCart cart, long startedAt)
+    {
+        if (userChanges.getOrDefault(userId, forgottenUpTo) > startedAt)
+            return false;
+        for (Integer productId : cart.getItems().keySet())
+            if (productChanges.getOrDefault(productId, 0L) > startedAt)
+                return false;
+        return true;
+    }
+
+    // must hold this
+    private void put(int userId, ShoppingCart cart)
+    {
+        remove(userId);
+        carts.put(userId, cart);
+        for (Integer productId : cart.getItems().keySet())
+            usersByProduct.computeIfAbsent(productId, id -> new HashSet<>()).add(userId);
+        evictOverflow();
+    }
+
+    private synchronized void invalidateProduct(int productId)
+    {
+        productChanges.put(productId, ++clock);
+        Set<Integer> userIds = usersByProduct.remove(productId);
+        if (userIds == null)
+            return;
+        for (Integer userId : userIds)
+            remove(userId);
+    }
+
+    // must hold this
+    private void remove(int userId)
+    {
+        ShoppingCart removed = carts.remove(userId);
+        if (removed == null)
+            return;
+
+        for (Integer productId : removed.getItems().keySet())
+        {
+            Set<Integer> userIds = usersByProduct.get(productId);
+            if (userIds == null)
+                continue;
+            userIds.remove(userId);
+            if (userIds.isEmpty())
+                usersByProduct.remove(productId);
+        }
+    }
+
+    // must hold this; drops the least recently used carts
+    private void evictOverflow()
+    {
+        while (carts.size() > maxSize)
+            remove(carts.keySet().iterator().next());
+    }
+
+    private static ShoppingCart copy(ShoppingCart cart)
+    {
+        Map<Integer, ShoppingCartItem> items = new HashMap<>();
+        for (Map.Entry<Integer, ShoppingCartItem> entry : cart.getItems().entrySet())
+        {
+            ShoppingCartItem original = entry.getValue();
+            ShoppingCartItem item = new ShoppingCartItem();
+            item.setProduct(original.getProduct());
+            item.setQuantity(original.getQuantity());
+            item.setDiscountPercent(original.getDiscountPercent());
+            item.setLineTotalCents(original.getLineTotalCents());
+            items.put(entry.getKey(), item);
+        }
+
+        ShoppingCart copy = new ShoppingCart();
+        copy.setItems(items);
+        copy.setTotalCents(cart.getTotalCents());
+        return copy;
+    }
+}
@@ -0,0 +1,318 @@
+package org.yearup.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yearup.models.ShoppingCart;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process publish/subscribe for cart changes, used by GET /cart/stream instead of clients polling
+ * GET /cart. A cart is only pushed to subscribers; nobody listening costs nothing.
+ * Every subscription buffers at most one cart: a newer cart replaces one that was not sent yet, since
+ * clients only need the latest state, and a cart with a lower version than one already offered is
+ * dropped, so writes that publish out of order never step a client back.
+ * Sends run on a small dispatch pool, so a slow connection never holds up the thread that changed the
+ * cart, and one that fails is dropped. A send still blocked after sendTimeoutMillis drops its
+ * subscription too, and the pool gets an extra thread until that send returns, so a few stalled
+ * clients cannot hold up everybody else's events.
+ */
+public class CartEventHub implements AutoCloseable
+{
+    private final Logger logger = LoggerFactory.getLogger(CartEventHub.class);
+
+    private final int maxPerUser;
+    private final int dispatchThreads;
+    private final long sendTimeoutNanos;
+    private final Map<Integer, List<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final ThreadPoolExecutor dispatcher;
+    private final ScheduledExecutorService heartbeats;
+    // sends past their timeout that still hold a dispatch thread; guarded by dispatcher
+    private int stalledSends;
+
+    public CartEventHub(int maxPerUser, int dispatchThreads, long sendTimeoutMillis)
+    {
+        this.maxPerUser = maxPerUser;
+        this.dispatchThreads = dispatchThreads;
+        this.sendTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeoutMillis);
+        this.dispatcher = new ThreadPoolExecutor(dispatchThreads, dispatchThreads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), daemon("cart-events"));
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(daemon("cart-events-heartbeat"));
+
+        long checkMillis = Math.max(sendTimeoutMillis / 2, 1);
+        heartbeats.scheduleWithFixedDelay(this::dropStalledSubscriptions, checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Sends a heartbeat to every idle subscription this often, so dead connections are noticed
+    public void startHeartbeats(long intervalSeconds)
+    {
+        heartbeats.scheduleWithFixedDelay(this::heartbeat, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public Subscription subscribe(int userId, CartListener listener)
+    {
+        Subscription subscription = new Subscription(userId, listener);
+        List<Subscription> userSubscriptions = subscriptions.compute(userId, (id, current) -> {
+            List<Subscription> list = current == null ? new CopyOnWriteArrayList<>() : current;
+            if (list.size() < maxPerUser)
+            {
+                list.add(subscription);
+                subscriberCount.incrementAndGet();
+            }
+            return list;
+        });
+        if (!userSubscriptions.contains(subscription))
+            throw new IllegalStateException("At most " + maxPerUser + " cart streams per user.");
+        return subscription;
+    }
+
+    public boolean hasSubscribers(int userId)
+    {
+        return subscriptions.containsKey(userId);
+    }
+
+    public void publish(int userId, ShoppingCart cart)
+    {
+        List<Subscription> userSubscriptions = subscriptions.get(userId);
+        if (userSubscriptions == null)
+            return;
+        for (Subscription subscription : userSubscriptions)
+            subscription.offer(cart, false);
+    }
+
+    public int getSubscriberCount()
+    {
+        return subscriberCount.get();
+    }
+
+    @Override
+    public void close()
+    {
+        heartbeats.shutdownNow();
+        dispatcher.shutdownNow();
+    }
+
+    private void heartbeat()
+    {
+        for (List<Subscription> userSubscriptions : subscriptions.values())
+            for (Subscription subscription : userSubscriptions)
+                subscription.ping();
+    }
+
+    private void dropStalledSubscriptions()
+    {
+        long now = System.nanoTime();
+        for (List<Subscription> userSubscriptions : subscriptions.values())
+            for (Subscription subscription : userSubscriptions)
+                subscription.dropIfStalled(now);
+    }
+
+    // one more (or one less) dispatch thread for every send blocked past its timeout
+    private void stalled(int delta)
+    {
+        synchronized (dispatcher)
+        {
+            stalledSends += delta;
+            int size = dispatchThreads + stalledSends;
+            if (delta > 0)
+            {
+                dispatcher.setMaximumPoolSize(size);
+                dispatcher.setCorePoolSize(size);
+            }
+            else
+            {
+                dispatcher.setCorePoolSize(size);
+                dispatcher.setMaximumPoolSize(size);
+            }
+        }
+    }
+
+    private void remove(Subscription subscription)
+    {
+        subscriptions.computeIfPresent(subscription.userId, (id, list) -> {
+            if (list.remove(subscription))
+                subscriberCount.decrementAndGet();
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    private static ThreadFactory daemon(String name)
+    {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public interface CartListener
+    {
+        void onCart(ShoppingCart cart) throws Exception;
+
+        void onHeartbeat() throws Exception;
+
+        // The hub gave up on this listener because a send took longer than the send timeout;
+        // called once that send returned, to end the connection so the client reconnects
+        void onDropped();
+    }
+
+    public class Subscription implements AutoCloseable
+    {
+        private final int userId;
+        private final CartListener listener;
+
+        // the one-cart buffer; guarded by this
+        private ShoppingCart pending;
+        private long newestVersion = Long.MIN_VALUE;
+        private boolean heartbeatDue;
+        private boolean published;
+        private boolean scheduled;
+        // when the send in progress started, and whether it ran past the timeout; guarded by this
+        private long sendingSince;
+        private boolean sending;
+        private boolean stalled;
+        private volatile boolean closed;
+
+        private Subscription(int userId, CartListener listener)
+        {
+            this.userId = userId;
+            this.listener = listener;
+        }
+
+        // Queues the cart the client starts from, unless a change was published since subscribing
+        // (that cart is at least as new)
+        public void offerInitial(ShoppingCart cart)
+        {
+            offer(cart, true);
+        }
+
+        @Override
+        public void close()
+        {
+            closed = true;
+            remove(this);
+        }
+
+        private void offer(ShoppingCart cart, boolean initial)
+        {
+            synchronized (this)
+            {
+                if (closed || (initial && published) || cart.getVersion() < newestVersion)
+                    return;
+                if (!initial)
+                    published = true;
+                newestVersion = cart.getVersion();
+                pending = cart;
+                schedule();
+            }
+        }
+
+        private synchronized void ping()
+        {
+            if (closed)
+                return;
+            heartbeatDue = true;
+            schedule();
+        }
+
+        // must hold this
+        private void schedule()
+        {
+            if (scheduled)
+                return;
+            scheduled = true;
+            try
+            {
+                dispatcher.execute(this::drain);
+            }
+            catch (RuntimeException e)
+            {
+                // hub is shutting down
+                scheduled = false;
+            }
+        }
+
+        private void drain()
+        {
+            while (true)
+            {
+                ShoppingCart cart;
+                boolean heartbeat;
+                synchronized (this)
+                {
+                    cart = pending;
+                    heartbeat = heartbeatDue;
+                    pending = null;
+                    heartbeatDue = false;
+                    if (closed || (cart == null && !heartbeat))
+                    {
+                        scheduled = false;
+                        return;
+                    }
+                    sending = true;
+                    sendingSince = System.nanoTime();
+                }
+
+                Exception failure = null;
+                try
+                {
+                    // a cart is as good as a heartbeat
+                    if (cart != null)
+                        listener.onCart(cart);
+                    else
+                        listener.onHeartbeat();
+                }
+                catch (Exception e)
+                {
+                    failure = e;
+                }
+
+                boolean wasStalled;
+                synchronized (this)
+                {
+                    sending = false;
+                    wasStalled = stalled;
+                    if (wasStalled || failure != null)
+                        scheduled = false;
+                }
+
+                if (wasStalled)
+                {
+                    stalled(-1);
+                    listener.onDropped();
+                    return;
+                }
+                if (failure != null)
+                {
+                    logger.debug("Dropping cart stream of user " + userId + ": " + failure.getMessage());
+                    close();
+                    return;
+                }
+            }
+        }
+
+        private void dropIfStalled(long now)
+        {
+            synchronized (this)
+            {
+                if (!sending || stalled || now - sendingSince < sendTimeoutNanos)
+                    return;
+                stalled = true;
+            }
+            logger.debug("Dropping cart stream of user " + userId + ": send timed out");
+            close();
+            stalled(1);
+        }
+    }
+}
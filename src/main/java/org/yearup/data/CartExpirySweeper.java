@@ -0,0 +1,138 @@
+package org.yearup.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yearup.models.CartExpiryStats;
+import org.yearup.models.ExpiredCarts;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background job that deletes abandoned carts: carts with no line changed for longer than the TTL.
+ * Each pass deletes small batches (batchSize carts per batch, at most maxBatches per pass) with a
+ * short pause in between, so it never holds many row locks at once while customers shop.
+ * Batches walk the users in id order; the position carries over to the next pass and starts
+ * over once the end is reached.
+ */
+public class CartExpirySweeper implements AutoCloseable
+{
+    // breathing room for regular traffic between two batches
+    private static final long PAUSE_MILLIS = 50;
+
+    private final Logger logger = LoggerFactory.getLogger(CartExpirySweeper.class);
+
+    private final ShoppingCartDao shoppingCartDao;
+    private final Duration ttl;
+    private final int batchSize;
+    private final int maxBatches;
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong passes = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong cartsDeleted = new AtomicLong();
+    private final AtomicLong rowsDeleted = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile LocalDateTime lastPassAt;
+    private volatile long lastPassRowsDeleted;
+    private volatile long lastPassMillis;
+    // guarded by this (sweep)
+    private int position;
+
+    public CartExpirySweeper(ShoppingCartDao shoppingCartDao, Duration ttl, int batchSize, int maxBatches)
+    {
+        this.shoppingCartDao = shoppingCartDao;
+        this.ttl = ttl;
+        this.batchSize = batchSize;
+        this.maxBatches = maxBatches;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cart-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start(Duration interval)
+    {
+        scheduler.scheduleWithFixedDelay(this::sweepQuietly, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // One pass; returns the number of shopping_cart rows it deleted
+    public synchronized long sweep()
+    {
+        long started = System.currentTimeMillis();
+        LocalDateTime idleSince = LocalDateTime.now().minus(ttl);
+        long rows = 0;
+
+        for (int batch = 0; batch < maxBatches; batch++)
+        {
+            ExpiredCarts expired = shoppingCartDao.deleteIdleCarts(idleSince, position, batchSize);
+            batches.incrementAndGet();
+            cartsDeleted.addAndGet(expired.getUserIds().size());
+            rowsDeleted.addAndGet(expired.getRowsDeleted());
+            rows += expired.getRowsDeleted();
+
+            if (!expired.isMore())
+            {
+                // reached the last user; the next pass starts from the beginning
+                position = 0;
+                break;
+            }
+            position = expired.getScannedUpTo();
+
+            pause();
+            if (Thread.currentThread().isInterrupted())
+                break;
+        }
+
+        passes.incrementAndGet();
+        lastPassAt = LocalDateTime.now();
+        lastPassRowsDeleted = rows;
+        lastPassMillis = System.currentTimeMillis() - started;
+        return rows;
+    }
+
+    public CartExpiryStats getStats()
+    {
+        return new CartExpiryStats(passes.get(), batches.get(), cartsDeleted.get(), rowsDeleted.get(), failures.get(),
+                lastPassAt, lastPassRowsDeleted, lastPassMillis);
+    }
+
+    @Override
+    public void close()
+    {
+        scheduler.shutdownNow();
+    }
+
+    private void sweepQuietly()
+    {
+        try
+        {
+            long rows = sweep();
+            if (rows > 0)
+                logger.info("Deleted " + rows + " abandoned shopping cart rows in " + lastPassMillis + " ms");
+        }
+        catch (RuntimeException e)
+        {
+            // a failure must not cancel the scheduled task
+            failures.incrementAndGet();
+            logger.warn("Shopping cart expiry failed, will retry next pass: " + e.getMessage());
+        }
+    }
+
+    private static void pause()
+    {
+        try
+        {
+            Thread.sleep(PAUSE_MILLIS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.yearup.data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Current version number of recently used carts, for delta responses and cart events: a client that
+ * holds version N can apply a change from N to M, and refetches the cart on any other mismatch.
+ * Versions come from one counter that starts from the clock, so they keep growing across restarts
+ * and a cart dropped from this map just gets a newer number. Bounded to the most recently used carts.
+ */
+public class CartVersions
+{
+    private final int maxSize;
+    private final AtomicLong counter = new AtomicLong(System.currentTimeMillis() * 1000);
+
+    // guarded by this
+    private final LinkedHashMap<Integer, Long> versions;
+
+    public CartVersions(int maxSize)
+    {
+        this.maxSize = maxSize;
+        this.versions = new LinkedHashMap<>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Long> eldest)
+            {
+                return size() > CartVersions.this.maxSize;
+            }
+        };
+    }
+
+    public synchronized long current(int userId)
+    {
+        return versions.computeIfAbsent(userId, id -> counter.incrementAndGet());
+    }
+
+    // a new version after a change
+    public synchronized long next(int userId)
+    {
+        long version = counter.incrementAndGet();
+        versions.put(userId, version);
+        return version;
+    }
+}
@@ -9,5 +9,9 @@ public interface CategoryDao
     Category create(Category category);
     void update(int categoryId, Category category);
     void delete(int categoryId);
-
+    // Changes whenever the categories change (the ETag of category responses); 0 when the DAO cannot tell
+    default long getVersion()
+    {
+        return 0;
+    }
 }
@@ -0,0 +1,13 @@
+package org.yearup.data;
+
+// Thrown by checkout when it ran into a flash sale starting or ending, a full flash-sale admission
+// queue or a cart that changed meanwhile; nothing was written and the same checkout can simply be
+// sent again. The message is meant for the client.
+public class CheckoutConflictException extends RuntimeException {
+
+    private static final long serialVersionUID = -2716094476412308345L;
+
+    public CheckoutConflictException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,297 @@
+package org.yearup.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yearup.models.CheckoutResult;
+import org.yearup.models.CheckoutStatus;
+import org.yearup.models.Order;
+import org.yearup.models.OrderLineItem;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Asynchronous checkout: submit() only queues the checkout and returns a handle, and a few workers
+ * drain the queue, each taking everything waiting (up to batchSize checkouts) into one group-commit
+ * transaction. With a quiet queue a batch is a single checkout and nothing waits; under load the
+ * batches grow, so the database sees fewer, larger transactions and only the workers hold pooled
+ * connections for checkout. Clients poll getStatus() with the handle.
+ * If a group transaction fails as a whole, its checkouts are run again one by one, so a bad one
+ * only fails itself. Statuses of the most recent maxStatuses checkouts are kept.
+ */
+public class CheckoutPipeline implements AutoCloseable
+{
+    private final Logger logger = LoggerFactory.getLogger(CheckoutPipeline.class);
+
+    private final OrdersDao ordersDao;
+    private final ShoppingCartDao shoppingCartDao;
+    private final FlashSaleStock flashSaleStock;
+    // told which products' stock the placed orders took, so in-memory product layers re-read it
+    private final Consumer<Collection<Integer>> stockChanged;
+    private final int batchSize;
+    private final BlockingQueue<CheckoutStatus> queue;
+    private final ExecutorService workers;
+    private final int workerCount;
+
+    // handles come from the clock like cart versions, so they keep growing across restarts
+    private final AtomicLong ids = new AtomicLong(System.currentTimeMillis() * 1000);
+    // guarded by itself
+    private final LinkedHashMap<Long, CheckoutStatus> statuses;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong checkouts = new AtomicLong();
+    private volatile boolean started;
+    private volatile boolean closed;
+
+    public CheckoutPipeline(OrdersDao ordersDao, ShoppingCartDao shoppingCartDao, FlashSaleStock flashSaleStock,
+                            Consumer<Collection<Integer>> stockChanged,
+                            int workerCount, int batchSize, int maxQueued, int maxStatuses)
+    {
+        this.ordersDao = ordersDao;
+        this.shoppingCartDao = shoppingCartDao;
+        this.flashSaleStock = flashSaleStock;
+        this.stockChanged = stockChanged;
+        this.workerCount = workerCount;
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<>(maxQueued);
+        this.statuses = new LinkedHashMap<>(16, 0.75f, false)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CheckoutStatus> eldest)
+            {
+                return size() > maxStatuses;
+            }
+        };
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "checkout-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public synchronized void start()
+    {
+        if (started)
+            return;
+        started = true;
+        for (int i = 0; i < workerCount; i++)
+            workers.execute(this::drain);
+    }
+
+    public boolean isRunning()
+    {
+        return started && !closed;
+    }
+
+    // Queues the user's checkout; IllegalStateException when the queue is full
+    public CheckoutStatus submit(int userId)
+    {
+        CheckoutStatus status = CheckoutStatus.queued(ids.incrementAndGet(), userId);
+        update(status);
+        if (!isRunning() || !queue.offer(status))
+        {
+            remove(status);
+            throw new IllegalStateException("Too many checkouts right now, please try again.");
+        }
+        return status;
+    }
+
+    // The checkout's current status, or null if it is unknown or not the user's
+    public CheckoutStatus getStatus(int userId, long checkoutId)
+    {
+        CheckoutStatus status;
+        synchronized (statuses)
+        {
+            status = statuses.get(checkoutId);
+        }
+        return status == null || status.getUserId() != userId ? null : status;
+    }
+
+    public int getQueued()
+    {
+        return queue.size();
+    }
+
+    // average checkouts per group transaction so far
+    public double getAverageBatchSize()
+    {
+        long count = batches.get();
+        return count == 0 ? 0 : (double) checkouts.get() / count;
+    }
+
+    // Stops taking checkouts and lets the workers finish what is queued
+    @Override
+    public void close() throws InterruptedException
+    {
+        closed = true;
+        workers.shutdown();
+        workers.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    private void drain()
+    {
+        List<CheckoutStatus> batch = new ArrayList<>(batchSize);
+        while (!closed || !queue.isEmpty())
+        {
+            try
+            {
+                CheckoutStatus first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null)
+                    continue;
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                process(batch);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch (RuntimeException e)
+            {
+                // a worker must survive anything; the checkouts it held that are not finished yet are marked failed
+                logger.warn("Checkout batch failed: " + e.getMessage());
+                for (CheckoutStatus status : batch)
+                    failUnlessFinished(status);
+            }
+            finally
+            {
+                batch.clear();
+            }
+        }
+    }
+
+    void process(List<CheckoutStatus> batch)
+    {
+        List<Integer> userIds = new ArrayList<>(batch.size());
+        for (CheckoutStatus status : batch)
+        {
+            update(status.processing());
+            // changes made after submit() may still sit in a write-behind buffer
+            shoppingCartDao.flush(status.getUserId());
+            userIds.add(status.getUserId());
+        }
+
+        List<CheckoutResult> results;
+        try
+        {
+            results = ordersDao.checkoutAll(userIds, flashSaleStock.none());
+        }
+        catch (RuntimeException e)
+        {
+            logger.warn("Group checkout of " + batch.size() + " orders failed, placing them one by one: " + e.getMessage());
+            results = new ArrayList<>(batch.size());
+            for (Integer userId : userIds)
+                results.add(checkoutOne(userId));
+        }
+        batches.incrementAndGet();
+        checkouts.addAndGet(batch.size());
+
+        Set<Integer> productIds = new TreeSet<>();
+        for (int i = 0; i < batch.size(); i++)
+        {
+            CheckoutResult result = results.get(i);
+            // the carts were emptied in the database; drop what the cart layers still hold
+            if (result.isPlaced())
+            {
+                evict(userIds.get(i));
+                for (OrderLineItem line : result.getOrder().getItems())
+                    productIds.add(line.getProductId());
+            }
+            update(batch.get(i).finished(result));
+        }
+
+        if (productIds.isEmpty())
+            return;
+        try
+        {
+            // one refresh for the whole batch, after the statuses are out
+            stockChanged.accept(productIds);
+        }
+        catch (RuntimeException e)
+        {
+            // the orders are placed; only the product views stay behind until their next refresh
+            logger.warn("Refreshing the stock of products " + productIds + " failed: " + e.getMessage());
+        }
+    }
+
+    private CheckoutResult checkoutOne(int userId)
+    {
+        try
+        {
+            Order order = ordersDao.checkout(userId, flashSaleStock.none());
+            return order == null ? CheckoutResult.emptyCart() : CheckoutResult.placed(order);
+        }
+        catch (InsufficientStockException e)
+        {
+            return CheckoutResult.shortOfStock(e.getShortages());
+        }
+        catch (CheckoutConflictException e)
+        {
+            return CheckoutResult.failed(e.getMessage());
+        }
+        catch (RuntimeException e)
+        {
+            logger.warn("Checkout of user " + userId + " failed: " + e.getMessage());
+            return CheckoutResult.failed("Oops... our bad.");
+        }
+    }
+
+    private void evict(int userId)
+    {
+        try
+        {
+            shoppingCartDao.evict(userId);
+        }
+        catch (RuntimeException e)
+        {
+            // the order is placed; only the cart layers show the old cart until they reload it
+            logger.warn("Evicting the cart of user " + userId + " failed: " + e.getMessage());
+        }
+    }
+
+    private void failUnlessFinished(CheckoutStatus status)
+    {
+        synchronized (statuses)
+        {
+            CheckoutStatus current = statuses.get(status.getCheckoutId());
+            // gone means it was finished long ago and dropped from the recent statuses
+            if (current == null
+                    || current.getStatus().equals(CheckoutStatus.COMPLETED)
+                    || current.getStatus().equals(CheckoutStatus.FAILED))
+                return;
+            statuses.put(status.getCheckoutId(), status.finished(CheckoutResult.failed("Oops... our bad.")));
+        }
+    }
+
+    private void update(CheckoutStatus status)
+    {
+        synchronized (statuses)
+        {
+            statuses.put(status.getCheckoutId(), status);
+        }
+    }
+
+    private void remove(CheckoutStatus status)
+    {
+        synchronized (statuses)
+        {
+            statuses.remove(status.getCheckoutId());
+        }
+    }
+}
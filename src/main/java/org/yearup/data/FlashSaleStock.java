@@ -0,0 +1,428 @@
+package org.yearup.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yearup.models.FlashSaleStatus;
+import org.yearup.models.ShoppingCart;
+import org.yearup.models.ShoppingCartItem;
+import org.yearup.models.StockShortage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Flash-sale mode: the stock of designated products is moved into striped in-memory counters when
+ * the sale starts, and checkouts take it from there with compare-and-set instead of the products row
+ * lock. A checkout that cannot get its units is turned away before it touches MySQL; the ones that
+ * can are admitted to the normal checkout (at most maxConcurrent at a time), which then skips the
+ * stock update for those lines. Units sold are written to products.stock in one batch per interval,
+ * so the database only sees one update per product per interval however many orders there were.
+ */
+public class FlashSaleStock implements AutoCloseable
+{
+    private final Logger logger = LoggerFactory.getLogger(FlashSaleStock.class);
+
+    private final StockDao stockDao;
+    // told which products' stock was written back, so in-memory product layers re-read it
+    private final Consumer<Collection<Integer>> stockChanged;
+    private final int stripes;
+    private final Semaphore admissions;
+    private final long admissionWaitMillis;
+    private final Map<Integer, Sale> sales = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService reconciler;
+    // write-backs and removing ended sales never overlap, so the database owns a product's stock again
+    // only once every unit sold from memory is in products.stock
+    private final Object reconcileLock = new Object();
+
+    public FlashSaleStock(StockDao stockDao, Consumer<Collection<Integer>> stockChanged,
+                          int stripes, int maxConcurrent, long admissionWaitMillis)
+    {
+        this.stockDao = stockDao;
+        this.stockChanged = stockChanged;
+        this.stripes = stripes;
+        this.admissions = new Semaphore(maxConcurrent);
+        this.admissionWaitMillis = admissionWaitMillis;
+        this.reconciler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "flash-sale-reconciler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void startReconciling(long intervalMillis)
+    {
+        reconciler.scheduleWithFixedDelay(this::reconcileQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Moves the product's current stock into memory; false if the product does not exist.
+    // The counter is in place before the row lock is released, so no database checkout slips in between.
+    // Throws CheckoutConflictException while an earlier sale of the product is still ending.
+    public synchronized boolean start(int productId)
+    {
+        Sale current = sales.get(productId);
+        if (current != null && current.closed)
+            throw new CheckoutConflictException("The flash sale of product " + productId + " is still ending, please try again.");
+        if (current != null)
+            return true;
+        return stockDao.readStockLocked(productId, stock -> sales.put(productId, new Sale(productId, Math.max(stock, 0), stripes)));
+    }
+
+    // Ends the sale without waiting: new checkouts of the product are refused from now on, and once the
+    // admitted ones committed or released and everything sold is written to products.stock (by the last
+    // of them, or the next reconcile if that write fails) the database owns the stock again
+    public boolean stop(int productId)
+    {
+        Sale sale = sales.get(productId);
+        if (sale == null)
+            return false;
+
+        sale.closed = true;
+        endIfDrained(sale);
+        return true;
+    }
+
+    public boolean isActive()
+    {
+        return !sales.isEmpty();
+    }
+
+    public boolean isHeldInMemory(int productId)
+    {
+        return sales.containsKey(productId);
+    }
+
+    /**
+     * Takes the cart's flash-sale units from the counters, all or nothing, and waits (briefly) for an
+     * admission slot. Throws InsufficientStockException when a line cannot be filled and
+     * CheckoutConflictException when no slot opens up or a sale is ending; in both cases nothing is held.
+     * The caller must commit() or release() the reservation it gets.
+     */
+    public Reservation reserve(ShoppingCart cart) throws InterruptedException
+    {
+        Map<Sale, Integer> taken = new HashMap<>();
+        List<StockShortage> shortages = new ArrayList<>();
+
+        for (ShoppingCartItem item : cart.getItems().values())
+        {
+            Sale sale = sales.get(item.getProductId());
+            if (sale == null)
+                continue;
+
+            // joined first and checked after, so a stop() that saw no checkout in flight is always seen here
+            sale.inFlight.incrementAndGet();
+            if (sale.closed)
+            {
+                leave(sale);
+                giveBack(taken);
+                throw new CheckoutConflictException("The flash sale of product " + sale.productId + " is ending, please try again.");
+            }
+
+            if (sale.counter.tryTake(item.getQuantity()))
+            {
+                taken.put(sale, item.getQuantity());
+            }
+            else
+            {
+                leave(sale);
+                shortages.add(new StockShortage(item.getProductId(), item.getProduct().getName(),
+                        item.getQuantity(), sale.counter.available()));
+            }
+        }
+
+        if (!shortages.isEmpty())
+        {
+            giveBack(taken);
+            throw new InsufficientStockException(shortages);
+        }
+        if (taken.isEmpty())
+            return new Reservation(taken, false);
+
+        // only winners queue for a slot, so the checkouts hitting MySQL at once stay bounded
+        if (!admissions.tryAcquire(admissionWaitMillis, TimeUnit.MILLISECONDS))
+        {
+            giveBack(taken);
+            throw new CheckoutConflictException("Too many checkouts right now, please try again.");
+        }
+        return new Reservation(taken, true);
+    }
+
+    // For checkouts without flash-sale lines: reserves nothing, but still answers isHeldInMemory
+    public Reservation none()
+    {
+        return new Reservation(Map.of(), false);
+    }
+
+    // Writes the units sold since the last pass to products.stock in one batch, then hands the
+    // products of ended sales with no checkout left in flight back to the database.
+    // The products written are passed to stockChanged afterwards.
+    public void reconcile()
+    {
+        Map<Integer, Integer> sold = new TreeMap<>();
+        synchronized (reconcileLock)
+        {
+            for (Sale sale : sales.values())
+            {
+                int units = sale.unreconciled.getAndSet(0);
+                if (units > 0)
+                    sold.put(sale.productId, units);
+            }
+
+            if (!sold.isEmpty())
+            {
+                try
+                {
+                    stockDao.takeStock(sold);
+                }
+                catch (RuntimeException e)
+                {
+                    // keep them for the next pass; sales are only removed in here, so they are all still there
+                    sold.forEach((productId, units) -> sales.get(productId).unreconciled.addAndGet(units));
+                    throw e;
+                }
+            }
+
+            // a commit adds its units before it leaves, so a drained sale has nothing left to write
+            sales.values().removeIf(sale -> sale.closed && sale.inFlight.get() == 0 && sale.unreconciled.get() == 0);
+        }
+
+        if (sold.isEmpty())
+            return;
+        try
+        {
+            stockChanged.accept(sold.keySet());
+        }
+        catch (RuntimeException e)
+        {
+            // the units are written; only the product views stay behind until their next refresh
+            logger.warn("Refreshing the stock of products " + sold.keySet() + " failed: " + e.getMessage());
+        }
+    }
+
+    public List<FlashSaleStatus> getStatus()
+    {
+        List<FlashSaleStatus> status = new ArrayList<>();
+        for (Sale sale : new TreeMap<>(sales).values())
+            status.add(new FlashSaleStatus(sale.productId, sale.counter.available(), sale.sold.get(), sale.unreconciled.get(), sale.closed));
+        return status;
+    }
+
+    // Writes what is still unreconciled (Spring calls this on shutdown)
+    @Override
+    public void close()
+    {
+        reconciler.shutdownNow();
+        reconcile();
+    }
+
+    private void reconcileQuietly()
+    {
+        try
+        {
+            reconcile();
+        }
+        catch (RuntimeException e)
+        {
+            logger.warn("Flash sale stock reconcile failed, will retry: " + e.getMessage());
+        }
+    }
+
+    private void giveBack(Map<Sale, Integer> taken)
+    {
+        taken.forEach((sale, units) -> {
+            sale.counter.give(units);
+            leave(sale);
+        });
+        taken.clear();
+    }
+
+    // A reservation is done with the sale; the last one out of an ended sale hands it back to the database
+    private void leave(Sale sale)
+    {
+        if (sale.inFlight.decrementAndGet() == 0 && sale.closed)
+            endIfDrained(sale);
+    }
+
+    private void endIfDrained(Sale sale)
+    {
+        if (sale.inFlight.get() > 0)
+            return;
+        try
+        {
+            reconcile();
+        }
+        catch (RuntimeException e)
+        {
+            // the sale stays (refusing checkouts) until the periodic reconcile gets the write through
+            logger.warn("Flash sale stock write-back of product " + sale.productId + " failed, will retry: " + e.getMessage());
+        }
+    }
+
+    public class Reservation implements StockReservation
+    {
+        private final Map<Integer, Integer> quantities = new HashMap<>();
+        private final Map<Sale, Integer> taken;
+        private final boolean admitted;
+        private boolean done;
+
+        private Reservation(Map<Sale, Integer> taken, boolean admitted)
+        {
+            this.taken = taken;
+            this.admitted = admitted;
+            taken.forEach((sale, units) -> quantities.put(sale.productId, units));
+        }
+
+        @Override
+        public int getReserved(int productId)
+        {
+            return quantities.getOrDefault(productId, 0);
+        }
+
+        @Override
+        public int getReservedLineCount()
+        {
+            return quantities.size();
+        }
+
+        @Override
+        public boolean isHeldInMemory(int productId)
+        {
+            return FlashSaleStock.this.isHeldInMemory(productId);
+        }
+
+        public Map<Integer, Integer> getQuantities()
+        {
+            return quantities;
+        }
+
+        // The order was placed: the units stay sold and are written to products.stock by the next reconcile
+        public synchronized void commit()
+        {
+            if (done)
+                return;
+            done = true;
+            taken.forEach((sale, units) -> {
+                sale.sold.addAndGet(units);
+                sale.unreconciled.addAndGet(units);
+                leave(sale);
+            });
+            if (admitted)
+                admissions.release();
+        }
+
+        // The checkout failed: the units go back on sale
+        public synchronized void release()
+        {
+            if (done)
+                return;
+            done = true;
+            giveBack(taken);
+            if (admitted)
+                admissions.release();
+        }
+    }
+
+    private static class Sale
+    {
+        private final int productId;
+        private final StripedCounter counter;
+        private final AtomicLong sold = new AtomicLong();
+        private final AtomicInteger unreconciled = new AtomicInteger();
+        // reservations neither committed nor released yet
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile boolean closed;
+
+        private Sale(int productId, int stock, int stripes)
+        {
+            this.productId = productId;
+            this.counter = new StripedCounter(stock, stripes);
+        }
+    }
+
+    /**
+     * Stock split over several cells, so concurrent checkouts mostly compare-and-set different cache
+     * lines. A take starts at a random cell and moves on when a cell runs dry; if all cells together
+     * cannot fill it, what it got is put back.
+     */
+    static class StripedCounter
+    {
+        // ints between two cells, so each sits on its own 64-byte cache line
+        private static final int PADDING = 16;
+
+        private final AtomicIntegerArray cells;
+        private final int stripes;
+
+        StripedCounter(int stock, int stripes)
+        {
+            this.stripes = stripes;
+            this.cells = new AtomicIntegerArray(stripes * PADDING);
+            for (int i = 0; i < stripes; i++)
+                cells.set(i * PADDING, stock / stripes + (i < stock % stripes ? 1 : 0));
+        }
+
+        boolean tryTake(int quantity)
+        {
+            int first = ThreadLocalRandom.current().nextInt(stripes);
+            int needed = quantity;
+            int[] takenPerCell = null;
+
+            for (int i = 0; i < stripes && needed > 0; i++)
+            {
+                int cell = (first + i) % stripes * PADDING;
+                while (true)
+                {
+                    int current = cells.get(cell);
+                    if (current == 0)
+                        break;
+                    int take = Math.min(current, needed);
+                    if (cells.compareAndSet(cell, current, current - take))
+                    {
+                        needed -= take;
+                        if (needed > 0 || takenPerCell != null)
+                        {
+                            if (takenPerCell == null)
+                                takenPerCell = new int[stripes];
+                            takenPerCell[cell / PADDING] += take;
+                        }
+                        break;
+                    }
+                }
+            }
+
+            if (needed == 0)
+                return true;
+
+            if (takenPerCell != null)
+                for (int i = 0; i < stripes; i++)
+                    if (takenPerCell[i] > 0)
+                        cells.addAndGet(i * PADDING, takenPerCell[i]);
+            return false;
+        }
+
+        void give(int quantity)
+        {
+            cells.addAndGet(ThreadLocalRandom.current().nextInt(stripes) * PADDING, quantity);
+        }
+
+        int available()
+        {
+            int total = 0;
+            for (int i = 0; i < stripes; i++)
+                total += cells.get(i * PADDING);
+            return total;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package org.yearup.data;
+
+// Thrown by IdempotencyStore when the original request with the same key is still running or did
+// not finish; nothing new was run and the client can simply try again later. The message is meant
+// for the client.
+public class IdempotencyConflictException extends RuntimeException {
+
+    private static final long serialVersionUID = 4183021765390412877L;
+
+    public IdempotencyConflictException(String message) {
+        super(message);
+    }
+}
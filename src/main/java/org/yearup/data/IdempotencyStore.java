@@ -0,0 +1,189 @@
+package org.yearup.data;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Results of requests sent with an Idempotency-Key, so a client retrying after a timeout gets the
+ * original result instead of running the request again. The first request with a key runs the
+ * action; a retry that arrives while it is still running waits for it (at most waitMillis), and one
+ * that arrives later gets the stored result. Only successes are kept: a failed action wrote nothing,
+ * so its key is dropped and the next retry runs it again (requests waiting on it get the same error).
+ * Completed entries expire ttl after they finished; at most maxSize are kept, oldest dropped first.
+ * Requests still running are never dropped, so two of them can never run for the same key.
+ */
+public class IdempotencyStore<T>
+{
+    private final int maxSize;
+    private final long ttlNanos;
+    private final long waitMillis;
+
+    // insertion order, so the oldest entries are at the head; guarded by this
+    private final LinkedHashMap<String, Entry<T>> entries = new LinkedHashMap<>();
+
+    public IdempotencyStore(int maxSize, Duration ttl, long waitMillis)
+    {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.waitMillis = waitMillis;
+    }
+
+    /**
+     * Runs the action once per key. Exceptions of the action are rethrown to the caller and to the
+     * requests waiting on it; IdempotencyConflictException means the original request is still
+     * running (or was interrupted) and the client should retry later.
+     */
+    public Result<T> execute(String key, Action<T> action) throws InterruptedException
+    {
+        Entry<T> entry;
+        Entry<T> original;
+        synchronized (this)
+        {
+            long now = System.nanoTime();
+            evictExpired(now);
+
+            entry = entries.get(key);
+            if (entry != null && entry.isExpired(now, ttlNanos))
+            {
+                entries.remove(key);
+                entry = null;
+            }
+            original = entry;
+            if (original == null)
+            {
+                entry = new Entry<>();
+                entries.put(key, entry);
+                evictOverflow();
+            }
+        }
+
+        if (original != null)
+            return new Result<>(original.await(waitMillis), true);
+
+        try
+        {
+            T value = action.run();
+            entry.complete(value);
+            return new Result<>(value, false);
+        }
+        catch (RuntimeException | Error | InterruptedException e)
+        {
+            synchronized (this)
+            {
+                entries.remove(key, entry);
+            }
+            entry.fail(e);
+            throw e;
+        }
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    // must hold this; completed entries finish roughly in insertion order, so stop at the first live one
+    private void evictExpired(long now)
+    {
+        Iterator<Entry<T>> iterator = entries.values().iterator();
+        while (iterator.hasNext())
+        {
+            Entry<T> entry = iterator.next();
+            if (entry.isExpired(now, ttlNanos))
+                iterator.remove();
+            else if (entry.isDone())
+                break;
+        }
+    }
+
+    // must hold this; drops the oldest completed entries
+    private void evictOverflow()
+    {
+        Iterator<Entry<T>> iterator = entries.values().iterator();
+        while (entries.size() > maxSize && iterator.hasNext())
+        {
+            if (iterator.next().isDone())
+                iterator.remove();
+        }
+    }
+
+    public interface Action<T>
+    {
+        T run() throws InterruptedException;
+    }
+
+    public static class Result<T>
+    {
+        private final T value;
+        private final boolean replayed;
+
+        private Result(T value, boolean replayed)
+        {
+            this.value = value;
+            this.replayed = replayed;
+        }
+
+        public T getValue()
+        {
+            return value;
+        }
+
+        // true when the value is the stored result of an earlier request with the same key
+        public boolean isReplayed()
+        {
+            return replayed;
+        }
+    }
+
+    private static class Entry<T>
+    {
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private volatile long completedAt;
+
+        void complete(T value)
+        {
+            completedAt = System.nanoTime();
+            result.complete(value);
+        }
+
+        void fail(Throwable e)
+        {
+            result.completeExceptionally(e);
+        }
+
+        boolean isDone()
+        {
+            return result.isDone();
+        }
+
+        boolean isExpired(long now, long ttlNanos)
+        {
+            return result.isDone() && !result.isCompletedExceptionally() && now - completedAt >= ttlNanos;
+        }
+
+        T await(long waitMillis) throws InterruptedException
+        {
+            try
+            {
+                return result.get(waitMillis, TimeUnit.MILLISECONDS);
+            }
+            catch (TimeoutException e)
+            {
+                throw new IdempotencyConflictException("A request with this Idempotency-Key is still in progress, please try again.");
+            }
+            catch (ExecutionException e)
+            {
+                if (e.getCause() instanceof RuntimeException cause)
+                    throw cause;
+                if (e.getCause() instanceof Error cause)
+                    throw cause;
+                throw new IdempotencyConflictException("The request with this Idempotency-Key did not finish, please try again.");
+            }
+        }
+    }
+}
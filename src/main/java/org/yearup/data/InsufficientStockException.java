@@ -0,0 +1,22 @@
+package org.yearup.data;
+
+import org.yearup.models.StockShortage;
+
+import java.util.List;
+
+// Thrown by checkout when some cart lines are not in stock; nothing was written
+public class InsufficientStockException extends RuntimeException {
+
+    private static final long serialVersionUID = 4061935583210276341L;
+
+    private final List<StockShortage> shortages;
+
+    public InsufficientStockException(List<StockShortage> shortages) {
+        super("Not enough stock for: " + shortages);
+        this.shortages = shortages;
+    }
+
+    public List<StockShortage> getShortages() {
+        return shortages;
+    }
+}
@@ -0,0 +1,118 @@
+package org.yearup.data;
+
+import org.yearup.models.Product;
+import org.yearup.models.ProductField;
+import org.yearup.models.ProductPage;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * ProductDao decorator that tells registered listeners (search index, facet counts, ...)
+ * about every successful product write. Reads pass straight through to the wrapped dao.
+ */
+public class NotifyingProductDao implements ProductDao
+{
+    private final ProductDao delegate;
+    private final List<ProductChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    public NotifyingProductDao(ProductDao delegate)
+    {
+        this.delegate = delegate;
+    }
+
+    public void addListener(ProductChangeListener listener)
+    {
+        listeners.add(listener);
+    }
+
+    @Override
+    public List<Product> search(Integer categoryId, BigDecimal minPrice, BigDecimal maxPrice, String subCategory)
+    {
+        return delegate.search(categoryId, minPrice, maxPrice, subCategory);
+    }
+
+    @Override
+    public ProductPage search(Integer categoryId, BigDecimal minPrice, BigDecimal maxPrice, String subCategory,
+                              ProductSort sort, ProductCursor after, int limit, Set<ProductField> fields)
+    {
+        return delegate.search(categoryId, minPrice, maxPrice, subCategory, sort, after, limit, fields);
+    }
+
+    @Override
+    public void streamSearch(Integer categoryId, BigDecimal minPrice, BigDecimal maxPrice, String subCategory,
+                             Set<ProductField> fields, ProductHandler handler)
+    {
+        delegate.streamSearch(categoryId, minPrice, maxPrice, subCategory, fields, handler);
+    }
+
+    @Override
+    public List<Product> listByCategoryId(int categoryId)
+    {
+        return delegate.listByCategoryId(categoryId);
+    }
+
+    @Override
+    public Product getById(int productId)
+    {
+        return delegate.getById(productId);
+    }
+
+    @Override
+    public Map<Integer, Product> getByIds(Collection<Integer> productIds)
+    {
+        return delegate.getByIds(productIds);
+    }
+
+    @Override
+    public Product create(Product product)
+    {
+        Product created = delegate.create(product);
+        saved(created);
+        return created;
+    }
+
+    @Override
+    public void update(int productId, Product product)
+    {
+        delegate.update(productId, product);
+
+        // listeners get what was stored, not what was sent
+        Product updated = delegate.getById(productId);
+        if (updated == null)
+            deleted(productId);
+        else
+            saved(updated);
+    }
+
+    @Override
+    public void delete(int productId)
+    {
+        delegate.delete(productId);
+        deleted(productId);
+    }
+
+    @Override
+    public void stockChanged(Collection<Integer> productIds)
+    {
+        delegate.stockChanged(productIds);
+        for (ProductChangeListener listener : listeners)
+            listener.stockChanged(productIds);
+    }
+
+    private void saved(Product product)
+    {
+        for (ProductChangeListener listener : listeners)
+            listener.productSaved(product);
+    }
+
+    private void deleted(int productId)
+    {
+        for (ProductChangeListener listener : listeners)
+            listener.productDeleted(productId);
+    }
+}
@@ -1,12 +1,19 @@
 package org.yearup.data;
 
+import org.yearup.models.CheckoutResult;
 import org.yearup.models.Order;
-import org.yearup.models.ShoppingCart;
 
 import java.util.List;
 
 public interface OrdersDao {
-    Order createOrderFromCart(int userId, ShoppingCart cart);
+    // Checkout in one transaction: cart read, stock, order and lines, cart clear; null if the cart is empty.
+    // Throws InsufficientStockException (writing nothing) when a line is short.
+    // Lines reserved in memory (flash sales) skip the stock update; throws CheckoutConflictException if the
+    // cart no longer matches the reservation.
+    Order checkout(int userId, StockReservation reservation);
+    // Group commit: the checkouts of several users in one transaction, one result per user id in the same order.
+    // A short or empty cart only fails its own checkout; products held in memory (flash sales) fail theirs too.
+    List<CheckoutResult> checkoutAll(List<Integer> userIds, StockReservation inMemory);
     // Order history (all orders for the logged-in user)
     List<Order> getOrdersByUserId(int userId);
 
@@ -0,0 +1,251 @@
+package org.yearup.data;
+
+import org.yearup.models.CacheStats;
+import org.yearup.models.Product;
+import org.yearup.models.ProductField;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Bounded product-by-id cache with per-entry TTL and sampled LFU eviction.
+ * Hits are lock-free map reads; inserts and removals take the cache lock, which
+ * is fine because they only happen on a miss (a database round trip anyway) or a write.
+ * Missing products are cached too, so repeated existence checks for bad ids stay cheap.
+ */
+public class ProductCache
+{
+    // how many random entries are compared when one has to go
+    private static final int EVICTION_SAMPLE = 5;
+    // frequencies saturate here and are halved periodically so old popularity fades
+    private static final int MAX_FREQUENCY = 15;
+
+    private final int maxSize;
+    private final long ttlNanos;
+
+    private final ConcurrentHashMap<Integer, Entry> entries;
+    // dense array of cached keys, used to pick eviction samples at random
+    private final int[] slots;
+    private int count;
+    private int insertsSinceAging;
+
+    // bumped by every invalidation; a load that raced with one is not cached
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public ProductCache(int maxSize, long ttlSeconds)
+    {
+        this.maxSize = Math.max(0, maxSize);
+        this.ttlNanos = ttlSeconds * 1_000_000_000L;
+        this.entries = new ConcurrentHashMap<>(Math.max(16, this.maxSize * 4 / 3));
+        this.slots = new int[this.maxSize];
+    }
+
+    public boolean isEnabled()
+    {
+        return maxSize > 0;
+    }
+
+    // Returns the cached product (or cached absence), loading and caching it on a miss
+    public Product get(int productId, IntFunction<Product> loader)
+    {
+        Entry entry = entries.get(productId);
+        if (entry != null)
+        {
+            if (entry.expiresAt - System.nanoTime() > 0)
+            {
+                hits.increment();
+                entry.touch();
+                return copy(entry.product);
+            }
+            if (remove(productId, entry))
+                expirations.increment();
+        }
+
+        misses.increment();
+        long before = generation.get();
+        Product product = loader.apply(productId);
+
+        if (isEnabled() && generation.get() == before)
+            insert(productId, copy(product));
+
+        return product;
+    }
+
+    // Multi-get: serves what it can from the cache and hands the rest to the loader in one call
+    public Map<Integer, Product> getAll(Collection<Integer> productIds,
+                                        Function<Collection<Integer>, Map<Integer, Product>> loader)
+    {
+        Map<Integer, Product> products = new HashMap<>();
+        Set<Integer> missing = new LinkedHashSet<>();
+        long now = System.nanoTime();
+
+        for (Integer productId : productIds)
+        {
+            Entry entry = entries.get(productId);
+            if (entry != null && entry.expiresAt - now > 0)
+            {
+                hits.increment();
+                entry.touch();
+                if (entry.product != null)
+                    products.put(productId, copy(entry.product));
+            }
+            else if (!missing.contains(productId))
+            {
+                if (entry != null && remove(productId, entry))
+                    expirations.increment();
+                missing.add(productId);
+            }
+        }
+
+        if (missing.isEmpty())
+            return products;
+
+        misses.add(missing.size());
+        long before = generation.get();
+        Map<Integer, Product> loaded = loader.apply(missing);
+        products.putAll(loaded);
+
+        if (isEnabled() && generation.get() == before)
+        {
+            // ids the loader did not return are cached as missing
+            for (Integer productId : missing)
+                insert(productId, copy(loaded.get(productId)));
+        }
+        return products;
+    }
+
+    // Caches a product that was just written, e.g. the result of create
+    public void put(Product product)
+    {
+        if (isEnabled())
+            insert(product.getProductId(), copy(product));
+    }
+
+    public void invalidate(int productId)
+    {
+        generation.incrementAndGet();
+        Entry entry = entries.get(productId);
+        if (entry != null && remove(productId, entry))
+            invalidations.increment();
+    }
+
+    public CacheStats getStats()
+    {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), expirations.sum(),
+                invalidations.sum(), entries.size(), maxSize);
+    }
+
+    // Products are mutable, so the cache keeps its own copies and hands out copies: a caller changing
+    // the product it got (a price on an order line, say) never changes what the next caller gets
+    private static Product copy(Product product)
+    {
+        return product == null ? null : ProductField.copy(product, null);
+    }
+
+    private synchronized void insert(int productId, Product product)
+    {
+        Entry existing = entries.get(productId);
+        Entry entry = new Entry(product, System.nanoTime() + ttlNanos);
+
+        if (existing != null)
+        {
+            entry.slot = existing.slot;
+            entry.frequency = existing.frequency;
+            entries.put(productId, entry);
+            return;
+        }
+
+        if (count == maxSize)
+            evictOne();
+
+        entry.slot = count;
+        slots[count++] = productId;
+        entries.put(productId, entry);
+
+        if (++insertsSinceAging >= maxSize * 10)
+            age();
+    }
+
+    private synchronized boolean remove(int productId, Entry entry)
+    {
+        if (!entries.remove(productId, entry))
+            return false;
+
+        // keep the slot array dense by moving the last key into the hole
+        int last = slots[--count];
+        if (entry.slot != count)
+        {
+            slots[entry.slot] = last;
+            entries.get(last).slot = entry.slot;
+        }
+        return true;
+    }
+
+    // sampled LFU: look at a few random entries and drop the least used (expired ones first)
+    private void evictOne()
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long now = System.nanoTime();
+
+        int victim = -1;
+        Entry victimEntry = null;
+        for (int i = 0; i < EVICTION_SAMPLE; i++)
+        {
+            int key = slots[random.nextInt(count)];
+            Entry candidate = entries.get(key);
+            int frequency = candidate.expiresAt - now > 0 ? candidate.frequency : -1;
+
+            if (victimEntry == null || frequency < (victimEntry.expiresAt - now > 0 ? victimEntry.frequency : -1))
+            {
+                victim = key;
+                victimEntry = candidate;
+            }
+        }
+
+        remove(victim, victimEntry);
+        evictions.increment();
+    }
+
+    private void age()
+    {
+        insertsSinceAging = 0;
+        for (Entry entry : entries.values())
+            entry.frequency >>= 1;
+    }
+
+    private static class Entry
+    {
+        final Product product;   // null when the product does not exist
+        final long expiresAt;
+        int slot;                // guarded by the cache lock
+        volatile int frequency;  // racy increments are fine, it is only a hint
+
+        Entry(Product product, long expiresAt)
+        {
+            this.product = product;
+            this.expiresAt = expiresAt;
+        }
+
+        void touch()
+        {
+            int f = frequency;
+            if (f < MAX_FREQUENCY)
+                frequency = f + 1;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package org.yearup.data;
+
+import org.yearup.models.Product;
+
+import java.util.Collection;
+
+// Told about every product write that went through NotifyingProductDao
+public interface ProductChangeListener
+{
+    // product is the row as stored after a create or update
+    void productSaved(Product product);
+
+    void productDeleted(int productId);
+
+    // only the stock of these products changed; listeners that do not keep stock can ignore it
+    default void stockChanged(Collection<Integer> productIds)
+    {
+    }
+}
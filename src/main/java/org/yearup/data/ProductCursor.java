@@ -0,0 +1,100 @@
+package org.yearup.data;
+
+import org.yearup.models.Product;
+import org.yearup.models.ProductPage;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Keyset position in a sorted product listing: the sort key and product_id of the
+ * last product on the previous page. Clients only ever see the opaque token.
+ */
+public class ProductCursor
+{
+    private final ProductSort sort;
+    private final int productId;
+    private final String key;
+
+    private ProductCursor(ProductSort sort, int productId, String key)
+    {
+        this.sort = sort;
+        this.productId = productId;
+        this.key = key;
+    }
+
+    public static ProductCursor after(Product product, ProductSort sort)
+    {
+        String key = switch (sort)
+        {
+            case PRICE -> product.getPrice().toPlainString();
+            case NAME -> product.getName();
+            case ID -> "";
+        };
+        return new ProductCursor(sort, product.getProductId(), key);
+    }
+
+    public ProductSort getSort()
+    {
+        return sort;
+    }
+
+    public int getProductId()
+    {
+        return productId;
+    }
+
+    public BigDecimal getPrice()
+    {
+        return new BigDecimal(key);
+    }
+
+    public String getName()
+    {
+        return key;
+    }
+
+    public String encode()
+    {
+        // the key goes last because names may contain the separator
+        String raw = sort.name() + ":" + productId + ":" + key;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Returns null for a missing token; a token from a different sort or a tampered one is rejected
+    public static ProductCursor decode(String token, ProductSort sort)
+    {
+        if (token == null || token.isBlank())
+            return null;
+
+        try
+        {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":", 3);
+            if (parts.length != 3 || ProductSort.valueOf(parts[0]) != sort)
+                throw new IllegalArgumentException("Cursor does not match sort " + sort);
+
+            if (sort == ProductSort.PRICE)
+                new BigDecimal(parts[2]);
+
+            return new ProductCursor(sort, Integer.parseInt(parts[1]), parts[2]);
+        }
+        catch (IllegalArgumentException e)
+        {
+            // NumberFormatException is an IllegalArgumentException too
+            throw new IllegalArgumentException("Invalid cursor: " + token, e);
+        }
+    }
+
+    // DAOs fetch limit + 1 rows; the extra row only tells us there is another page
+    public static ProductPage toPage(List<Product> rows, int limit, ProductSort sort)
+    {
+        if (limit <= 0 || rows.size() <= limit)
+            return new ProductPage(rows, null);
+
+        List<Product> items = rows.subList(0, limit);
+        return new ProductPage(items, after(items.get(limit - 1), sort).encode());
+    }
+}
@@ -1,16 +1,42 @@
 package org.yearup.data;
 
 import org.yearup.models.Product;
+import org.yearup.models.ProductField;
+import org.yearup.models.ProductPage;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public interface ProductDao
 {
     List<Product> search(Integer categoryId, BigDecimal minPrice, BigDecimal maxPrice, String subCategory);
+    // keyset paging: rows strictly after the cursor (null = first page), limit <= 0 means no limit
+    // fields: properties the caller needs (null = all); others may be left unset
+    ProductPage search(Integer categoryId, BigDecimal minPrice, BigDecimal maxPrice, String subCategory, ProductSort sort, ProductCursor after, int limit, Set<ProductField> fields);
+    // streaming search: each row is handed to the handler as it is read, nothing is collected
+    void streamSearch(Integer categoryId, BigDecimal minPrice, BigDecimal maxPrice, String subCategory, Set<ProductField> fields, ProductHandler handler);
     List<Product> listByCategoryId(int categoryId);
     Product getById(int productId);
+    // productId -> product for every id that exists; missing ids are simply absent.
+    // A null id is rejected with IllegalArgumentException (see checkIds)
+    Map<Integer, Product> getByIds(Collection<Integer> productIds);
     Product create(Product product);
     void update(int productId, Product product);
     void delete(int productId);
+    // these rows' stock was changed in the database by something other than update() (checkouts,
+    // flash-sale write-backs); layers holding products in memory re-read them
+    void stockChanged(Collection<Integer> productIds);
+
+    // For getByIds: a null id (GET /products?ids=1,,2 binds one) cannot be looked up
+    static void checkIds(Collection<Integer> productIds)
+    {
+        for (Integer productId : productIds)
+        {
+            if (productId == null)
+                throw new IllegalArgumentException("Product ids must be numbers.");
+        }
+    }
 }
@@ -0,0 +1,12 @@
+package org.yearup.data;
+
+import org.yearup.models.Product;
+
+import java.io.IOException;
+
+// Receives products one row at a time from a streaming query
+@FunctionalInterface
+public interface ProductHandler
+{
+    void handle(Product product) throws IOException;
+}
@@ -0,0 +1,26 @@
+package org.yearup.data;
+
+import java.util.Locale;
+
+// Orderings supported by paged product searches; product_id is always the tie breaker
+public enum ProductSort
+{
+    ID,
+    PRICE,
+    NAME;
+
+    public static ProductSort parse(String value)
+    {
+        if (value == null || value.isBlank())
+            return ID;
+
+        try
+        {
+            return ProductSort.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new IllegalArgumentException("Unknown sort: " + value + " (expected id, price or name)");
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.yearup.data;
+
+import org.yearup.models.CartOperation;
+import org.yearup.models.ExpiredCarts;
+import org.yearup.models.ShoppingCart;
+import org.yearup.pricing.PromotionEngine;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * ShoppingCartDao decorator that applies the current promotions to every cart it hands out,
+ * so the cart page and checkout see the same discounts. Writes pass straight through.
+ */
+public class PromotingShoppingCartDao implements ShoppingCartDao, AutoCloseable
+{
+    private final ShoppingCartDao delegate;
+    private final PromotionEngine promotionEngine;
+
+    public PromotingShoppingCartDao(ShoppingCartDao delegate, PromotionEngine promotionEngine)
+    {
+        this.delegate = delegate;
+        this.promotionEngine = promotionEngine;
+    }
+
+    @Override
+    public ShoppingCart getByUserId(int userId)
+    {
+        return promote(delegate.getByUserId(userId));
+    }
+
+    @Override
+    public ShoppingCart getByUserIdWithoutDescriptions(int userId)
+    {
+        return promote(delegate.getByUserIdWithoutDescriptions(userId));
+    }
+
+    @Override
+    public ShoppingCart addProduct(int userId, int productId)
+    {
+        return promote(delegate.addProduct(userId, productId));
+    }
+
+    @Override
+    public void updateProduct(int userId, int productId, int quantity)
+    {
+        delegate.updateProduct(userId, productId, quantity);
+    }
+
+    @Override
+    public void clearCart(int userId)
+    {
+        delegate.clearCart(userId);
+    }
+
+    @Override
+    public void removeProduct(int userId, int productId)
+    {
+        delegate.removeProduct(userId, productId);
+    }
+
+    @Override
+    public ShoppingCart applyOperations(int userId, List<CartOperation> operations)
+    {
+        return promote(delegate.applyOperations(userId, operations));
+    }
+
+    @Override
+    public void flush(int userId)
+    {
+        delegate.flush(userId);
+    }
+
+    @Override
+    public void evict(int userId)
+    {
+        delegate.evict(userId);
+    }
+
+    @Override
+    public ExpiredCarts deleteIdleCarts(LocalDateTime idleSince, int afterUserId, int limit)
+    {
+        return delegate.deleteIdleCarts(idleSince, afterUserId, limit);
+    }
+
+    // lets Spring shut down a write-behind store behind this decorator
+    @Override
+    public void close() throws Exception
+    {
+        if (delegate instanceof AutoCloseable closeable)
+            closeable.close();
+    }
+
+    private ShoppingCart promote(ShoppingCart cart)
+    {
+        if (cart != null)
+            promotionEngine.apply(cart);
+        return cart;
+    }
+}
@@ -0,0 +1,11 @@
+package org.yearup.data;
+
+import org.yearup.models.Promotion;
+
+import java.util.List;
+
+public interface PromotionDao
+{
+    // every promotion that has not ended yet; PromotionIndex checks the time window per cart
+    List<Promotion> getCurrent();
+}
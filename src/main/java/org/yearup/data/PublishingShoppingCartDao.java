@@ -0,0 +1,113 @@
+package org.yearup.data;
+
+import org.yearup.models.CartOperation;
+import org.yearup.models.ExpiredCarts;
+import org.yearup.models.ShoppingCart;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * ShoppingCartDao decorator that publishes the new cart to the {@link CartEventHub} after every change,
+ * for GET /cart/stream. Writes that do not return the cart only read it back when that user has an
+ * open stream, so carts nobody is watching cost no extra query. Concurrent writes may publish in
+ * either order; the hub keeps the cart with the higher version.
+ */
+public class PublishingShoppingCartDao implements ShoppingCartDao, AutoCloseable
+{
+    private final ShoppingCartDao delegate;
+    private final CartEventHub cartEventHub;
+
+    public PublishingShoppingCartDao(ShoppingCartDao delegate, CartEventHub cartEventHub)
+    {
+        this.delegate = delegate;
+        this.cartEventHub = cartEventHub;
+    }
+
+    @Override
+    public ShoppingCart getByUserId(int userId)
+    {
+        return delegate.getByUserId(userId);
+    }
+
+    @Override
+    public ShoppingCart getByUserIdWithoutDescriptions(int userId)
+    {
+        return delegate.getByUserIdWithoutDescriptions(userId);
+    }
+
+    @Override
+    public ShoppingCart addProduct(int userId, int productId)
+    {
+        return publish(userId, delegate.addProduct(userId, productId));
+    }
+
+    @Override
+    public void updateProduct(int userId, int productId, int quantity)
+    {
+        delegate.updateProduct(userId, productId, quantity);
+        publishCurrent(userId);
+    }
+
+    @Override
+    public void clearCart(int userId)
+    {
+        delegate.clearCart(userId);
+        publishCurrent(userId);
+    }
+
+    @Override
+    public void removeProduct(int userId, int productId)
+    {
+        delegate.removeProduct(userId, productId);
+        publishCurrent(userId);
+    }
+
+    @Override
+    public ShoppingCart applyOperations(int userId, List<CartOperation> operations)
+    {
+        return publish(userId, delegate.applyOperations(userId, operations));
+    }
+
+    @Override
+    public void flush(int userId)
+    {
+        delegate.flush(userId);
+    }
+
+    @Override
+    public void evict(int userId)
+    {
+        delegate.evict(userId);
+        publishCurrent(userId);
+    }
+
+    @Override
+    public ExpiredCarts deleteIdleCarts(LocalDateTime idleSince, int afterUserId, int limit)
+    {
+        ExpiredCarts expired = delegate.deleteIdleCarts(idleSince, afterUserId, limit);
+        for (Integer userId : expired.getUserIds())
+            publishCurrent(userId);
+        return expired;
+    }
+
+    @Override
+    public void close() throws Exception
+    {
+        if (delegate instanceof AutoCloseable closeable)
+            closeable.close();
+    }
+
+    private ShoppingCart publish(int userId, ShoppingCart cart)
+    {
+        if (cart != null)
+            cartEventHub.publish(userId, cart);
+        return cart;
+    }
+
+    private void publishCurrent(int userId)
+    {
+        if (cartEventHub.hasSubscribers(userId))
+            cartEventHub.publish(userId, delegate.getByUserId(userId));
+    }
+}
@@ -1,15 +1,31 @@
 
 package org.yearup.data;
+import org.yearup.models.CartOperation;
+import org.yearup.models.ExpiredCarts;
 import org.yearup.models.ShoppingCart;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
 
 
 public interface ShoppingCartDao {
 
     ShoppingCart getByUserId(int userId);
-    void addProduct(int userId, int productId);
+    // Same cart, but its products may come without their description (TEXT); for carts that are only compared, never returned
+    default ShoppingCart getByUserIdWithoutDescriptions(int userId) { return getByUserId(userId); }
+    // Adds one of the product (or one more) and returns the updated cart; null if the product does not exist
+    ShoppingCart addProduct(int userId, int productId);
     void updateProduct(int userId, int productId, int quantity);
     void clearCart(int userId);
     // add: required for DELETE /cart/products/{productId}
     void removeProduct(int userId, int productId);
+    // Applies add/set/remove operations in order as one change and returns the resulting cart (PATCH /cart)
+    ShoppingCart applyOperations(int userId, List<CartOperation> operations);
+    // Makes sure every change to this cart is stored in the database (checkout reads it from there)
+    void flush(int userId);
+    // Forgets whatever is held in memory for this cart after it was changed directly in the database (checkout)
+    void evict(int userId);
+    // Deletes carts nobody changed since idleSince, looking at `limit` users after afterUserId (see CartExpirySweeper)
+    ExpiredCarts deleteIdleCarts(LocalDateTime idleSince, int afterUserId, int limit);
 }
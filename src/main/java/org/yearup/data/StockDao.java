@@ -0,0 +1,14 @@
+package org.yearup.data;
+
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+public interface StockDao
+{
+    // Locks the product row, reads its stock and hands it to whileLocked before the lock is released;
+    // false if the product does not exist
+    boolean readStockLocked(int productId, IntConsumer whileLocked);
+
+    // Takes the quantities off products.stock in one batch, in product id order
+    void takeStock(Map<Integer, Integer> quantities);
+}
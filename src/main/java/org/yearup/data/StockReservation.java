@@ -0,0 +1,14 @@
+package org.yearup.data;
+
+// Stock a checkout already holds outside the database (flash sales, see FlashSaleStock)
+public interface StockReservation
+{
+    // units of the product reserved for this checkout, 0 when none
+    int getReserved(int productId);
+
+    // number of products with reserved units
+    int getReservedLineCount();
+
+    // true while the product's stock is held in memory; checked again inside the checkout transaction
+    boolean isHeldInMemory(int productId);
+}
@@ -0,0 +1,110 @@
+package org.yearup.data;
+
+import org.yearup.models.CartOperation;
+import org.yearup.models.ExpiredCarts;
+import org.yearup.models.ShoppingCart;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * ShoppingCartDao decorator that gives every change a new cart version and stamps the current
+ * version on the carts it hands out (see {@link CartVersions}).
+ */
+public class VersioningShoppingCartDao implements ShoppingCartDao, AutoCloseable
+{
+    private final ShoppingCartDao delegate;
+    private final CartVersions cartVersions;
+
+    public VersioningShoppingCartDao(ShoppingCartDao delegate, CartVersions cartVersions)
+    {
+        this.delegate = delegate;
+        this.cartVersions = cartVersions;
+    }
+
+    @Override
+    public ShoppingCart getByUserId(int userId)
+    {
+        // read the version first: if a change lands in between, the cart looks older than it is,
+        // which only makes the client refetch
+        long version = cartVersions.current(userId);
+        return stamp(delegate.getByUserId(userId), version);
+    }
+
+    @Override
+    public ShoppingCart getByUserIdWithoutDescriptions(int userId)
+    {
+        long version = cartVersions.current(userId);
+        return stamp(delegate.getByUserIdWithoutDescriptions(userId), version);
+    }
+
+    @Override
+    public ShoppingCart addProduct(int userId, int productId)
+    {
+        ShoppingCart cart = delegate.addProduct(userId, productId);
+        return cart == null ? null : stamp(cart, cartVersions.next(userId));
+    }
+
+    @Override
+    public void updateProduct(int userId, int productId, int quantity)
+    {
+        delegate.updateProduct(userId, productId, quantity);
+        cartVersions.next(userId);
+    }
+
+    @Override
+    public void clearCart(int userId)
+    {
+        delegate.clearCart(userId);
+        cartVersions.next(userId);
+    }
+
+    @Override
+    public void removeProduct(int userId, int productId)
+    {
+        delegate.removeProduct(userId, productId);
+        cartVersions.next(userId);
+    }
+
+    @Override
+    public ShoppingCart applyOperations(int userId, List<CartOperation> operations)
+    {
+        return stamp(delegate.applyOperations(userId, operations), cartVersions.next(userId));
+    }
+
+    @Override
+    public void flush(int userId)
+    {
+        delegate.flush(userId);
+    }
+
+    @Override
+    public void evict(int userId)
+    {
+        delegate.evict(userId);
+        cartVersions.next(userId);
+    }
+
+    @Override
+    public ExpiredCarts deleteIdleCarts(LocalDateTime idleSince, int afterUserId, int limit)
+    {
+        ExpiredCarts expired = delegate.deleteIdleCarts(idleSince, afterUserId, limit);
+        for (Integer userId : expired.getUserIds())
+            cartVersions.next(userId);
+        return expired;
+    }
+
+    @Override
+    public void close() throws Exception
+    {
+        if (delegate instanceof AutoCloseable closeable)
+            closeable.close();
+    }
+
+    private static ShoppingCart stamp(ShoppingCart cart, long version)
+    {
+        if (cart != null)
+            cart.setVersion(version);
+        return cart;
+    }
+}
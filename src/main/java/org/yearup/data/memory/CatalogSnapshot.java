@@ -0,0 +1,445 @@
+package org.yearup.data.memory;
+
+import org.yearup.data.ProductCursor;
+import org.yearup.data.ProductSort;
+import org.yearup.models.Product;
+import org.yearup.models.ProductPage;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Immutable, versioned view of the whole product catalog.
+ * Products are kept in one array sorted by price, and the per-category and
+ * per-subcategory posting lists hold ascending positions into that array,
+ * so every filter combination is a binary search plus a sorted-list intersection.
+ */
+public final class CatalogSnapshot
+{
+    private static final int[] NONE = new int[0];
+
+    private static final Comparator<Product> BY_PRICE = Comparator
+            .comparing(Product::getPrice)
+            .thenComparingInt(Product::getProductId);
+
+    private static final Comparator<Product> BY_NAME = Comparator
+            .comparing(Product::getName, String.CASE_INSENSITIVE_ORDER)
+            .thenComparingInt(Product::getProductId);
+
+    private final long version;
+
+    // price-sorted index
+    private final Product[] products;
+    private final BigDecimal[] prices;
+
+    // the other paging orders, as positions into the price-sorted array
+    private final int[] idOrder;
+    private final int[] nameOrder;
+
+    private final Map<Integer, Product> byId;
+
+    // category and subcategory posting lists per order, as ascending indexes into that order,
+    // so a filtered page seeks into the matches instead of skipping past everything else
+    private final Postings pricePostings;
+    private final Postings idPostings;
+    private final Postings namePostings;
+
+    private CatalogSnapshot(long version, Collection<Product> source)
+    {
+        this.version = version;
+
+        this.products = source.toArray(new Product[0]);
+        Arrays.sort(this.products, BY_PRICE);
+
+        this.prices = new BigDecimal[products.length];
+        this.byId = new HashMap<>(products.length * 2);
+
+        Map<Integer, List<Integer>> categories = new HashMap<>();
+        Map<String, List<Integer>> subCategories = new HashMap<>();
+
+        for (int i = 0; i < products.length; i++)
+        {
+            Product product = products[i];
+            prices[i] = product.getPrice();
+            byId.put(product.getProductId(), product);
+
+            categories.computeIfAbsent(product.getCategoryId(), k -> new ArrayList<>()).add(i);
+
+            String subCategory = subCategoryKey(product.getSubCategory());
+            if (subCategory != null)
+                subCategories.computeIfAbsent(subCategory, k -> new ArrayList<>()).add(i);
+        }
+
+        this.pricePostings = new Postings(toPostings(categories), toPostings(subCategories));
+
+        this.idOrder = ordering(Comparator.comparingInt(Product::getProductId));
+        this.nameOrder = ordering(BY_NAME);
+        this.idPostings = pricePostings.reorder(idOrder);
+        this.namePostings = pricePostings.reorder(nameOrder);
+    }
+
+    // same indexes, other product objects at the same positions (see withProducts)
+    private CatalogSnapshot(long version, Product[] products, Map<Integer, Product> byId, CatalogSnapshot indexes)
+    {
+        this.version = version;
+        this.products = products;
+        this.byId = byId;
+        this.prices = indexes.prices;
+        this.idOrder = indexes.idOrder;
+        this.nameOrder = indexes.nameOrder;
+        this.pricePostings = indexes.pricePostings;
+        this.idPostings = indexes.idPostings;
+        this.namePostings = indexes.namePostings;
+    }
+
+    public static CatalogSnapshot of(long version, Collection<Product> products)
+    {
+        return new CatalogSnapshot(version, products);
+    }
+
+    public long getVersion()
+    {
+        return version;
+    }
+
+    public int size()
+    {
+        return products.length;
+    }
+
+    public Product getById(int productId)
+    {
+        return byId.get(productId);
+    }
+
+    public Collection<Product> getAll()
+    {
+        return Collections.unmodifiableCollection(Arrays.asList(products));
+    }
+
+    // Same semantics as MySqlProductDao.search: every null (or blank subCategory) is "no filter",
+    // the price range is inclusive and the subcategory match is case-insensitive like MySQL's collation.
+    // Results come back in product_id order, which is what the table scan returns.
+    public List<Product> search(Integer categoryId, BigDecimal minPrice, BigDecimal maxPrice, String subCategory)
+    {
+        int from = minPrice == null ? 0 : lowerBound(minPrice);
+        int to = maxPrice == null ? products.length : upperBound(maxPrice);
+        if (from >= to)
+            return new ArrayList<>();
+
+        int[] candidates = pricePostings.matching(categoryId, subCategoryKey(subCategory));
+
+        List<Product> result = new ArrayList<>();
+        if (candidates == null)
+        {
+            for (int i = from; i < to; i++)
+                result.add(products[i]);
+        }
+        else
+        {
+            // postings are ascending positions, so the price range is a contiguous slice of them
+            int start = Arrays.binarySearch(candidates, from);
+            if (start < 0) start = -start - 1;
+
+            for (int i = start; i < candidates.length && candidates[i] < to; i++)
+                result.add(products[candidates[i]]);
+        }
+
+        result.sort(Comparator.comparingInt(Product::getProductId));
+        return result;
+    }
+
+    // Keyset page: seek to the first product after the cursor in the requested order (and, with a
+    // category or subcategory filter, into its posting list for that order), then walk forward until
+    // limit + 1 matches, so deep pages cost the same as the first one.
+    public ProductPage search(Integer categoryId, BigDecimal minPrice, BigDecimal maxPrice, String subCategory,
+                              ProductSort sort, ProductCursor after, int limit)
+    {
+        if (sort == null)
+            sort = ProductSort.ID;
+
+        int[] order = switch (sort)
+        {
+            case ID -> idOrder;
+            case NAME -> nameOrder;
+            case PRICE -> null; // the products array already is the price order
+        };
+        Postings postings = switch (sort)
+        {
+            case ID -> idPostings;
+            case NAME -> namePostings;
+            case PRICE -> pricePostings;
+        };
+
+        int start = after == null ? 0 : seek(order, sort, after);
+        int end = products.length;
+        if (sort == ProductSort.PRICE)
+        {
+            if (minPrice != null) start = Math.max(start, lowerBound(minPrice));
+            if (maxPrice != null) end = upperBound(maxPrice);
+        }
+
+        int[] candidates = postings.matching(categoryId, subCategoryKey(subCategory));
+        int first = start;
+        int count = end;
+        if (candidates != null)
+        {
+            first = Arrays.binarySearch(candidates, start);
+            if (first < 0) first = -first - 1;
+            count = candidates.length;
+        }
+
+        List<Product> rows = new ArrayList<>();
+        for (int k = first; k < count; k++)
+        {
+            int i = candidates == null ? k : candidates[k];
+            if (i >= end)
+                break;
+
+            Product product = products[order == null ? i : order[i]];
+            if (minPrice != null && product.getPrice().compareTo(minPrice) < 0) continue;
+            if (maxPrice != null && product.getPrice().compareTo(maxPrice) > 0) continue;
+
+            rows.add(product);
+            if (limit > 0 && rows.size() > limit)
+                break;
+        }
+
+        return ProductCursor.toPage(rows, limit, sort);
+    }
+
+    public List<Product> listByCategoryId(int categoryId)
+    {
+        return search(categoryId, null, null, null);
+    }
+
+    // copy-on-write helpers used by the DAO to publish the next version
+
+    public CatalogSnapshot withProduct(Product product)
+    {
+        Map<Integer, Product> next = new HashMap<>(byId);
+        next.put(product.getProductId(), product);
+        return new CatalogSnapshot(version + 1, next.values());
+    }
+
+    public CatalogSnapshot withoutProduct(int productId)
+    {
+        Map<Integer, Product> next = new HashMap<>(byId);
+        next.remove(productId);
+        return new CatalogSnapshot(version + 1, next.values());
+    }
+
+    // Swaps in the re-read rows of productIds; ids without a row are removed.
+    // Rows that still sort and filter the same (only their stock changed at checkout) take the old
+    // positions, so the indexes are shared instead of rebuilt.
+    public CatalogSnapshot withProducts(Collection<Integer> productIds, Map<Integer, Product> rows)
+    {
+        Product[] nextProducts = products.clone();
+        Map<Integer, Product> nextById = new HashMap<>(byId);
+        for (Integer productId : productIds)
+        {
+            Product current = byId.get(productId);
+            Product row = rows.get(productId);
+            if (current == null && row == null)
+                continue;
+            if (current == null || row == null || !sameIndexKeys(current, row))
+                return rebuiltWith(productIds, rows);
+
+            nextProducts[position(productId)] = row;
+            nextById.put(productId, row);
+        }
+        return new CatalogSnapshot(version + 1, nextProducts, nextById, this);
+    }
+
+    private CatalogSnapshot rebuiltWith(Collection<Integer> productIds, Map<Integer, Product> rows)
+    {
+        Map<Integer, Product> next = new HashMap<>(byId);
+        for (Integer productId : productIds)
+        {
+            Product row = rows.get(productId);
+            if (row == null)
+                next.remove(productId);
+            else
+                next.put(productId, row);
+        }
+        return new CatalogSnapshot(version + 1, next.values());
+    }
+
+    // position of a product that is in the snapshot, by binary search over the id order
+    private int position(int productId)
+    {
+        int low = 0, high = idOrder.length - 1;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (products[idOrder[mid]].getProductId() < productId) low = mid + 1;
+            else high = mid;
+        }
+        return idOrder[low];
+    }
+
+    // first index in the given order that sorts strictly after the cursor
+    private int seek(int[] order, ProductSort sort, ProductCursor after)
+    {
+        BigDecimal afterPrice = sort == ProductSort.PRICE ? after.getPrice() : null;
+
+        int low = 0, high = products.length;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            Product product = products[order == null ? mid : order[mid]];
+
+            int compare = switch (sort)
+            {
+                case ID -> 0;
+                case PRICE -> product.getPrice().compareTo(afterPrice);
+                case NAME -> String.CASE_INSENSITIVE_ORDER.compare(product.getName(), after.getName());
+            };
+            if (compare == 0)
+                compare = Integer.compare(product.getProductId(), after.getProductId());
+
+            if (compare <= 0) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    private int[] ordering(Comparator<Product> comparator)
+    {
+        Integer[] positions = new Integer[products.length];
+        for (int i = 0; i < positions.length; i++)
+            positions[i] = i;
+
+        Arrays.sort(positions, (a, b) -> comparator.compare(products[a], products[b]));
+        return Arrays.stream(positions).mapToInt(Integer::intValue).toArray();
+    }
+
+    // first position whose price is >= minPrice
+    private int lowerBound(BigDecimal minPrice)
+    {
+        int low = 0, high = prices.length;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (prices[mid].compareTo(minPrice) < 0) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    // first position whose price is > maxPrice
+    private int upperBound(BigDecimal maxPrice)
+    {
+        int low = 0, high = prices.length;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (prices[mid].compareTo(maxPrice) <= 0) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    private static int[] intersect(int[] a, int[] b)
+    {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length)
+        {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else
+            {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static <K> Map<K, int[]> toPostings(Map<K, List<Integer>> lists)
+    {
+        Map<K, int[]> postings = new HashMap<>(lists.size() * 2);
+        for (Map.Entry<K, List<Integer>> entry : lists.entrySet())
+        {
+            postings.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+        return postings;
+    }
+
+    // everything the orderings and posting lists are built from
+    private static boolean sameIndexKeys(Product a, Product b)
+    {
+        return a.getPrice().compareTo(b.getPrice()) == 0
+                && a.getName().equals(b.getName())
+                && a.getCategoryId() == b.getCategoryId()
+                && Objects.equals(subCategoryKey(a.getSubCategory()), subCategoryKey(b.getSubCategory()));
+    }
+
+    private static String subCategoryKey(String subCategory)
+    {
+        if (subCategory == null || subCategory.isBlank())
+            return null;
+        return subCategory.toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Postings
+    {
+        final Map<Integer, int[]> byCategory;
+        final Map<String, int[]> bySubCategory;
+
+        Postings(Map<Integer, int[]> byCategory, Map<String, int[]> bySubCategory)
+        {
+            this.byCategory = byCategory;
+            this.bySubCategory = bySubCategory;
+        }
+
+        // ascending indexes matching both filters, or null when neither is given
+        int[] matching(Integer categoryId, String subCategoryKey)
+        {
+            int[] candidates = null;
+
+            if (categoryId != null)
+                candidates = byCategory.getOrDefault(categoryId, NONE);
+
+            if (subCategoryKey != null)
+            {
+                int[] postings = bySubCategory.getOrDefault(subCategoryKey, NONE);
+                candidates = candidates == null ? postings : intersect(candidates, postings);
+            }
+            return candidates;
+        }
+
+        // the same lists over price-sorted positions, as indexes into order
+        Postings reorder(int[] order)
+        {
+            int[] indexOf = new int[order.length];
+            for (int i = 0; i < order.length; i++)
+                indexOf[order[i]] = i;
+
+            return new Postings(reorder(byCategory, indexOf), reorder(bySubCategory, indexOf));
+        }
+
+        private static <K> Map<K, int[]> reorder(Map<K, int[]> postings, int[] indexOf)
+        {
+            Map<K, int[]> reordered = new HashMap<>(postings.size() * 2);
+            for (Map.Entry<K, int[]> entry : postings.entrySet())
+            {
+                int[] indexes = Arrays.stream(entry.getValue()).map(position -> indexOf[position]).toArray();
+                Arrays.sort(indexes);
+                reordered.put(entry.getKey(), indexes);
+            }
+            return reordered;
+        }
+    }
+}
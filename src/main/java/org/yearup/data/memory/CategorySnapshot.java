@@ -0,0 +1,42 @@
+package org.yearup.data.memory;
+
+import org.yearup.models.Category;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Immutable list of every category plus an id lookup, tagged with a version
+public final class CategorySnapshot
+{
+    private final long version;
+    private final List<Category> categories;
+    private final Map<Integer, Category> byId;
+
+    public CategorySnapshot(long version, List<Category> categories)
+    {
+        this.version = version;
+        this.categories = List.copyOf(categories);
+
+        Map<Integer, Category> byId = new HashMap<>();
+        for (Category category : categories)
+            byId.put(category.getCategoryId(), category);
+        this.byId = Collections.unmodifiableMap(byId);
+    }
+
+    public long getVersion()
+    {
+        return version;
+    }
+
+    public List<Category> getCategories()
+    {
+        return categories;
+    }
+
+    public Category getById(int categoryId)
+    {
+        return byId.get(categoryId);
+    }
+}
@@ -0,0 +1,174 @@
+package org.yearup.data.memory;
+
+import org.yearup.models.Product;
+import org.yearup.models.ProductFacets;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compact, read-only column store of the fields facets are computed on:
+ * dictionary-encoded category and subcategory plus price in cents, one int per product per column.
+ * A facet request is a single pass over three int arrays.
+ */
+public final class ColumnarCatalog
+{
+    // lower bounds of the price buckets, in cents; the last bucket is open ended
+    private static final int[] PRICE_BUCKETS = { 0, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000 };
+
+    private static final int NO_SUBCATEGORY = -1; // row value
+    private static final int NO_FILTER = -1;      // filter values
+    private static final int NO_MATCH = -2;
+
+    private final int size;
+    private final int[] categoryCodes;
+    private final int[] priceCents;
+    private final int[] subCategoryCodes;
+
+    // dictionaries: code -> value
+    private final int[] categoryIds;
+    private final String[] subCategories;
+    private final Map<Integer, Integer> categoryCodeById;
+    private final Map<String, Integer> subCategoryCodeByKey;
+
+    private ColumnarCatalog(Collection<Product> products)
+    {
+        size = products.size();
+        categoryCodes = new int[size];
+        priceCents = new int[size];
+        subCategoryCodes = new int[size];
+
+        categoryCodeById = new HashMap<>();
+        subCategoryCodeByKey = new HashMap<>();
+        Map<Integer, Integer> categoryValues = new HashMap<>();
+        Map<Integer, String> subCategoryValues = new HashMap<>();
+
+        int row = 0;
+        for (Product product : products)
+        {
+            Integer categoryCode = categoryCodeById.get(product.getCategoryId());
+            if (categoryCode == null)
+            {
+                categoryCode = categoryCodeById.size();
+                categoryCodeById.put(product.getCategoryId(), categoryCode);
+                categoryValues.put(categoryCode, product.getCategoryId());
+            }
+            categoryCodes[row] = categoryCode;
+
+            priceCents[row] = toCents(product.getPrice(), RoundingMode.HALF_UP);
+
+            String key = subCategoryKey(product.getSubCategory());
+            if (key == null)
+            {
+                subCategoryCodes[row] = NO_SUBCATEGORY;
+            }
+            else
+            {
+                Integer code = subCategoryCodeByKey.get(key);
+                if (code == null)
+                {
+                    // the first spelling seen becomes the facet label
+                    code = subCategoryCodeByKey.size();
+                    subCategoryCodeByKey.put(key, code);
+                    subCategoryValues.put(code, product.getSubCategory());
+                }
+                subCategoryCodes[row] = code;
+            }
+            row++;
+        }
+
+        categoryIds = new int[categoryValues.size()];
+        categoryValues.forEach((code, id) -> categoryIds[code] = id);
+        subCategories = new String[subCategoryValues.size()];
+        subCategoryValues.forEach((code, name) -> subCategories[code] = name);
+    }
+
+    public static ColumnarCatalog of(Collection<Product> products)
+    {
+        return new ColumnarCatalog(products);
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    // Takes the same filters as ProductDao.search. Each facet is counted with every filter
+    // except its own, so the client can show the alternatives to what is already selected.
+    public ProductFacets facets(Integer categoryId, BigDecimal minPrice, BigDecimal maxPrice, String subCategory)
+    {
+        int categoryFilter = categoryId == null ? NO_FILTER : categoryCodeById.getOrDefault(categoryId, NO_MATCH);
+        String key = subCategoryKey(subCategory);
+        int subCategoryFilter = key == null ? NO_FILTER : subCategoryCodeByKey.getOrDefault(key, NO_MATCH);
+        int minCents = minPrice == null ? Integer.MIN_VALUE : toCents(minPrice, RoundingMode.CEILING);
+        int maxCents = maxPrice == null ? Integer.MAX_VALUE : toCents(maxPrice, RoundingMode.FLOOR);
+
+        int[] categoryCounts = new int[categoryIds.length];
+        int[] subCategoryCounts = new int[subCategories.length];
+        int[] priceCounts = new int[PRICE_BUCKETS.length];
+        int total = 0;
+
+        for (int row = 0; row < size; row++)
+        {
+            boolean categoryOk = categoryFilter == NO_FILTER || categoryCodes[row] == categoryFilter;
+            boolean subCategoryOk = subCategoryFilter == NO_FILTER || subCategoryCodes[row] == subCategoryFilter;
+            int cents = priceCents[row];
+            boolean priceOk = cents >= minCents && cents <= maxCents;
+
+            if (subCategoryOk && priceOk)
+                categoryCounts[categoryCodes[row]]++;
+            if (categoryOk && priceOk && subCategoryCodes[row] != NO_SUBCATEGORY)
+                subCategoryCounts[subCategoryCodes[row]]++;
+            if (categoryOk && subCategoryOk)
+                priceCounts[bucket(cents)]++;
+            if (categoryOk && subCategoryOk && priceOk)
+                total++;
+        }
+
+        ProductFacets facets = new ProductFacets();
+        facets.setTotal(total);
+        for (int code = 0; code < categoryCounts.length; code++)
+        {
+            if (categoryCounts[code] > 0)
+                facets.getCategories().put(categoryIds[code], categoryCounts[code]);
+        }
+        for (int code = 0; code < subCategoryCounts.length; code++)
+        {
+            if (subCategoryCounts[code] > 0)
+                facets.getSubCategories().put(subCategories[code], subCategoryCounts[code]);
+        }
+        for (int i = 0; i < PRICE_BUCKETS.length; i++)
+        {
+            BigDecimal min = BigDecimal.valueOf(PRICE_BUCKETS[i], 2);
+            BigDecimal max = i + 1 < PRICE_BUCKETS.length ? BigDecimal.valueOf(PRICE_BUCKETS[i + 1], 2) : null;
+            facets.getPrices().add(new ProductFacets.PriceBucket(min, max, priceCounts[i]));
+        }
+        return facets;
+    }
+
+    private static int bucket(int cents)
+    {
+        int bucket = 0;
+        while (bucket + 1 < PRICE_BUCKETS.length && cents >= PRICE_BUCKETS[bucket + 1])
+            bucket++;
+        return bucket;
+    }
+
+    // DECIMAL(10, 2) can exceed an int of cents above ~21 million; those prices saturate
+    private static int toCents(BigDecimal price, RoundingMode rounding)
+    {
+        long cents = price.setScale(2, rounding).unscaledValue().longValue();
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, cents));
+    }
+
+    private static String subCategoryKey(String subCategory)
+    {
+        if (subCategory == null || subCategory.isBlank())
+            return null;
+        return subCategory.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,102 @@
+package org.yearup.data.memory;
+
+import org.yearup.data.CategoryDao;
+import org.yearup.models.Category;
+
+import java.util.List;
+
+/**
+ * CategoryDao that serves reads from an immutable {@link CategorySnapshot}.
+ * Categories change a few times a year, so every write simply reloads the
+ * (small) table and swaps in a new snapshot with the next version number.
+ */
+public class InMemoryCategoryDao implements CategoryDao
+{
+    private final CategoryDao delegate;
+    private volatile CategorySnapshot snapshot;
+
+    public InMemoryCategoryDao(CategoryDao delegate)
+    {
+        this.delegate = delegate;
+    }
+
+    public CategorySnapshot getSnapshot()
+    {
+        CategorySnapshot current = snapshot;
+        if (current != null)
+            return current;
+
+        synchronized (this)
+        {
+            if (snapshot == null)
+            {
+                // start from the clock so versions from before a restart are not reused
+                snapshot = new CategorySnapshot(System.currentTimeMillis(), delegate.getAllCategories());
+            }
+            return snapshot;
+        }
+    }
+
+    @Override
+    public long getVersion()
+    {
+        return getSnapshot().getVersion();
+    }
+
+    @Override
+    public List<Category> getAllCategories()
+    {
+        return getSnapshot().getCategories();
+    }
+
+    @Override
+    public Category getById(int categoryId)
+    {
+        return getSnapshot().getById(categoryId);
+    }
+
+    @Override
+    public synchronized Category create(Category category)
+    {
+        try
+        {
+            return delegate.create(category);
+        }
+        finally
+        {
+            reload();
+        }
+    }
+
+    @Override
+    public synchronized void update(int categoryId, Category category)
+    {
+        try
+        {
+            delegate.update(categoryId, category);
+        }
+        finally
+        {
+            reload();
+        }
+    }
+
+    @Override
+    public synchronized void delete(int categoryId)
+    {
+        try
+        {
+            delegate.delete(categoryId);
+        }
+        finally
+        {
+            reload();
+        }
+    }
+
+    private void reload()
+    {
+        long version = getSnapshot().getVersion() + 1;
+        snapshot = new CategorySnapshot(version, delegate.getAllCategories());
+    }
+}
@@ -0,0 +1,167 @@
+package org.yearup.data.memory;
+
+import org.yearup.data.ProductCursor;
+import org.yearup.data.ProductDao;
+import org.yearup.data.ProductHandler;
+import org.yearup.data.ProductSort;
+import org.yearup.models.Product;
+import org.yearup.models.ProductField;
+import org.yearup.models.ProductPage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ProductDao that answers every read from an in-memory {@link CatalogSnapshot}.
+ * Writes go through to the wrapped (MySQL) dao first and then publish a new
+ * snapshot, so readers only ever see a complete catalog and never block.
+ */
+public class InMemoryProductDao implements ProductDao
+{
+    private final ProductDao delegate;
+
+    // readers only do a volatile read; writers are serialized on this object
+    private volatile CatalogSnapshot snapshot;
+
+    public InMemoryProductDao(ProductDao delegate)
+    {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public List<Product> search(Integer categoryId, BigDecimal minPrice, BigDecimal maxPrice, String subCategory)
+    {
+        return snapshot().search(categoryId, minPrice, maxPrice, subCategory);
+    }
+
+    @Override
+    public ProductPage search(Integer categoryId, BigDecimal minPrice, BigDecimal maxPrice, String subCategory,
+                              ProductSort sort, ProductCursor after, int limit, Set<ProductField> fields)
+    {
+        // same answer as a projected database read: only the requested properties are set
+        ProductPage page = snapshot().search(categoryId, minPrice, maxPrice, subCategory, sort, after, limit);
+        if (fields == null)
+            return page;
+        List<Product> projected = new ArrayList<>(page.getItems().size());
+        for (Product product : page.getItems())
+            projected.add(ProductField.copy(product, fields));
+        page.setItems(projected);
+        return page;
+    }
+
+    @Override
+    public void streamSearch(Integer categoryId, BigDecimal minPrice, BigDecimal maxPrice, String subCategory,
+                             Set<ProductField> fields, ProductHandler handler)
+    {
+        try
+        {
+            // the snapshot already holds every product, so this only walks references (and copies the
+            // requested properties when fields are given)
+            for (Product product : snapshot().search(categoryId, minPrice, maxPrice, subCategory))
+                handler.handle(fields == null ? product : ProductField.copy(product, fields));
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public List<Product> listByCategoryId(int categoryId)
+    {
+        return snapshot().listByCategoryId(categoryId);
+    }
+
+    @Override
+    public Product getById(int productId)
+    {
+        return snapshot().getById(productId);
+    }
+
+    @Override
+    public Map<Integer, Product> getByIds(Collection<Integer> productIds)
+    {
+        ProductDao.checkIds(productIds);
+        CatalogSnapshot current = snapshot();
+        Map<Integer, Product> products = new HashMap<>();
+        for (Integer productId : productIds)
+        {
+            Product product = current.getById(productId);
+            if (product != null)
+                products.put(productId, product);
+        }
+        return products;
+    }
+
+    @Override
+    public synchronized Product create(Product product)
+    {
+        Product created = delegate.create(product);
+        snapshot = snapshot().withProduct(created);
+        return created;
+    }
+
+    @Override
+    public synchronized void update(int productId, Product product)
+    {
+        delegate.update(productId, product);
+
+        // re-read so the snapshot holds exactly what the database stored
+        Product updated = delegate.getById(productId);
+        snapshot = updated == null
+                ? snapshot().withoutProduct(productId)
+                : snapshot().withProduct(updated);
+    }
+
+    @Override
+    public synchronized void delete(int productId)
+    {
+        delegate.delete(productId);
+        snapshot = snapshot().withoutProduct(productId);
+    }
+
+    @Override
+    public synchronized void stockChanged(Collection<Integer> productIds)
+    {
+        delegate.stockChanged(productIds);
+
+        // nothing to refresh before the first read; that one loads current rows anyway
+        if (snapshot == null || productIds.isEmpty())
+            return;
+        snapshot = snapshot.withProducts(productIds, delegate.getByIds(productIds));
+    }
+
+    public CatalogSnapshot getSnapshot()
+    {
+        return snapshot();
+    }
+
+    // Reloads the whole catalog from the database, e.g. after rows were changed outside this application.
+    public synchronized void refresh()
+    {
+        long version = snapshot == null ? 1 : snapshot.getVersion() + 1;
+        snapshot = CatalogSnapshot.of(version, delegate.search(null, null, null, null));
+    }
+
+    private CatalogSnapshot snapshot()
+    {
+        CatalogSnapshot current = snapshot;
+        if (current != null)
+            return current;
+
+        // first read loads the catalog; everyone else waits for that one load
+        synchronized (this)
+        {
+            if (snapshot == null)
+                refresh();
+            return snapshot;
+        }
+    }
+}
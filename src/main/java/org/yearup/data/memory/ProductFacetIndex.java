@@ -0,0 +1,60 @@
+package org.yearup.data.memory;
+
+import org.yearup.data.ProductChangeListener;
+import org.yearup.models.Product;
+import org.yearup.models.ProductFacets;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.function.Supplier;
+
+/**
+ * Serves facet counts from a {@link ColumnarCatalog}. The columns are built on first use
+ * and dropped after any product write, so the next request rebuilds them from the loader.
+ */
+public class ProductFacetIndex implements ProductChangeListener
+{
+    private final Supplier<Collection<Product>> loader;
+    private volatile ColumnarCatalog columns;
+
+    public ProductFacetIndex(Supplier<Collection<Product>> loader)
+    {
+        this.loader = loader;
+    }
+
+    public ProductFacets facets(Integer categoryId, BigDecimal minPrice, BigDecimal maxPrice, String subCategory)
+    {
+        return columns().facets(categoryId, minPrice, maxPrice, subCategory);
+    }
+
+    @Override
+    public void productSaved(Product product)
+    {
+        invalidate();
+    }
+
+    @Override
+    public void productDeleted(int productId)
+    {
+        invalidate();
+    }
+
+    private synchronized void invalidate()
+    {
+        columns = null;
+    }
+
+    private ColumnarCatalog columns()
+    {
+        ColumnarCatalog current = columns;
+        if (current != null)
+            return current;
+
+        synchronized (this)
+        {
+            if (columns == null)
+                columns = ColumnarCatalog.of(loader.get());
+            return columns;
+        }
+    }
+}
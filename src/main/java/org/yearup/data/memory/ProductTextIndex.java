@@ -0,0 +1,349 @@
+package org.yearup.data.memory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yearup.data.ProductChangeListener;
+import org.yearup.models.Product;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * In-process inverted index over product name and description.
+ * Terms live in a sorted map so a query word also matches every indexed word it
+ * is a prefix of; matches are ranked with BM25, with name hits counting double.
+ * The index loads itself on first use and is then kept current one product at a time; products
+ * saved or deleted while a load is running are queued and applied on top of what it read.
+ */
+public class ProductTextIndex implements ProductChangeListener
+{
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int NAME_WEIGHT = 2;
+
+    // prefix expansions score a bit lower than the exact word; past the cap only the words found in
+    // the most products are kept
+    private static final double PREFIX_DISCOUNT = 0.5;
+    private static final int MAX_EXPANSIONS = 256;
+
+    private final Logger logger = LoggerFactory.getLogger(ProductTextIndex.class);
+
+    private final Supplier<Collection<Product>> loader;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // term -> (productId -> weighted term frequency)
+    private final NavigableMap<String, Map<Integer, Integer>> postings = new TreeMap<>();
+    private final Map<Integer, Document> documents = new HashMap<>();
+    private long totalLength;
+    private volatile boolean loaded;
+    // changes made while a load runs (productId -> product, null once deleted); null when no load runs
+    private Map<Integer, Product> pending = new HashMap<>();
+
+    public ProductTextIndex(Supplier<Collection<Product>> loader)
+    {
+        this.loader = loader;
+    }
+
+    // Returns up to limit products matching every word of the query, best match first
+    public List<Product> search(String query, int limit)
+    {
+        List<String> words = tokenize(query);
+        if (words.isEmpty() || limit <= 0)
+            return new ArrayList<>();
+
+        ensureLoaded();
+
+        lock.readLock().lock();
+        try
+        {
+            Map<Integer, Double> scores = null;
+            for (String word : words)
+            {
+                Map<Integer, Double> wordScores = score(word);
+                scores = scores == null ? wordScores : intersect(scores, wordScores);
+                if (scores.isEmpty())
+                    return new ArrayList<>();
+            }
+
+            // keep only the best `limit` hits
+            Comparator<Map.Entry<Integer, Double>> worstFirst = Map.Entry.<Integer, Double>comparingByValue()
+                    .thenComparing(Map.Entry.<Integer, Double>comparingByKey().reversed());
+            PriorityQueue<Map.Entry<Integer, Double>> top = new PriorityQueue<>(worstFirst);
+            for (Map.Entry<Integer, Double> entry : scores.entrySet())
+            {
+                top.add(entry);
+                if (top.size() > limit)
+                    top.poll();
+            }
+
+            List<Product> results = new ArrayList<>(top.size());
+            while (!top.isEmpty())
+                results.add(documents.get(top.poll().getKey()).product);
+            Collections.reverse(results);
+            return results;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Adds or re-indexes one product
+    public void put(Product product)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            // a running load may have read the product before this change
+            if (pending != null)
+                pending.put(product.getProductId(), product);
+            if (!loaded)
+                return;
+
+            removeDocument(product.getProductId());
+            addDocument(product);
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int productId)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            if (pending != null)
+                pending.put(productId, null);
+            if (loaded)
+                removeDocument(productId);
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void productSaved(Product product)
+    {
+        put(product);
+    }
+
+    @Override
+    public void productDeleted(int productId)
+    {
+        remove(productId);
+    }
+
+    // Throws the index away and reads every product again
+    public synchronized void rebuild()
+    {
+        lock.writeLock().lock();
+        try
+        {
+            if (pending == null)
+                pending = new HashMap<>();
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+
+        Collection<Product> products;
+        try
+        {
+            products = loader.get();
+        }
+        catch (RuntimeException e)
+        {
+            // a loaded index was patched all along; one that never loaded keeps queueing
+            lock.writeLock().lock();
+            try
+            {
+                if (loaded)
+                    pending = null;
+            }
+            finally
+            {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try
+        {
+            postings.clear();
+            documents.clear();
+            totalLength = 0;
+            for (Product product : products)
+                addDocument(product);
+
+            for (Map.Entry<Integer, Product> change : pending.entrySet())
+            {
+                removeDocument(change.getKey());
+                if (change.getValue() != null)
+                    addDocument(change.getValue());
+            }
+            pending = null;
+            loaded = true;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return documents.size();
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    static List<String> tokenize(String text)
+    {
+        List<String> tokens = new ArrayList<>();
+        if (text == null)
+            return tokens;
+
+        // "Men's" indexes as "mens" rather than "men" + "s"
+        String normalized = text.toLowerCase(Locale.ROOT).replace("'", "").replace("’", "");
+        for (String token : normalized.split("[^\\p{L}\\p{N}]+"))
+        {
+            if (!token.isEmpty())
+                tokens.add(token);
+        }
+        return tokens;
+    }
+
+    private void ensureLoaded()
+    {
+        if (loaded)
+            return;
+
+        // only the first caller loads; the others wait for it
+        synchronized (this)
+        {
+            if (!loaded)
+                rebuild();
+        }
+    }
+
+    // BM25 score of every document containing the word, or a word it is a prefix of
+    private Map<Integer, Double> score(String word)
+    {
+        Map<Integer, Double> scores = new HashMap<>();
+        double averageLength = documents.isEmpty() ? 1 : (double) totalLength / documents.size();
+
+        List<Map.Entry<String, Map<Integer, Integer>>> terms = new ArrayList<>(
+                postings.subMap(word, true, word + Character.MAX_VALUE, false).entrySet());
+        if (terms.size() > MAX_EXPANSIONS)
+        {
+            // the exact word first, then the words found in the most products
+            terms.sort(Comparator.<Map.Entry<String, Map<Integer, Integer>>>comparingInt(term -> term.getKey().length() == word.length() ? 0 : 1)
+                    .thenComparingInt(term -> -term.getValue().size()));
+            logger.debug("Query word '" + word + "' matches " + terms.size() + " words, only the " + MAX_EXPANSIONS + " most common are scored.");
+            terms = terms.subList(0, MAX_EXPANSIONS);
+        }
+
+        for (Map.Entry<String, Map<Integer, Integer>> term : terms)
+        {
+            double boost = term.getKey().length() == word.length() ? 1 : PREFIX_DISCOUNT;
+            Map<Integer, Integer> docs = term.getValue();
+            double idf = Math.log(1 + (documents.size() - docs.size() + 0.5) / (docs.size() + 0.5));
+
+            for (Map.Entry<Integer, Integer> doc : docs.entrySet())
+            {
+                double tf = doc.getValue();
+                double length = documents.get(doc.getKey()).length;
+                double score = boost * idf * (tf * (K1 + 1)) / (tf + K1 * (1 - B + B * length / averageLength));
+
+                // a document can match several expansions of the same word; keep the best one
+                scores.merge(doc.getKey(), score, Math::max);
+            }
+        }
+        return scores;
+    }
+
+    private static Map<Integer, Double> intersect(Map<Integer, Double> scores, Map<Integer, Double> wordScores)
+    {
+        Map<Integer, Double> both = new HashMap<>();
+        for (Map.Entry<Integer, Double> entry : scores.entrySet())
+        {
+            Double score = wordScores.get(entry.getKey());
+            if (score != null)
+                both.put(entry.getKey(), entry.getValue() + score);
+        }
+        return both;
+    }
+
+    private void addDocument(Product product)
+    {
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String token : tokenize(product.getName()))
+            frequencies.merge(token, NAME_WEIGHT, Integer::sum);
+        for (String token : tokenize(product.getDescription()))
+            frequencies.merge(token, 1, Integer::sum);
+
+        int length = 0;
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet())
+        {
+            postings.computeIfAbsent(entry.getKey(), k -> new HashMap<>()).put(product.getProductId(), entry.getValue());
+            length += entry.getValue();
+        }
+
+        documents.put(product.getProductId(), new Document(product, frequencies.keySet(), length));
+        totalLength += length;
+    }
+
+    private void removeDocument(int productId)
+    {
+        Document document = documents.remove(productId);
+        if (document == null)
+            return;
+
+        for (String term : document.terms)
+        {
+            Map<Integer, Integer> docs = postings.get(term);
+            docs.remove(productId);
+            if (docs.isEmpty())
+                postings.remove(term);
+        }
+        totalLength -= document.length;
+    }
+
+    private static class Document
+    {
+        final Product product;
+        final Collection<String> terms;
+        final int length;
+
+        Document(Product product, Collection<String> terms, int length)
+        {
+            this.product = product;
+            this.terms = terms;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,494 @@
+package org.yearup.data.memory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yearup.data.ProductDao;
+import org.yearup.data.ShoppingCartDao;
+import org.yearup.data.mysql.MySqlShoppingCartDao;
+import org.yearup.models.CartOperation;
+import org.yearup.models.ExpiredCarts;
+import org.yearup.models.Product;
+import org.yearup.models.ShoppingCart;
+import org.yearup.models.ShoppingCartItem;
+import org.yearup.pricing.PricingEngine;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * ShoppingCartDao that keeps active carts in memory and writes them to MySQL in the background.
+ * Each user's cart is only touched while holding that user's lock stripe, so mutations are
+ * serialized per user without one global lock. A change only marks the product line as dirty;
+ * the flusher writes the latest quantity of every dirty line, so ten quick +1s become one write.
+ * Changes reach the database within the flush interval, or right away through {@link #flush(int)}.
+ * No lock is held during database I/O: a cart being written is marked in flight, and only a
+ * flush or evict of that same cart waits for it.
+ */
+public class WriteBehindShoppingCartDao implements ShoppingCartDao, AutoCloseable
+{
+    private static final int STRIPES = 64;
+    // clean carts nobody touched for this long are dropped and reloaded on the next access
+    private static final long IDLE_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    private final Logger logger = LoggerFactory.getLogger(WriteBehindShoppingCartDao.class);
+
+    private final MySqlShoppingCartDao delegate;
+    private final ProductDao productDao;
+
+    private final Object[] stripes = new Object[STRIPES];
+    private volatile long lastSweep = System.currentTimeMillis();
+    private final Map<Integer, CartState> carts = new ConcurrentHashMap<>();
+    // bumped whenever a cart is dropped, so a load that read the stored cart before the drop is not kept
+    private final AtomicLong removals = new AtomicLong();
+    private final Set<Integer> dirtyUsers = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService flusher;
+
+    public WriteBehindShoppingCartDao(MySqlShoppingCartDao delegate, ProductDao productDao, long flushMillis)
+    {
+        this.delegate = delegate;
+        this.productDao = productDao;
+        for (int i = 0; i < STRIPES; i++)
+            stripes[i] = new Object();
+
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cart-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public ShoppingCart getByUserId(int userId)
+    {
+        return toCart(withCart(userId, cart -> new LinkedHashMap<>(cart.quantities)));
+    }
+
+    @Override
+    public ShoppingCart addProduct(int userId, int productId)
+    {
+        // no foreign key to lean on before the flush, so check the (in-memory) catalog instead
+        if (productDao.getById(productId) == null)
+            return null;
+
+        Map<Integer, Integer> quantities = withCart(userId, cart -> {
+            cart.set(productId, cart.quantities.getOrDefault(productId, 0) + 1);
+            return new LinkedHashMap<>(cart.quantities);
+        });
+        dirtyUsers.add(userId);
+        return toCart(quantities);
+    }
+
+    @Override
+    public void updateProduct(int userId, int productId, int quantity)
+    {
+        // same as MySQL: only lines already in the cart are updated
+        boolean changed = withCart(userId, cart -> {
+            if (!cart.quantities.containsKey(productId))
+                return false;
+            cart.set(productId, quantity);
+            return true;
+        });
+        if (changed)
+            dirtyUsers.add(userId);
+    }
+
+    @Override
+    public void clearCart(int userId)
+    {
+        withCart(userId, cart -> {
+            cart.quantities.clear();
+            cart.dirty.clear();
+            cart.cleared = true;
+            return null;
+        });
+        dirtyUsers.add(userId);
+    }
+
+    @Override
+    public void removeProduct(int userId, int productId)
+    {
+        updateProduct(userId, productId, 0);
+    }
+
+    @Override
+    public ShoppingCart applyOperations(int userId, List<CartOperation> operations)
+    {
+        Map<Integer, Integer> quantities = withCart(userId, cart -> {
+            Map<Integer, Integer> before = new HashMap<>(cart.quantities);
+            for (CartOperation operation : operations)
+                operation.applyTo(cart.quantities);
+
+            // only lines whose quantity actually changed need a write
+            Set<Integer> productIds = new HashSet<>(before.keySet());
+            productIds.addAll(cart.quantities.keySet());
+            for (Integer productId : productIds)
+            {
+                if (!Objects.equals(before.get(productId), cart.quantities.get(productId)))
+                    cart.dirty.add(productId);
+            }
+            return new LinkedHashMap<>(cart.quantities);
+        });
+        dirtyUsers.add(userId);
+        return toCart(quantities);
+    }
+
+    // Returns once every change made before the call is stored, including one the flusher is writing right now
+    @Override
+    public void flush(int userId)
+    {
+        Set<Integer> cleared = new HashSet<>();
+        Map<Integer, Map<Integer, Integer>> quantities = new HashMap<>();
+        synchronized (stripe(userId))
+        {
+            CartState cart = settledCart(userId);
+            dirtyUsers.remove(userId);
+            if (cart == null || !drain(userId, cart, cleared, quantities))
+                return;
+            cart.inFlight = true;
+        }
+        write(cleared, quantities);
+    }
+
+    // After a checkout: the lines the checkout read (everything flushed before it) are gone from the
+    // stored cart, but changes made while it ran are not. Lines still dirty here were changed after the
+    // last flush, so the checkout never saw them and they are kept; every other line is taken from the
+    // stored cart as it is now, which also keeps lines the flusher wrote after the checkout's read.
+    @Override
+    public void evict(int userId)
+    {
+        delegate.evict(userId);
+
+        // the cart is held in flight, so no write of it lands between reading the stored cart and merging it
+        CartState cart;
+        synchronized (stripe(userId))
+        {
+            cart = settledCart(userId);
+            if (cart == null)
+                return;
+            cart.inFlight = true;
+        }
+
+        try
+        {
+            Map<Integer, Integer> stored = read(userId);
+            synchronized (stripe(userId))
+            {
+                // a clear after the flush empties the stored cart again before the dirty lines are written
+                Map<Integer, Integer> current = new HashMap<>(cart.quantities);
+                cart.quantities.clear();
+                if (!cart.cleared)
+                    cart.quantities.putAll(stored);
+                for (Integer productId : cart.dirty)
+                {
+                    Integer quantity = current.get(productId);
+                    if (quantity == null)
+                        cart.quantities.remove(productId);
+                    else
+                        cart.quantities.put(productId, quantity);
+                }
+
+                if (!cart.cleared && cart.dirty.isEmpty())
+                    dirtyUsers.remove(userId);
+            }
+        }
+        finally
+        {
+            settle(userId, cart);
+        }
+    }
+
+    @Override
+    public ExpiredCarts deleteIdleCarts(LocalDateTime idleSince, int afterUserId, int limit)
+    {
+        ExpiredCarts expired = delegate.deleteIdleCarts(idleSince, afterUserId, limit);
+
+        // forget the deleted carts here too, unless they changed since: those are written back whole
+        for (Integer userId : expired.getUserIds())
+        {
+            synchronized (stripe(userId))
+            {
+                CartState cart = carts.get(userId);
+                if (cart == null)
+                    continue;
+                if (!cart.cleared && cart.dirty.isEmpty() && !cart.inFlight)
+                {
+                    carts.remove(userId);
+                    removals.incrementAndGet();
+                }
+                else
+                {
+                    cart.dirty.addAll(cart.quantities.keySet());
+                    dirtyUsers.add(userId);
+                }
+            }
+        }
+        return expired;
+    }
+
+    // Writes every dirty cart in one batch; called by the flusher thread. Carts that are in flight
+    // already (a flush or evict of their own) stay dirty for the next run.
+    public void flushAll()
+    {
+        Set<Integer> cleared = new HashSet<>();
+        Map<Integer, Map<Integer, Integer>> quantities = new HashMap<>();
+        for (Integer userId : dirtyUsers)
+        {
+            synchronized (stripe(userId))
+            {
+                CartState cart = carts.get(userId);
+                if (cart != null && cart.inFlight)
+                    continue;
+                dirtyUsers.remove(userId);
+                if (cart != null && drain(userId, cart, cleared, quantities))
+                    cart.inFlight = true;
+            }
+        }
+
+        if (!cleared.isEmpty() || !quantities.isEmpty())
+            write(cleared, quantities);
+
+        evictIdleCarts();
+    }
+
+    // Stops the flusher and writes what is still buffered (Spring calls this on shutdown)
+    @Override
+    public void close()
+    {
+        flusher.shutdown();
+        try
+        {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        flushAll();
+    }
+
+    public int getDirtyCartCount()
+    {
+        return dirtyUsers.size();
+    }
+
+    private void flushQuietly()
+    {
+        try
+        {
+            flushAll();
+        }
+        catch (RuntimeException e)
+        {
+            // a failure must not cancel the scheduled task
+            logger.warn("Could not flush shopping carts, will retry: " + e.getMessage());
+        }
+    }
+
+    // Carts in flight are kept: a write or merge still has to land in them
+    private void evictIdleCarts()
+    {
+        long now = System.currentTimeMillis();
+        if (now - lastSweep < TimeUnit.MINUTES.toMillis(1))
+            return;
+        lastSweep = now;
+
+        for (Map.Entry<Integer, CartState> entry : carts.entrySet())
+        {
+            synchronized (stripe(entry.getKey()))
+            {
+                CartState cart = entry.getValue();
+                if (!cart.cleared && cart.dirty.isEmpty() && !cart.inFlight && now - cart.lastAccess > IDLE_MILLIS
+                        && carts.remove(entry.getKey(), cart))
+                    removals.incrementAndGet();
+            }
+        }
+    }
+
+    // Moves the pending changes of one user into the batch; must hold the user's stripe
+    private boolean drain(int userId, CartState cart, Set<Integer> cleared, Map<Integer, Map<Integer, Integer>> quantities)
+    {
+        if (!cart.cleared && cart.dirty.isEmpty())
+            return false;
+
+        if (cart.cleared)
+            cleared.add(userId);
+
+        Map<Integer, Integer> lines = new HashMap<>();
+        for (Integer productId : cart.dirty)
+            lines.put(productId, cart.quantities.getOrDefault(productId, 0));
+        if (!lines.isEmpty())
+            quantities.put(userId, lines);
+
+        cart.dirty.clear();
+        cart.cleared = false;
+        return true;
+    }
+
+    // Writes a drained batch with no lock held and takes its carts out of flight again. A batch that could
+    // not be written is marked dirty again, so the current quantities are written next time.
+    private void write(Set<Integer> cleared, Map<Integer, Map<Integer, Integer>> quantities)
+    {
+        Set<Integer> userIds = new HashSet<>(cleared);
+        userIds.addAll(quantities.keySet());
+        boolean written = false;
+        try
+        {
+            delegate.writeChanges(cleared, quantities);
+            written = true;
+        }
+        finally
+        {
+            for (Integer userId : userIds)
+            {
+                synchronized (stripe(userId))
+                {
+                    // in flight, so the cart is still there
+                    CartState cart = carts.get(userId);
+                    if (!written)
+                    {
+                        if (cleared.contains(userId))
+                            cart.cleared = true;
+                        if (quantities.containsKey(userId))
+                            cart.dirty.addAll(quantities.get(userId).keySet());
+                        dirtyUsers.add(userId);
+                    }
+                    settle(userId, cart);
+                }
+            }
+        }
+    }
+
+    // Must hold the user's stripe; waits while a write or merge of the cart is in flight.
+    // Returns the cart, or null when it is not loaded
+    private CartState settledCart(int userId)
+    {
+        Object stripe = stripe(userId);
+        CartState cart = carts.get(userId);
+        try
+        {
+            while (cart != null && cart.inFlight)
+            {
+                stripe.wait();
+                cart = carts.get(userId);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while the cart was being written.");
+        }
+        return cart;
+    }
+
+    private void settle(int userId, CartState cart)
+    {
+        Object stripe = stripe(userId);
+        synchronized (stripe)
+        {
+            cart.inFlight = false;
+            stripe.notifyAll();
+        }
+    }
+
+    // Runs the change on the user's cart under its stripe. The first access loads the stored cart
+    // before taking the stripe, so other users of the stripe never wait for that read
+    private <T> T withCart(int userId, Function<CartState, T> change)
+    {
+        while (true)
+        {
+            long removalsBefore = removals.get();
+            Map<Integer, Integer> stored = carts.containsKey(userId) ? null : read(userId);
+            synchronized (stripe(userId))
+            {
+                CartState cart = carts.get(userId);
+                if (cart == null && stored != null && removals.get() == removalsBefore)
+                {
+                    cart = new CartState();
+                    cart.quantities.putAll(stored);
+                    carts.put(userId, cart);
+                }
+                if (cart != null)
+                {
+                    cart.lastAccess = System.currentTimeMillis();
+                    return change.apply(cart);
+                }
+            }
+            // dropped in between, or another cart was dropped while this one was read: read it again
+        }
+    }
+
+    // only the quantities are kept, so the products are read without their descriptions
+    private Map<Integer, Integer> read(int userId)
+    {
+        Map<Integer, Integer> stored = new LinkedHashMap<>();
+        for (ShoppingCartItem item : delegate.getByUserIdWithoutDescriptions(userId).getItems().values())
+            stored.put(item.getProductId(), item.getQuantity());
+        return stored;
+    }
+
+    private Object stripe(int userId)
+    {
+        return stripes[Math.floorMod(userId, STRIPES)];
+    }
+
+    // Builds the same cart view as MySqlShoppingCartDao, with current product data from one batched lookup
+    private ShoppingCart toCart(Map<Integer, Integer> quantities)
+    {
+        Map<Integer, Product> products = productDao.getByIds(quantities.keySet());
+
+        Map<Integer, ShoppingCartItem> items = new HashMap<>();
+        for (Map.Entry<Integer, Integer> line : quantities.entrySet())
+        {
+            Product product = products.get(line.getKey());
+            if (product == null)
+                continue;
+
+            ShoppingCartItem item = new ShoppingCartItem();
+            item.setProduct(product);
+            item.setQuantity(line.getValue());
+            item.setDiscountPercent(BigDecimal.ZERO);
+
+            items.put(product.getProductId(), item);
+        }
+
+        ShoppingCart cart = new ShoppingCart();
+        cart.setItems(items);
+        PricingEngine.price(cart);
+        return cart;
+    }
+
+    private static class CartState
+    {
+        final Map<Integer, Integer> quantities = new LinkedHashMap<>();
+        // product lines changed since the last flush
+        final Set<Integer> dirty = new HashSet<>();
+        // the stored cart has to be emptied before the dirty lines are written
+        boolean cleared;
+        // a write of this cart (or a merge with the stored cart) runs without the stripe; it is not dropped meanwhile
+        boolean inFlight;
+        long lastAccess;
+
+        void set(int productId, int quantity)
+        {
+            if (quantity > 0)
+                quantities.put(productId, quantity);
+            else
+                quantities.remove(productId);
+            dirty.add(productId);
+        }
+    }
+}
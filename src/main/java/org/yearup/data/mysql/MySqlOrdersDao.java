@@ -1,35 +1,312 @@
 package org.yearup.data.mysql;
 
 import org.springframework.stereotype.Repository;
+import org.yearup.data.CheckoutConflictException;
+import org.yearup.data.InsufficientStockException;
 import org.yearup.data.OrdersDao;
+import org.yearup.data.StockReservation;
+import org.yearup.models.CheckoutResult;
 import org.yearup.models.Order;
 import org.yearup.models.OrderLineItem;
 import org.yearup.models.ShoppingCart;
 import org.yearup.models.ShoppingCartItem;
+import org.yearup.models.StockShortage;
+import org.yearup.pricing.PricingEngine;
+import org.yearup.pricing.PromotionEngine;
 
 import javax.sql.DataSource;
 import java.math.BigDecimal;
 import java.sql.*;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 @Repository
 public class MySqlOrdersDao implements OrdersDao {
 
+    // rows per multi-row INSERT of order lines (5 placeholders each, far below MySQL's 65535)
+    private static final int MAX_ROWS_PER_INSERT = 1000;
+
     private final DataSource dataSource;
+    private final PromotionEngine promotionEngine;
 
-    public MySqlOrdersDao(DataSource dataSource) {
+    public MySqlOrdersDao(DataSource dataSource, PromotionEngine promotionEngine) {
         this.dataSource = dataSource;
+        this.promotionEngine = promotionEngine;
+    }
+
+    // ---------------------------
+    // CHECKOUT (whole pipeline)
+    // ---------------------------
+    // Locks and reads the cart, prices it, reserves the stock, inserts the order and its lines and empties
+    // the cart, all on one connection in one transaction: a failure anywhere leaves the cart as it was.
+    // Returns null for an empty cart; throws InsufficientStockException when a line is not in stock.
+    // Lines whose stock the caller already reserved in memory (flash sales) skip the stock update.
+    // The order returned is built from what was written, nothing is read back.
+    @Override
+    public Order checkout(int userId, StockReservation reservation) {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+
+            try {
+                ShoppingCart cart = MySqlShoppingCartDao.loadCart(conn, userId, true);
+                if (cart.getItems().isEmpty()) {
+                    conn.rollback();
+                    return null;
+                }
+                promotionEngine.apply(cart);
+
+                List<ShoppingCartItem> databaseLines = databaseStockLines(cart, reservation);
+                reserveStock(conn, databaseLines);
+
+                // A flash sale that started after this checkout was admitted moved these products' stock
+                // into memory. Starting one waits for the row locks taken just above, so checking now is enough.
+                for (ShoppingCartItem line : databaseLines) {
+                    if (reservation.isHeldInMemory(line.getProductId())) {
+                        throw new CheckoutConflictException("A flash sale just started for " + line.getProduct().getName() + ", please try again.");
+                    }
+                }
+
+                Order order = insertOrder(conn, userId, cart);
+                clearCart(conn, userId);
+
+                conn.commit();
+                return order;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Error during checkout: " + e.getMessage(), e);
+        }
     }
 
     // ---------------------------
-    // CHECKOUT (create order)
+    // CHECKOUT (group commit)
     // ---------------------------
+    // Many checkouts in one transaction, so they share one commit and one round trip per step instead of
+    // paying for a whole transaction each:
+    //   1) lock and read the carts (in user id order)
+    //   2) lock the stock rows of every product involved with one SELECT ... FOR UPDATE (in product id order,
+    //      so concurrent group and single checkouts never deadlock) and hand the stock out in queue order,
+    //      each checkout all or nothing
+    //   3) one batch of stock updates, one multi-row INSERT for the orders and as few as possible for the lines
+    //   4) one DELETE for the carts of the orders placed
+    // A user listed twice gets an empty cart the second time, as the first checkout emptied it.
     @Override
-    public Order createOrderFromCart(int userId, ShoppingCart cart) {
+    public List<CheckoutResult> checkoutAll(List<Integer> userIds, StockReservation inMemory) {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+
+            try {
+                // 1) Carts
+                Map<Integer, ShoppingCart> carts = new TreeMap<>();
+                for (Integer userId : new TreeSet<>(userIds)) {
+                    ShoppingCart cart = MySqlShoppingCartDao.loadCart(conn, userId, true);
+                    if (!cart.getItems().isEmpty()) {
+                        promotionEngine.apply(cart);
+                        carts.put(userId, cart);
+                    }
+                }
+
+                // 2) Stock, handed out in queue order
+                Map<Integer, Integer> stock = lockStock(conn, carts.values());
+                Map<Integer, Integer> taken = new TreeMap<>();
+                List<CheckoutResult> results = new ArrayList<>();
+                List<Integer> placedUserIds = new ArrayList<>();
+                List<ShoppingCart> placedCarts = new ArrayList<>();
+
+                for (Integer userId : userIds) {
+                    ShoppingCart cart = carts.remove(userId);
+                    if (cart == null) {
+                        results.add(CheckoutResult.emptyCart());
+                        continue;
+                    }
+
+                    CheckoutResult refused = allocate(cart, stock, inMemory);
+                    if (refused != null) {
+                        results.add(refused);
+                        continue;
+                    }
+                    for (ShoppingCartItem line : cart.getItems().values()) {
+                        taken.merge(line.getProductId(), line.getQuantity(), Integer::sum);
+                    }
+                    placedUserIds.add(userId);
+                    placedCarts.add(cart);
+                    results.add(null);
+                }
+
+                // 3) and 4) Write what was placed
+                if (!placedCarts.isEmpty()) {
+                    takeStock(conn, taken);
+                    List<Order> orders = insertOrders(conn, placedUserIds, placedCarts);
+                    clearCarts(conn, placedUserIds);
+
+                    int next = 0;
+                    for (int i = 0; i < results.size(); i++) {
+                        if (results.get(i) == null) results.set(i, CheckoutResult.placed(orders.get(next++)));
+                    }
+                }
+
+                conn.commit();
+                return results;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Error during group checkout: " + e.getMessage(), e);
+        }
+    }
+
+    // Locks the stock rows of all products in the carts and returns their stock by product id
+    private static Map<Integer, Integer> lockStock(Connection conn, Collection<ShoppingCart> carts) throws SQLException {
+        Set<Integer> productIds = new TreeSet<>();
+        for (ShoppingCart cart : carts) {
+            productIds.addAll(cart.getItems().keySet());
+        }
+
+        Map<Integer, Integer> stock = new HashMap<>();
+        if (productIds.isEmpty()) return stock;
+
+        String inList = String.join(",", Collections.nCopies(productIds.size(), "?"));
+        String sql = "SELECT product_id, stock FROM products WHERE product_id IN (" + inList + ") ORDER BY product_id FOR UPDATE";
+
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            int index = 1;
+            for (Integer productId : productIds) {
+                ps.setInt(index++, productId);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    stock.put(rs.getInt("product_id"), rs.getInt("stock"));
+                }
+            }
+        }
+        return stock;
+    }
+
+    // Takes the cart's quantities off the remaining stock if every line can be filled;
+    // otherwise leaves the stock alone and returns why the checkout fails
+    private static CheckoutResult allocate(ShoppingCart cart, Map<Integer, Integer> stock, StockReservation inMemory) {
+        List<StockShortage> shortages = new ArrayList<>();
+        for (ShoppingCartItem line : byProductId(cart)) {
+            if (inMemory.isHeldInMemory(line.getProductId())) {
+                return CheckoutResult.failed("A flash sale just started for " + line.getProduct().getName() + ", please try again.");
+            }
+            int available = stock.getOrDefault(line.getProductId(), 0);
+            if (line.getQuantity() > available) {
+                shortages.add(new StockShortage(line.getProductId(), line.getProduct().getName(), line.getQuantity(), available));
+            }
+        }
+        if (!shortages.isEmpty()) {
+            return CheckoutResult.shortOfStock(shortages);
+        }
+
+        for (ShoppingCartItem line : cart.getItems().values()) {
+            stock.merge(line.getProductId(), -line.getQuantity(), Integer::sum);
+        }
+        return null;
+    }
+
+    // One batch of stock updates; the rows are locked and the quantities checked already
+    private static void takeStock(Connection conn, Map<Integer, Integer> taken) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("UPDATE products SET stock = stock - ? WHERE product_id = ?")) {
+            for (Map.Entry<Integer, Integer> entry : taken.entrySet()) {
+                ps.setInt(1, entry.getValue());
+                ps.setInt(2, entry.getKey());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    // Inserts all orders with one multi-row INSERT and their lines with as few as possible. MySQL gives a
+    // multi-row INSERT with a known row count one block of consecutive auto-increment values, so the
+    // generated keys come back in row order and are matched to the orders and lines by position.
+    private static List<Order> insertOrders(Connection conn, List<Integer> userIds, List<ShoppingCart> carts) throws SQLException {
+        LocalDateTime createdAt = LocalDateTime.now().withNano(0);
+
+        String insertOrdersSql = "INSERT INTO orders (user_id, date, address, city, state, zip, shipping_amount) VALUES "
+                + String.join(", ", Collections.nCopies(userIds.size(), "(?, ?, '', '', '', '', 0.00)"));
+
+        List<Order> orders = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(insertOrdersSql, Statement.RETURN_GENERATED_KEYS)) {
+            int index = 1;
+            for (Integer userId : userIds) {
+                ps.setInt(index++, userId);
+                ps.setTimestamp(index++, Timestamp.valueOf(createdAt));
+            }
+            ps.executeUpdate();
+
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                for (int i = 0; i < userIds.size(); i++) {
+                    if (!keys.next()) {
+                        throw new SQLException("Failed to create orders (missing generated keys).");
+                    }
+                    orders.add(newOrder(keys.getInt(1), userIds.get(i), createdAt, carts.get(i)));
+                }
+            }
+        }
+
+        List<OrderLineItem> lines = new ArrayList<>();
+        for (Order order : orders) {
+            lines.addAll(order.getItems());
+        }
+        for (int from = 0; from < lines.size(); from += MAX_ROWS_PER_INSERT) {
+            insertLines(conn, lines.subList(from, Math.min(from + MAX_ROWS_PER_INSERT, lines.size())));
+        }
+        return orders;
+    }
+
+    private static void insertLines(Connection conn, List<OrderLineItem> lines) throws SQLException {
+        String sql = "INSERT INTO order_line_items (order_id, product_id, sales_price, quantity, discount) VALUES "
+                + String.join(", ", Collections.nCopies(lines.size(), "(?, ?, ?, ?, ?)"));
+
+        try (PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            int index = 1;
+            for (OrderLineItem line : lines) {
+                ps.setInt(index++, line.getOrderId());
+                ps.setInt(index++, line.getProductId());
+                ps.setBigDecimal(index++, line.getSalesPrice());
+                ps.setInt(index++, line.getQuantity());
+                ps.setBigDecimal(index++, line.getDiscount());
+            }
+            ps.executeUpdate();
+
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                for (OrderLineItem line : lines) {
+                    if (keys.next()) line.setOrderLineItemId(keys.getInt(1));
+                }
+            }
+        }
+    }
+
+    private static void clearCarts(Connection conn, List<Integer> userIds) throws SQLException {
+        String inList = String.join(",", Collections.nCopies(userIds.size(), "?"));
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM shopping_cart WHERE user_id IN (" + inList + ")")) {
+            for (int i = 0; i < userIds.size(); i++) {
+                ps.setInt(i + 1, userIds.get(i));
+            }
+            ps.executeUpdate();
+        }
+    }
+
+    // Inserts the order and its lines (one batch) and returns the order with the generated ids
+    private static Order insertOrder(Connection conn, int userId, ShoppingCart cart) throws SQLException {
         String insertOrderSql = """
             INSERT INTO orders (user_id, date, address, city, state, zip, shipping_amount)
-            VALUES (?, NOW(), '', '', '', '', 0.00)
+            VALUES (?, ?, '', '', '', '', 0.00)
         """;
 
         String insertLineSql = """
@@ -37,45 +314,162 @@ public class MySqlOrdersDao implements OrdersDao {
             VALUES (?, ?, ?, ?, ?)
         """;
 
-        try (Connection conn = dataSource.getConnection()) {
-            conn.setAutoCommit(false);
+        // DATETIME keeps whole seconds, so the response shows what is stored
+        LocalDateTime createdAt = LocalDateTime.now().withNano(0);
 
-            int orderId;
+        // 1) Insert order
+        int orderId;
+        try (PreparedStatement ps = conn.prepareStatement(insertOrderSql, Statement.RETURN_GENERATED_KEYS)) {
+            ps.setInt(1, userId);
+            ps.setTimestamp(2, Timestamp.valueOf(createdAt));
+            ps.executeUpdate();
 
-            // 1) Insert order
-            try (PreparedStatement ps = conn.prepareStatement(insertOrderSql, Statement.RETURN_GENERATED_KEYS)) {
-                ps.setInt(1, userId);
-                ps.executeUpdate();
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                if (!keys.next()) {
+                    throw new SQLException("Failed to create order (no generated key).");
+                }
+                orderId = keys.getInt(1);
+            }
+        }
 
-                try (ResultSet keys = ps.getGeneratedKeys()) {
-                    if (!keys.next()) {
-                        conn.rollback();
-                        throw new RuntimeException("Failed to create order (no generated key).");
-                    }
-                    orderId = keys.getInt(1);
+        Order order = newOrder(orderId, userId, createdAt, cart);
+
+        // 2) Insert line items from cart, in product id order
+        List<OrderLineItem> items = order.getItems();
+        try (PreparedStatement ps = conn.prepareStatement(insertLineSql, Statement.RETURN_GENERATED_KEYS)) {
+            for (OrderLineItem item : items) {
+                ps.setInt(1, orderId);
+                ps.setInt(2, item.getProductId());
+                ps.setBigDecimal(3, item.getSalesPrice());
+                ps.setInt(4, item.getQuantity());
+                ps.setBigDecimal(5, item.getDiscount());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+
+            // generated keys come back in batch order
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                for (OrderLineItem item : items) {
+                    if (keys.next()) item.setOrderLineItemId(keys.getInt(1));
                 }
             }
+        }
+
+        return order;
+    }
 
-            // 2) Insert line items from cart
-            try (PreparedStatement ps = conn.prepareStatement(insertLineSql)) {
-                for (ShoppingCartItem item : cart.getItems().values()) {
-                    ps.setInt(1, orderId);
-                    ps.setInt(2, item.getProduct().getProductId());
-                    ps.setBigDecimal(3, item.getProduct().getPrice());
-                    ps.setInt(4, item.getQuantity());
-                    ps.setBigDecimal(5, BigDecimal.ZERO);
-                    ps.addBatch();
+    // The order as written for this cart: totals and lines (in product id order) come from the cart
+    private static Order newOrder(int orderId, int userId, LocalDateTime createdAt, ShoppingCart cart) {
+        Order order = new Order();
+        order.setOrderId(orderId);
+        order.setUserId(userId);
+        order.setCreatedAt(createdAt);
+        order.setAddress("");
+        order.setCity("");
+        order.setState("");
+        order.setZip("");
+        order.setShippingAmount(new BigDecimal("0.00"));
+        order.setTotal(cart.getTotal());
+
+        List<OrderLineItem> items = new ArrayList<>();
+        for (ShoppingCartItem cartItem : byProductId(cart)) {
+            OrderLineItem item = new OrderLineItem();
+            item.setOrderId(orderId);
+            item.setProductId(cartItem.getProductId());
+            item.setSalesPrice(cartItem.getProduct().getPrice());
+            item.setQuantity(cartItem.getQuantity());
+            item.setDiscount(PricingEngine.toAmount(cartItem.getDiscountCents()));
+            item.setProduct(cartItem.getProduct());
+            items.add(item);
+        }
+        order.setItems(items);
+        return order;
+    }
+
+    // Takes the ordered quantities off the stock with one batch of conditional updates. A line whose
+    // stock is too low updates no row, so stock never goes below 0. Rows are locked in product id order,
+    // so two checkouts sharing products wait for each other instead of deadlocking. Every line is tried,
+    // so the shortage report lists all of them at once.
+    private static void reserveStock(Connection conn, List<ShoppingCartItem> lines) throws SQLException {
+        if (lines.isEmpty()) return;
+
+        String sql = "UPDATE products SET stock = stock - ? WHERE product_id = ? AND stock >= ?";
+
+        int[] counts;
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (ShoppingCartItem line : lines) {
+                ps.setInt(1, line.getQuantity());
+                ps.setInt(2, line.getProductId());
+                ps.setInt(3, line.getQuantity());
+                ps.addBatch();
+            }
+            counts = ps.executeBatch();
+        }
+
+        List<ShoppingCartItem> shortLines = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            if (counts[i] == 0) shortLines.add(lines.get(i));
+        }
+        if (!shortLines.isEmpty()) {
+            throw new InsufficientStockException(shortages(conn, shortLines));
+        }
+    }
+
+    private static List<StockShortage> shortages(Connection conn, List<ShoppingCartItem> shortLines) throws SQLException {
+        String inList = String.join(",", Collections.nCopies(shortLines.size(), "?"));
+        String sql = "SELECT product_id, stock FROM products WHERE product_id IN (" + inList + ")";
+
+        Map<Integer, Integer> stock = new HashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < shortLines.size(); i++) {
+                ps.setInt(i + 1, shortLines.get(i).getProductId());
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    stock.put(rs.getInt("product_id"), rs.getInt("stock"));
                 }
-                ps.executeBatch();
             }
+        }
+
+        List<StockShortage> shortages = new ArrayList<>();
+        for (ShoppingCartItem line : shortLines) {
+            shortages.add(new StockShortage(line.getProductId(), line.getProduct().getName(),
+                    line.getQuantity(), stock.getOrDefault(line.getProductId(), 0)));
+        }
+        return shortages;
+    }
 
-            conn.commit();
+    // The lines (in product id order) whose stock comes from products.stock; the others must match
+    // what the reservation holds, since the cart could have changed after it was made
+    private static List<ShoppingCartItem> databaseStockLines(ShoppingCart cart, StockReservation reservation) {
+        List<ShoppingCartItem> lines = new ArrayList<>();
+        int reservedLines = 0;
+        for (ShoppingCartItem line : byProductId(cart)) {
+            int reserved = reservation.getReserved(line.getProductId());
+            if (reserved == 0) {
+                lines.add(line);
+            } else if (reserved == line.getQuantity()) {
+                reservedLines++;
+            } else {
+                throw new CheckoutConflictException("Your cart changed during checkout, please try again.");
+            }
+        }
+        if (reservedLines != reservation.getReservedLineCount()) {
+            throw new CheckoutConflictException("Your cart changed during checkout, please try again.");
+        }
+        return lines;
+    }
 
-            // 3) Return order details (includes items + total)
-            return getOrderDetails(userId, orderId);
+    private static List<ShoppingCartItem> byProductId(ShoppingCart cart) {
+        List<ShoppingCartItem> lines = new ArrayList<>(cart.getItems().values());
+        lines.sort(Comparator.comparingInt(ShoppingCartItem::getProductId));
+        return lines;
+    }
 
-        } catch (SQLException e) {
-            throw new RuntimeException("Error creating order: " + e.getMessage(), e);
+    private static void clearCart(Connection conn, int userId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM shopping_cart WHERE user_id = ?")) {
+            ps.setInt(1, userId);
+            ps.executeUpdate();
         }
     }
 
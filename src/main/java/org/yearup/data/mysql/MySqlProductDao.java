@@ -3,17 +3,38 @@ package org.yearup.data.mysql;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.stereotype.Repository;
+import org.yearup.data.ProductCursor;
+import org.yearup.data.ProductHandler;
+import org.yearup.data.ProductSort;
 import org.yearup.models.Product;
+import org.yearup.models.ProductField;
 import org.yearup.data.ProductDao;
+import org.yearup.models.ProductPage;
 
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Repository
 public class MySqlProductDao extends MySqlDaoBase implements ProductDao {
+    // Connector/J streams a forward-only, read-only result row by row when the fetch size is
+    // Integer.MIN_VALUE, without a server-side cursor or any connection url flag
+    static final int STREAM_FETCH_SIZE = Integer.MIN_VALUE;
+
+    // ids per IN (...) list; keeps statements small enough for the server's packet and plan limits
+    static final int IN_CHUNK_SIZE = 500;
+
     @Autowired
     public MySqlProductDao(DataSource dataSource) {
         super(dataSource);
@@ -23,32 +44,14 @@ public class MySqlProductDao extends MySqlDaoBase implements ProductDao {
     public List<Product> search(Integer categoryId, BigDecimal minPrice, BigDecimal maxPrice, String subCategory) {
         List<Product> products = new ArrayList<>();
 
-        String sql = "SELECT * FROM products " +
-                " WHERE (category_id = ? OR ? = -1) " +
-                " AND (price >= ? OR ? = -1) " +
-                " AND (price <= ? OR ? = -1) " +
-                " AND (subcategory = ? OR ? = '') ";
-
-        categoryId = categoryId == null ? -1 : categoryId;
-        minPrice = minPrice == null ? new BigDecimal("-1") : minPrice;
-        maxPrice = maxPrice == null ? new BigDecimal("-1") : maxPrice;
-        subCategory = subCategory == null ? "" : subCategory;
-
-        try (Connection connection = getConnection()) {
-            PreparedStatement statement = connection.prepareStatement(sql);
-            statement.setInt(1, categoryId);
-            statement.setInt(2, categoryId);
+        SearchQuery query = SearchQuery.of(categoryId, minPrice, maxPrice, subCategory);
 
-            statement.setBigDecimal(3, minPrice);
-            statement.setBigDecimal(4, minPrice);
-
-            statement.setBigDecimal(5, maxPrice);
-            statement.setBigDecimal(6, maxPrice);
-
-            statement.setString(7, subCategory);
-            statement.setString(8, subCategory);
+        try (Connection connection = getConnection();
+             PreparedStatement statement = connection.prepareStatement(query.sql))
+        {
+            query.bind(statement);
 
-            try (ResultSet row = statement.executeQuery()) // FIX: close ResultSet
+            try (ResultSet row = statement.executeQuery())
             { while (row.next())    {
                 products.add(mapRow(row));
             }
@@ -61,6 +64,174 @@ public class MySqlProductDao extends MySqlDaoBase implements ProductDao {
 
     }
 
+    @Override
+    public ProductPage search(Integer categoryId, BigDecimal minPrice, BigDecimal maxPrice, String subCategory,
+                              ProductSort sort, ProductCursor after, int limit, Set<ProductField> fields) {
+        List<Product> products = new ArrayList<>();
+
+        SearchQuery query = SearchQuery.of(categoryId, minPrice, maxPrice, subCategory, sort, after, limit, fields);
+
+        try (Connection connection = getConnection();
+             PreparedStatement statement = connection.prepareStatement(query.sql))
+        {
+            query.bind(statement);
+
+            try (ResultSet row = statement.executeQuery())
+            {
+                while (row.next()) {
+                    products.add(mapRow(row, query.fields));
+                }
+            }
+        }
+        catch (SQLException e)
+        { throw new RuntimeException(e);
+        }
+        return ProductCursor.toPage(products, limit, sort);
+    }
+
+    @Override
+    public void streamSearch(Integer categoryId, BigDecimal minPrice, BigDecimal maxPrice, String subCategory,
+                             Set<ProductField> fields, ProductHandler handler) {
+        SearchQuery query = SearchQuery.of(categoryId, minPrice, maxPrice, subCategory, null, null, 0, fields);
+
+        // forward-only, read-only in streaming mode: the driver holds one row at a time
+        // instead of buffering the whole result
+        try (Connection connection = getConnection();
+             PreparedStatement statement = connection.prepareStatement(query.sql,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY))
+        {
+            statement.setFetchSize(STREAM_FETCH_SIZE);
+            query.bind(statement);
+
+            try (ResultSet row = statement.executeQuery())
+            {
+                while (row.next()) {
+                    handler.handle(mapRow(row, query.fields));
+                }
+            }
+        }
+        catch (SQLException e)
+        { throw new RuntimeException(e);
+        }
+        catch (IOException e)
+        { throw new UncheckedIOException(e);
+        }
+    }
+
+    // Builds the search SQL with only the filters that were supplied.
+    // The old "(category_id = ? OR ? = -1)" shape forced a full scan; plain predicates
+    // let MySQL use the (category_id, price), (subcategory, price) and (price) indexes.
+    static class SearchQuery
+    {
+        final String sql;
+        final List<Object> parameters;
+        final Set<ProductField> fields; // columns actually selected, null = all
+
+        private SearchQuery(String sql, List<Object> parameters, Set<ProductField> fields)
+        {
+            this.sql = sql;
+            this.parameters = parameters;
+            this.fields = fields;
+        }
+
+        static SearchQuery of(Integer categoryId, BigDecimal minPrice, BigDecimal maxPrice, String subCategory)
+        {
+            return of(categoryId, minPrice, maxPrice, subCategory, null, null, 0, null);
+        }
+
+        // Keyset paging: "key >= ? AND (key > ? OR product_id > ?)" keeps the seek on the index range,
+        // so page 100 costs the same as page 1 (OFFSET would read and discard every earlier row).
+        static SearchQuery of(Integer categoryId, BigDecimal minPrice, BigDecimal maxPrice, String subCategory,
+                              ProductSort sort, ProductCursor after, int limit, Set<ProductField> fields)
+        {
+            // the cursor of the next page needs product_id and the sort key, whatever the client asked for
+            if (fields != null) {
+                fields = EnumSet.copyOf(fields);
+                fields.add(ProductField.PRODUCT_ID);
+                if (sort == ProductSort.PRICE) fields.add(ProductField.PRICE);
+                if (sort == ProductSort.NAME) fields.add(ProductField.NAME);
+            }
+
+            StringBuilder sql = new StringBuilder("SELECT ").append(columns(fields)).append(" FROM products");
+            List<Object> parameters = new ArrayList<>();
+            List<String> predicates = new ArrayList<>();
+
+            if (categoryId != null) {
+                predicates.add("category_id = ?");
+                parameters.add(categoryId);
+            }
+            if (subCategory != null && !subCategory.isEmpty()) {
+                predicates.add("subcategory = ?");
+                parameters.add(subCategory);
+            }
+            if (minPrice != null) {
+                predicates.add("price >= ?");
+                parameters.add(minPrice);
+            }
+            if (maxPrice != null) {
+                predicates.add("price <= ?");
+                parameters.add(maxPrice);
+            }
+
+            if (after != null) {
+                switch (after.getSort()) {
+                    case ID -> {
+                        predicates.add("product_id > ?");
+                        parameters.add(after.getProductId());
+                    }
+                    case PRICE -> {
+                        predicates.add("price >= ? AND (price > ? OR product_id > ?)");
+                        parameters.add(after.getPrice());
+                        parameters.add(after.getPrice());
+                        parameters.add(after.getProductId());
+                    }
+                    case NAME -> {
+                        predicates.add("name >= ? AND (name > ? OR product_id > ?)");
+                        parameters.add(after.getName());
+                        parameters.add(after.getName());
+                        parameters.add(after.getProductId());
+                    }
+                }
+            }
+
+            if (!predicates.isEmpty())
+                sql.append(" WHERE ").append(String.join(" AND ", predicates));
+
+            if (sort != null) {
+                switch (sort) {
+                    case ID -> sql.append(" ORDER BY product_id");
+                    case PRICE -> sql.append(" ORDER BY price, product_id");
+                    case NAME -> sql.append(" ORDER BY name, product_id");
+                }
+            }
+
+            // one extra row tells the caller whether there is a next page
+            if (limit > 0) {
+                sql.append(" LIMIT ?");
+                parameters.add(limit + 1);
+            }
+
+            return new SearchQuery(sql.toString(), parameters, fields);
+        }
+
+        private static String columns(Set<ProductField> fields)
+        {
+            if (fields == null)
+                return "*";
+
+            List<String> columns = new ArrayList<>();
+            for (ProductField field : fields)
+                columns.add(column(field));
+            return String.join(", ", columns);
+        }
+
+        void bind(PreparedStatement statement) throws SQLException
+        {
+            for (int i = 0; i < parameters.size(); i++)
+                statement.setObject(i + 1, parameters.get(i));
+        }
+    }
+
     @Override
     public List<Product> listByCategoryId(int categoryId) {
         List<Product> products = new ArrayList<>();
@@ -105,6 +276,44 @@ public class MySqlProductDao extends MySqlDaoBase implements ProductDao {
 
     }
 
+    @Override
+    public Map<Integer, Product> getByIds(Collection<Integer> productIds) {
+        ProductDao.checkIds(productIds);
+        Map<Integer, Product> products = new HashMap<>();
+        List<Integer> ids = new ArrayList<>(new LinkedHashSet<>(productIds));
+        if (ids.isEmpty())
+            return products;
+
+        // one connection for every chunk, one round trip per IN_CHUNK_SIZE ids
+        try (Connection connection = getConnection())
+        {
+            for (int from = 0; from < ids.size(); from += IN_CHUNK_SIZE)
+            {
+                List<Integer> chunk = ids.subList(from, Math.min(from + IN_CHUNK_SIZE, ids.size()));
+                String sql = "SELECT * FROM products WHERE product_id IN ("
+                        + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+
+                try (PreparedStatement statement = connection.prepareStatement(sql))
+                {
+                    for (int i = 0; i < chunk.size(); i++)
+                        statement.setInt(i + 1, chunk.get(i));
+
+                    try (ResultSet row = statement.executeQuery())
+                    {
+                        while (row.next())
+                        {
+                            Product product = mapRow(row);
+                            products.put(product.getProductId(), product);
+                        }
+                    }
+                }
+            }
+        }
+        catch (SQLException e)
+        { throw new RuntimeException(e); }
+        return products;
+    }
+
     @Override
     public Product create(Product product) {
 
@@ -192,6 +401,52 @@ public class MySqlProductDao extends MySqlDaoBase implements ProductDao {
         }
     }
 
+    @Override
+    public void stockChanged(Collection<Integer> productIds) {
+        // every read goes to the database, so there is nothing to refresh
+    }
+
+    static String column(ProductField field)
+    {
+        return switch (field)
+        {
+            case PRODUCT_ID -> "product_id";
+            case NAME -> "name";
+            case PRICE -> "price";
+            case CATEGORY_ID -> "category_id";
+            case DESCRIPTION -> "description";
+            case SUB_CATEGORY -> "subcategory";
+            case STOCK -> "stock";
+            case FEATURED -> "featured";
+            case IMAGE_URL -> "image_url";
+        };
+    }
+
+    // Lightweight mapper for projected queries: only reads the selected columns
+    protected static Product mapRow(ResultSet row, Set<ProductField> fields) throws SQLException
+    {
+        if (fields == null)
+            return mapRow(row);
+
+        Product product = new Product();
+        for (ProductField field : fields)
+        {
+            switch (field)
+            {
+                case PRODUCT_ID -> product.setProductId(row.getInt("product_id"));
+                case NAME -> product.setName(row.getString("name"));
+                case PRICE -> product.setPrice(row.getBigDecimal("price"));
+                case CATEGORY_ID -> product.setCategoryId(row.getInt("category_id"));
+                case DESCRIPTION -> product.setDescription(row.getString("description"));
+                case SUB_CATEGORY -> product.setSubCategory(row.getString("subcategory"));
+                case STOCK -> product.setStock(row.getInt("stock"));
+                case FEATURED -> product.setFeatured(row.getBoolean("featured"));
+                case IMAGE_URL -> product.setImageUrl(row.getString("image_url"));
+            }
+        }
+        return product;
+    }
+
     protected static Product mapRow(ResultSet row) throws SQLException
     {
         int productId = row.getInt("product_id");
@@ -0,0 +1,69 @@
+package org.yearup.data.mysql;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+import org.yearup.data.PromotionDao;
+import org.yearup.models.Promotion;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+@Repository
+public class MySqlPromotionDao extends MySqlDaoBase implements PromotionDao
+{
+    @Autowired
+    public MySqlPromotionDao(DataSource dataSource)
+    {
+        super(dataSource);
+    }
+
+    @Override
+    public List<Promotion> getCurrent()
+    {
+        String sql = """
+                SELECT promotion_id, name, product_id, category_id, subcategory,
+                       min_cart_total, discount_percent, starts_at, ends_at
+                FROM promotions
+                WHERE ends_at IS NULL OR ends_at > NOW()
+                """;
+
+        List<Promotion> promotions = new ArrayList<>();
+        try (Connection connection = getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql);
+             ResultSet row = statement.executeQuery())
+        {
+            while (row.next())
+            {
+                promotions.add(mapRow(row));
+            }
+        }
+        catch (SQLException e)
+        {
+            throw new RuntimeException(e);
+        }
+        return promotions;
+    }
+
+    private static Promotion mapRow(ResultSet row) throws SQLException
+    {
+        Timestamp startsAt = row.getTimestamp("starts_at");
+        Timestamp endsAt = row.getTimestamp("ends_at");
+
+        return new Promotion(
+                row.getInt("promotion_id"),
+                row.getString("name"),
+                row.getObject("product_id", Integer.class),
+                row.getObject("category_id", Integer.class),
+                row.getString("subcategory"),
+                row.getBigDecimal("min_cart_total"),
+                row.getBigDecimal("discount_percent"),
+                startsAt == null ? null : startsAt.toLocalDateTime(),
+                endsAt == null ? null : endsAt.toLocalDateTime());
+    }
+}
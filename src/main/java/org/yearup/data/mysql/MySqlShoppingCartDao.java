@@ -2,9 +2,12 @@ package org.yearup.data.mysql;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 import org.yearup.data.ShoppingCartDao;
+import org.yearup.models.CartOperation;
+import org.yearup.models.ExpiredCarts;
 import org.yearup.models.Product;
 import org.yearup.models.ShoppingCart;
 import org.yearup.models.ShoppingCartItem;
+import org.yearup.pricing.PricingEngine;
 
 import javax.sql.DataSource;
 import java.math.BigDecimal;
@@ -12,8 +15,18 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 
 @Repository
@@ -23,28 +36,88 @@ public class MySqlShoppingCartDao extends MySqlDaoBase implements ShoppingCartDa
         super(dataSource);
     }
 
+    // MySQL error for an INSERT whose foreign key has no parent row (here: an unknown product_id)
+    private static final int NO_REFERENCED_ROW = 1452;
+
     @Override
     public ShoppingCart getByUserId(int userId) {
+        try (Connection connection = getConnection()) {
+            return loadCart(connection, userId);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Skips the description TEXT column, so the rows are read without touching off-page storage
+    @Override
+    public ShoppingCart getByUserIdWithoutDescriptions(int userId) {
+        try (Connection connection = getConnection()) {
+            return loadCart(connection, userId, false, false);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // One upsert instead of SELECT + UPDATE/INSERT; the product_id foreign key replaces the separate
+    // product lookup, and the cart is read back on the same connection inside the same transaction
+    @Override
+    public ShoppingCart addProduct(int userId, int productId) {
+        String upsertSql = """
+                    INSERT INTO shopping_cart(user_id, product_id, quantity) VALUES (?, ?, 1)
+                    ON DUPLICATE KEY UPDATE quantity = quantity + 1, last_modified = NOW()
+                """;
+
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+
+            try (PreparedStatement upsert = connection.prepareStatement(upsertSql)) {
+                upsert.setInt(1, userId);
+                upsert.setInt(2, productId);
+                upsert.executeUpdate();
+
+                ShoppingCart cart = loadCart(connection, userId);
+                connection.commit();
+                return cart;
+            } catch (SQLException e) {
+                connection.rollback();
+                if (e.getErrorCode() == NO_REFERENCED_ROW) return null;
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static ShoppingCart loadCart(Connection connection, int userId) throws SQLException {
+        return loadCart(connection, userId, false);
+    }
+
+    // forUpdate locks the user's cart rows (not the products) until the transaction ends, as checkout needs
+    static ShoppingCart loadCart(Connection connection, int userId, boolean forUpdate) throws SQLException {
+        return loadCart(connection, userId, forUpdate, true);
+    }
+
+    private static ShoppingCart loadCart(Connection connection, int userId, boolean forUpdate, boolean withDescriptions)
+            throws SQLException {
+        String productColumns = "p.product_id, p.name, p.price, p.category_id, p.subcategory, p.stock, p.featured, p.image_url"
+                + (withDescriptions ? ", p.description" : "");
         String sql = """
-                    SELECT sc.product_id, sc.quantity,
-                           p.product_id, p.name, p.price, p.category_id, p.description, p.subcategory, p.stock, p.featured, p.image_url
+                    SELECT sc.product_id, sc.quantity, %s
                     FROM shopping_cart sc
                     JOIN products p ON p.product_id = sc.product_id
                     WHERE sc.user_id = ?
-                """;
+                """.formatted(productColumns) + (forUpdate ? " FOR UPDATE OF sc" : "");
 
         ShoppingCart cart = new ShoppingCart();
 
-        try (Connection connection = getConnection();
-             PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setInt(1, userId);
 
             Map<Integer, ShoppingCartItem> items = new HashMap<>();
-            BigDecimal total = BigDecimal.ZERO;
 
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    Product product = mapProduct(rs);
+                    Product product = mapProduct(rs, withDescriptions);
                     int quantity = rs.getInt("quantity");
 
                     ShoppingCartItem item = new ShoppingCartItem();
@@ -54,50 +127,14 @@ public class MySqlShoppingCartDao extends MySqlDaoBase implements ShoppingCartDa
 
                     item.setDiscountPercent(BigDecimal.ZERO);
 
-                    BigDecimal lineTotal = product.getPrice().multiply(BigDecimal.valueOf(quantity));
-                    item.setLineTotal(lineTotal);
-
                     items.put(product.getProductId(), item);
-                    total = total.add(lineTotal);
                 }
             }
             cart.setItems(items);
-            cart.setTotal(total);
-            return cart;
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
-
-    }
-
-    @Override
-    public void addProduct(int userId, int productId) {
-        String selectSql = "SELECT quantity FROM shopping_cart WHERE user_id = ? AND product_id = ?";
-        String insertSql = "INSERT INTO shopping_cart(user_id, product_id, quantity) VALUES (?, ?, 1)";
-        String updateSql = "UPDATE shopping_cart SET quantity = quantity + 1 WHERE user_id = ? AND product_id = ?";
 
-        try (Connection connection = getConnection();
-             PreparedStatement select = connection.prepareStatement(selectSql)) {
-            select.setInt(1, userId);
-            select.setInt(2, productId);
-
-            try (ResultSet rs = select.executeQuery()) {
-                if (rs.next()) {
-                    try (PreparedStatement update = connection.prepareStatement(updateSql)) {
-                        update.setInt(1, userId);
-                        update.setInt(2, productId);
-                        update.executeUpdate();
-                    }
-                } else {
-                    try (PreparedStatement insert = connection.prepareStatement(insertSql)) {
-                        insert.setInt(1, userId);
-                        insert.setInt(2, productId);
-                        insert.executeUpdate();
-                    }
-                }
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+            // line totals and the cart total in long cents
+            PricingEngine.price(cart);
+            return cart;
         }
     }
 
@@ -108,21 +145,10 @@ public class MySqlShoppingCartDao extends MySqlDaoBase implements ShoppingCartDa
         // Only update if item already exists; do nothing otherwise.
         if (quantity == 0)
         {
-            String deleteSql = "DELETE FROM shopping_cart WHERE user_id = ? AND product_id = ?";
-            try (Connection connection = getConnection();
-                 PreparedStatement ps = connection.prepareStatement(deleteSql))
-            {
-                ps.setInt(1, userId);
-                ps.setInt(2, productId);
-                ps.executeUpdate();
-            }
-            catch (SQLException e)
-            {
-                throw new RuntimeException(e);
-            }
+            deleteLine(userId, productId);
             return;
         }
-        String updateSql = "UPDATE shopping_cart SET quantity = ? WHERE user_id = ? AND product_id = ?";
+        String updateSql = "UPDATE shopping_cart SET quantity = ?, last_modified = NOW() WHERE user_id = ? AND product_id = ?";
         try (Connection connection = getConnection();
              PreparedStatement ps = connection.prepareStatement(updateSql))
         {
@@ -164,13 +190,220 @@ public class MySqlShoppingCartDao extends MySqlDaoBase implements ShoppingCartDa
 //        }
     }
 
+    @Override
+    public void evict(int userId) {
+        // nothing held in memory
+    }
+
+    @Override
+    public void flush(int userId) {
+        // every change is already written synchronously
+    }
+
+    // Applies buffered cart changes (see WriteBehindShoppingCartDao) in one transaction with batched statements
+    public void writeChanges(Set<Integer> clearedUserIds, Map<Integer, Map<Integer, Integer>> quantities) {
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+
+            try {
+                writeLines(connection, clearedUserIds, quantities);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Locks the user's cart rows, applies the operations to them in memory and writes only the lines
+    // that changed with batched statements; the result is read back in the same transaction
+    @Override
+    public ShoppingCart applyOperations(int userId, List<CartOperation> operations) {
+        String lockSql = "SELECT product_id, quantity FROM shopping_cart WHERE user_id = ? FOR UPDATE";
+
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+
+            try {
+                Map<Integer, Integer> before = new HashMap<>();
+                try (PreparedStatement lock = connection.prepareStatement(lockSql)) {
+                    lock.setInt(1, userId);
+                    try (ResultSet rs = lock.executeQuery()) {
+                        while (rs.next()) {
+                            before.put(rs.getInt("product_id"), rs.getInt("quantity"));
+                        }
+                    }
+                }
+
+                Map<Integer, Integer> after = new HashMap<>(before);
+                for (CartOperation operation : operations) {
+                    operation.applyTo(after);
+                }
+
+                Map<Integer, Integer> changed = new HashMap<>();
+                Set<Integer> productIds = new HashSet<>(before.keySet());
+                productIds.addAll(after.keySet());
+                for (Integer productId : productIds) {
+                    if (!Objects.equals(before.get(productId), after.get(productId)))
+                        changed.put(productId, after.getOrDefault(productId, 0));
+                }
+
+                if (!changed.isEmpty())
+                    writeLines(connection, Set.of(), Map.of(userId, changed));
+
+                ShoppingCart cart = loadCart(connection, userId);
+                connection.commit();
+                return cart;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Carts in clearedUserIds are emptied first, then every quantity is written, 0 removing the row.
+    // Products deleted in the meantime are skipped by the INSERT ... SELECT instead of failing the batch.
+    // A cart that lost lines has the lines it kept marked as changed now, like the ones that were written.
+    private static void writeLines(Connection connection, Set<Integer> clearedUserIds,
+                                   Map<Integer, Map<Integer, Integer>> quantities) throws SQLException {
+        String clearSql = "DELETE FROM shopping_cart WHERE user_id = ?";
+        String upsertSql = """
+                    INSERT INTO shopping_cart(user_id, product_id, quantity)
+                    SELECT ?, product_id, ? FROM products WHERE product_id = ?
+                    ON DUPLICATE KEY UPDATE quantity = ?, last_modified = NOW()
+                """;
+        String deleteSql = "DELETE FROM shopping_cart WHERE user_id = ? AND product_id = ?";
+        String touchSql = "UPDATE shopping_cart SET last_modified = NOW() WHERE user_id = ?";
+
+        try (PreparedStatement clear = connection.prepareStatement(clearSql);
+             PreparedStatement upsert = connection.prepareStatement(upsertSql);
+             PreparedStatement delete = connection.prepareStatement(deleteSql);
+             PreparedStatement touch = connection.prepareStatement(touchSql)) {
+            for (int userId : clearedUserIds) {
+                clear.setInt(1, userId);
+                clear.addBatch();
+            }
+
+            for (Map.Entry<Integer, Map<Integer, Integer>> cart : quantities.entrySet()) {
+                int userId = cart.getKey();
+                boolean removedLines = false;
+                for (Map.Entry<Integer, Integer> line : cart.getValue().entrySet()) {
+                    int productId = line.getKey();
+                    int quantity = line.getValue();
+                    if (quantity > 0) {
+                        upsert.setInt(1, userId);
+                        upsert.setInt(2, quantity);
+                        upsert.setInt(3, productId);
+                        upsert.setInt(4, quantity);
+                        upsert.addBatch();
+                    } else {
+                        delete.setInt(1, userId);
+                        delete.setInt(2, productId);
+                        delete.addBatch();
+                        removedLines = true;
+                    }
+                }
+                if (removedLines) {
+                    touch.setInt(1, userId);
+                    touch.addBatch();
+                }
+            }
+
+            clear.executeBatch();
+            upsert.executeBatch();
+            delete.executeBatch();
+            touch.executeBatch();
+        }
+    }
+
+    // Looks at the next `limit` users after afterUserId (in primary key order) that have a line last
+    // changed before idleSince, and deletes the carts among them with no newer line. Runs as a few short
+    // autocommit statements, so a batch only locks the rows it deletes. The DELETE itself checks both
+    // conditions again, so a cart that gets a new line while the batch runs is kept whole. Walking the primary key with a cursor means carts that are still in use
+    // cannot keep a batch from reaching the abandoned ones behind them.
+    @Override
+    public ExpiredCarts deleteIdleCarts(LocalDateTime idleSince, int afterUserId, int limit) {
+        String candidatesSql = """
+                    SELECT DISTINCT user_id FROM shopping_cart
+                    WHERE user_id > ? AND last_modified < ?
+                    ORDER BY user_id
+                    LIMIT ?
+                """;
+
+        try (Connection connection = getConnection()) {
+            Timestamp cutoff = Timestamp.valueOf(idleSince);
+
+            Set<Integer> userIds = new LinkedHashSet<>();
+            try (PreparedStatement candidates = connection.prepareStatement(candidatesSql)) {
+                candidates.setInt(1, afterUserId);
+                candidates.setTimestamp(2, cutoff);
+                candidates.setInt(3, limit);
+                try (ResultSet rs = candidates.executeQuery()) {
+                    while (rs.next()) {
+                        userIds.add(rs.getInt("user_id"));
+                    }
+                }
+            }
+            if (userIds.isEmpty())
+                return new ExpiredCarts(List.of(), 0, afterUserId, false);
+
+            int scannedUpTo = Collections.max(userIds);
+            boolean more = userIds.size() == limit;
+
+            // a cart with any recent line is still in use; this only narrows the batch down, the DELETE decides
+            String inList = String.join(",", Collections.nCopies(userIds.size(), "?"));
+            String activeSql = "SELECT DISTINCT user_id FROM shopping_cart WHERE user_id IN (" + inList + ") AND last_modified >= ?";
+            try (PreparedStatement active = connection.prepareStatement(activeSql)) {
+                int index = bindAll(active, userIds);
+                active.setTimestamp(index, cutoff);
+                try (ResultSet rs = active.executeQuery()) {
+                    while (rs.next()) {
+                        userIds.remove(rs.getInt("user_id"));
+                    }
+                }
+            }
+            if (userIds.isEmpty())
+                return new ExpiredCarts(List.of(), 0, scannedUpTo, more);
+
+            inList = String.join(",", Collections.nCopies(userIds.size(), "?"));
+            String deleteSql = "DELETE idle FROM shopping_cart idle"
+                    + " LEFT JOIN shopping_cart recent ON recent.user_id = idle.user_id AND recent.last_modified >= ?"
+                    + " WHERE idle.user_id IN (" + inList + ") AND idle.last_modified < ? AND recent.user_id IS NULL";
+            try (PreparedStatement delete = connection.prepareStatement(deleteSql)) {
+                delete.setTimestamp(1, cutoff);
+                int index = 2;
+                for (Integer userId : userIds) {
+                    delete.setInt(index++, userId);
+                }
+                delete.setTimestamp(index, cutoff);
+                int rowsDeleted = delete.executeUpdate();
+                return new ExpiredCarts(new ArrayList<>(userIds), rowsDeleted, scannedUpTo, more);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // binds the ids from parameter 1 on and returns the next free parameter index
+    private static int bindAll(PreparedStatement statement, Collection<Integer> ids) throws SQLException {
+        int index = 1;
+        for (Integer id : ids) {
+            statement.setInt(index++, id);
+        }
+        return index;
+    }
+
     // FIX: local mapper so this class does not depend on ProductDao
-    private static Product mapProduct(ResultSet rs) throws SQLException {
+    private static Product mapProduct(ResultSet rs, boolean withDescription) throws SQLException {
         int productId = rs.getInt("product_id");
         String name = rs.getString("name");
         BigDecimal price = rs.getBigDecimal("price");
         int categoryId = rs.getInt("category_id");
-        String description = rs.getString("description");
+        String description = withDescription ? rs.getString("description") : null;
         String subCategory = rs.getString("subcategory");
         int stock = rs.getInt("stock");
         boolean featured = rs.getBoolean("featured");
@@ -182,14 +415,37 @@ public class MySqlShoppingCartDao extends MySqlDaoBase implements ShoppingCartDa
     @Override
     public void removeProduct(int userId, int productId)
     {
-        String sql = "DELETE FROM shopping_cart WHERE user_id = ? AND product_id = ?";
+        deleteLine(userId, productId);
+    }
 
-        try (Connection connection = getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql))
+    // Deletes one line and, in the same transaction, marks the lines left as changed now, so a cart
+    // whose recent changes were only removals does not look idle to deleteIdleCarts
+    private void deleteLine(int userId, int productId)
+    {
+        String deleteSql = "DELETE FROM shopping_cart WHERE user_id = ? AND product_id = ?";
+        String touchSql = "UPDATE shopping_cart SET last_modified = NOW() WHERE user_id = ?";
+
+        try (Connection connection = getConnection())
         {
-            statement.setInt(1, userId);
-            statement.setInt(2, productId);
-            statement.executeUpdate();
+            connection.setAutoCommit(false);
+
+            try (PreparedStatement delete = connection.prepareStatement(deleteSql);
+                 PreparedStatement touch = connection.prepareStatement(touchSql))
+            {
+                delete.setInt(1, userId);
+                delete.setInt(2, productId);
+                if (delete.executeUpdate() > 0)
+                {
+                    touch.setInt(1, userId);
+                    touch.executeUpdate();
+                }
+                connection.commit();
+            }
+            catch (SQLException e)
+            {
+                connection.rollback();
+                throw e;
+            }
         }
         catch (SQLException e)
         {
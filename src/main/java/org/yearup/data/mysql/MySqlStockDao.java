@@ -0,0 +1,87 @@
+package org.yearup.data.mysql;
+
+import org.yearup.data.StockDao;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+
+public class MySqlStockDao extends MySqlDaoBase implements StockDao
+{
+    public MySqlStockDao(DataSource dataSource)
+    {
+        super(dataSource);
+    }
+
+    @Override
+    public boolean readStockLocked(int productId, IntConsumer whileLocked)
+    {
+        String sql = "SELECT stock FROM products WHERE product_id = ? FOR UPDATE";
+
+        try (Connection connection = getConnection())
+        {
+            connection.setAutoCommit(false);
+
+            try (PreparedStatement statement = connection.prepareStatement(sql))
+            {
+                statement.setInt(1, productId);
+                boolean found;
+                try (ResultSet row = statement.executeQuery())
+                {
+                    found = row.next();
+                    if (found)
+                        whileLocked.accept(row.getInt("stock"));
+                }
+                connection.commit();
+                return found;
+            }
+            catch (SQLException | RuntimeException e)
+            {
+                connection.rollback();
+                throw e;
+            }
+        }
+        catch (SQLException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void takeStock(Map<Integer, Integer> quantities)
+    {
+        String sql = "UPDATE products SET stock = stock - ? WHERE product_id = ?";
+
+        try (Connection connection = getConnection())
+        {
+            connection.setAutoCommit(false);
+
+            try (PreparedStatement statement = connection.prepareStatement(sql))
+            {
+                // product id order, like checkout, so the two never deadlock
+                for (Map.Entry<Integer, Integer> line : new TreeMap<>(quantities).entrySet())
+                {
+                    statement.setInt(1, line.getValue());
+                    statement.setInt(2, line.getKey());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                connection.commit();
+            }
+            catch (SQLException e)
+            {
+                connection.rollback();
+                throw e;
+            }
+        }
+        catch (SQLException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package org.yearup.models;
+
+public class CacheStats
+{
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+    private long invalidations;
+    private int size;
+    private int maxSize;
+
+    public CacheStats()
+    {
+    }
+
+    public CacheStats(long hits, long misses, long evictions, long expirations, long invalidations, int size, int maxSize)
+    {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.expirations = expirations;
+        this.invalidations = invalidations;
+        this.size = size;
+        this.maxSize = maxSize;
+    }
+
+    public long getHits()
+    {
+        return hits;
+    }
+
+    public void setHits(long hits)
+    {
+        this.hits = hits;
+    }
+
+    public long getMisses()
+    {
+        return misses;
+    }
+
+    public void setMisses(long misses)
+    {
+        this.misses = misses;
+    }
+
+    public long getEvictions()
+    {
+        return evictions;
+    }
+
+    public void setEvictions(long evictions)
+    {
+        this.evictions = evictions;
+    }
+
+    public long getExpirations()
+    {
+        return expirations;
+    }
+
+    public void setExpirations(long expirations)
+    {
+        this.expirations = expirations;
+    }
+
+    public long getInvalidations()
+    {
+        return invalidations;
+    }
+
+    public void setInvalidations(long invalidations)
+    {
+        this.invalidations = invalidations;
+    }
+
+    public int getSize()
+    {
+        return size;
+    }
+
+    public void setSize(int size)
+    {
+        this.size = size;
+    }
+
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize)
+    {
+        this.maxSize = maxSize;
+    }
+
+    public double getHitRate()
+    {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+}
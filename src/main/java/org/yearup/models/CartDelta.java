@@ -0,0 +1,115 @@
+package org.yearup.models;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.yearup.pricing.PricingEngine;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+// Response of a cart change in delta mode (?delta=true): only the lines that changed.
+// A client holding previousVersion applies it and is at version; on any other version it refetches GET /cart.
+public class CartDelta
+{
+    private long version;
+    private long previousVersion;
+    // new or changed lines, including other lines whose discount changed with the cart total
+    private List<ShoppingCartItem> items = new ArrayList<>();
+    // product ids of the lines that are gone
+    private List<Integer> removed = new ArrayList<>();
+    private long totalCents;
+    private int lineCount;
+
+    public CartDelta()
+    {
+    }
+
+    public static CartDelta between(ShoppingCart before, ShoppingCart after)
+    {
+        CartDelta delta = new CartDelta();
+        delta.previousVersion = before.getVersion();
+        delta.version = after.getVersion();
+        delta.totalCents = after.getTotalCents();
+        delta.lineCount = after.getItems().size();
+
+        for (ShoppingCartItem item : after.getItems().values())
+        {
+            ShoppingCartItem old = before.get(item.getProductId());
+            if (old == null
+                    || old.getQuantity() != item.getQuantity()
+                    || old.getLineTotalCents() != item.getLineTotalCents()
+                    || old.getDiscountPercent().compareTo(item.getDiscountPercent()) != 0)
+                delta.items.add(item);
+        }
+        for (Integer productId : before.getItems().keySet())
+            if (!after.contains(productId))
+                delta.removed.add(productId);
+        return delta;
+    }
+
+    public long getVersion()
+    {
+        return version;
+    }
+
+    public void setVersion(long version)
+    {
+        this.version = version;
+    }
+
+    public long getPreviousVersion()
+    {
+        return previousVersion;
+    }
+
+    public void setPreviousVersion(long previousVersion)
+    {
+        this.previousVersion = previousVersion;
+    }
+
+    public List<ShoppingCartItem> getItems()
+    {
+        return items;
+    }
+
+    public void setItems(List<ShoppingCartItem> items)
+    {
+        this.items = items;
+    }
+
+    public List<Integer> getRemoved()
+    {
+        return removed;
+    }
+
+    public void setRemoved(List<Integer> removed)
+    {
+        this.removed = removed;
+    }
+
+    public BigDecimal getTotal()
+    {
+        return PricingEngine.toAmount(totalCents);
+    }
+
+    public void setTotal(BigDecimal total)
+    {
+        this.totalCents = PricingEngine.toCents(total);
+    }
+
+    @JsonIgnore
+    public long getTotalCents()
+    {
+        return totalCents;
+    }
+
+    public int getLineCount()
+    {
+        return lineCount;
+    }
+
+    public void setLineCount(int lineCount)
+    {
+        this.lineCount = lineCount;
+    }
+}
@@ -0,0 +1,112 @@
+package org.yearup.models;
+
+import java.time.LocalDateTime;
+
+public class CartExpiryStats
+{
+    private long passes;
+    private long batches;
+    private long cartsDeleted;
+    private long rowsDeleted;
+    private long failures;
+    private LocalDateTime lastPassAt;
+    private long lastPassRowsDeleted;
+    private long lastPassMillis;
+
+    public CartExpiryStats()
+    {
+    }
+
+    public CartExpiryStats(long passes, long batches, long cartsDeleted, long rowsDeleted, long failures,
+                           LocalDateTime lastPassAt, long lastPassRowsDeleted, long lastPassMillis)
+    {
+        this.passes = passes;
+        this.batches = batches;
+        this.cartsDeleted = cartsDeleted;
+        this.rowsDeleted = rowsDeleted;
+        this.failures = failures;
+        this.lastPassAt = lastPassAt;
+        this.lastPassRowsDeleted = lastPassRowsDeleted;
+        this.lastPassMillis = lastPassMillis;
+    }
+
+    public long getPasses()
+    {
+        return passes;
+    }
+
+    public void setPasses(long passes)
+    {
+        this.passes = passes;
+    }
+
+    public long getBatches()
+    {
+        return batches;
+    }
+
+    public void setBatches(long batches)
+    {
+        this.batches = batches;
+    }
+
+    public long getCartsDeleted()
+    {
+        return cartsDeleted;
+    }
+
+    public void setCartsDeleted(long cartsDeleted)
+    {
+        this.cartsDeleted = cartsDeleted;
+    }
+
+    public long getRowsDeleted()
+    {
+        return rowsDeleted;
+    }
+
+    public void setRowsDeleted(long rowsDeleted)
+    {
+        this.rowsDeleted = rowsDeleted;
+    }
+
+    public long getFailures()
+    {
+        return failures;
+    }
+
+    public void setFailures(long failures)
+    {
+        this.failures = failures;
+    }
+
+    public LocalDateTime getLastPassAt()
+    {
+        return lastPassAt;
+    }
+
+    public void setLastPassAt(LocalDateTime lastPassAt)
+    {
+        this.lastPassAt = lastPassAt;
+    }
+
+    public long getLastPassRowsDeleted()
+    {
+        return lastPassRowsDeleted;
+    }
+
+    public void setLastPassRowsDeleted(long lastPassRowsDeleted)
+    {
+        this.lastPassRowsDeleted = lastPassRowsDeleted;
+    }
+
+    public long getLastPassMillis()
+    {
+        return lastPassMillis;
+    }
+
+    public void setLastPassMillis(long lastPassMillis)
+    {
+        this.lastPassMillis = lastPassMillis;
+    }
+}
@@ -0,0 +1,111 @@
+package org.yearup.models;
+
+import java.util.Locale;
+import java.util.Map;
+
+// One entry of a PATCH /cart body, e.g. { "op": "set", "productId": 3, "quantity": 2 }
+//   add    - adds quantity (default 1) of the product, creating the line if needed
+//   set    - sets the quantity of a line already in the cart, 0 removes it (same as PUT)
+//   remove - removes the line
+//   max    - raises the line to quantity, creating it if needed; a line already holding more keeps it,
+//            so applying the same max operations twice changes nothing (used to merge guest carts)
+public class CartOperation
+{
+    private String op;
+    private int productId;
+    private Integer quantity;
+
+    public CartOperation()
+    {
+    }
+
+    public CartOperation(String op, int productId, Integer quantity)
+    {
+        this.op = op;
+        this.productId = productId;
+        this.quantity = quantity;
+    }
+
+    public String getOp()
+    {
+        return op;
+    }
+
+    public void setOp(String op)
+    {
+        this.op = op;
+    }
+
+    public int getProductId()
+    {
+        return productId;
+    }
+
+    public void setProductId(int productId)
+    {
+        this.productId = productId;
+    }
+
+    public Integer getQuantity()
+    {
+        return quantity;
+    }
+
+    public void setQuantity(Integer quantity)
+    {
+        this.quantity = quantity;
+    }
+
+    public void validate()
+    {
+        if (op == null)
+            throw new IllegalArgumentException("Every operation needs an op (add, set, remove or max).");
+
+        switch (op.toLowerCase(Locale.ROOT))
+        {
+            case "add":
+                if (quantity != null && quantity < 1)
+                    throw new IllegalArgumentException("Add quantity must be 1 or greater.");
+                break;
+            case "set":
+                if (quantity == null || quantity < 0)
+                    throw new IllegalArgumentException("Set quantity must be 0 or greater.");
+                break;
+            case "remove":
+                break;
+            case "max":
+                if (quantity == null || quantity < 1)
+                    throw new IllegalArgumentException("Max quantity must be 1 or greater.");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown cart operation: " + op);
+        }
+    }
+
+    // Applies this operation to productId -> quantity; lines that drop to 0 are removed
+    public void applyTo(Map<Integer, Integer> quantities)
+    {
+        switch (op.toLowerCase(Locale.ROOT))
+        {
+            case "add":
+                quantities.merge(productId, quantity == null ? 1 : quantity, Integer::sum);
+                break;
+            case "set":
+                if (!quantities.containsKey(productId))
+                    break;
+                if (quantity == 0)
+                    quantities.remove(productId);
+                else
+                    quantities.put(productId, quantity);
+                break;
+            case "remove":
+                quantities.remove(productId);
+                break;
+            case "max":
+                quantities.merge(productId, quantity, Math::max);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown cart operation: " + op);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package org.yearup.models;
+
+import java.util.List;
+
+// Outcome of one checkout in a group checkout: the order placed, or why there is none
+public class CheckoutResult {
+
+    private final Order order;
+    private final List<StockShortage> shortages;
+    private final String error;
+
+    private CheckoutResult(Order order, List<StockShortage> shortages, String error) {
+        this.order = order;
+        this.shortages = shortages;
+        this.error = error;
+    }
+
+    public static CheckoutResult placed(Order order) {
+        return new CheckoutResult(order, List.of(), null);
+    }
+
+    public static CheckoutResult emptyCart() {
+        return new CheckoutResult(null, List.of(), "Cart is empty.");
+    }
+
+    public static CheckoutResult shortOfStock(List<StockShortage> shortages) {
+        return new CheckoutResult(null, shortages, "Some products are not in stock.");
+    }
+
+    // nothing was written and the same checkout can simply be sent again
+    public static CheckoutResult failed(String error) {
+        return new CheckoutResult(null, List.of(), error);
+    }
+
+    public boolean isPlaced() {
+        return order != null;
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+
+    public List<StockShortage> getShortages() {
+        return shortages;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,76 @@
+package org.yearup.models;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.List;
+
+// What GET /orders/{checkoutId}/status reports for an asynchronous checkout: queued, processing,
+// completed (with the order) or failed (with the reason, and the short lines if that was stock)
+public class CheckoutStatus {
+
+    public static final String QUEUED = "queued";
+    public static final String PROCESSING = "processing";
+    public static final String COMPLETED = "completed";
+    public static final String FAILED = "failed";
+
+    private final long checkoutId;
+    private final int userId;
+    private final String status;
+    private final Order order;
+    private final String error;
+    private final List<StockShortage> shortages;
+
+    private CheckoutStatus(long checkoutId, int userId, String status, Order order, String error, List<StockShortage> shortages) {
+        this.checkoutId = checkoutId;
+        this.userId = userId;
+        this.status = status;
+        this.order = order;
+        this.error = error;
+        this.shortages = shortages;
+    }
+
+    public static CheckoutStatus queued(long checkoutId, int userId) {
+        return new CheckoutStatus(checkoutId, userId, QUEUED, null, null, List.of());
+    }
+
+    public CheckoutStatus processing() {
+        return new CheckoutStatus(checkoutId, userId, PROCESSING, null, null, List.of());
+    }
+
+    public CheckoutStatus finished(CheckoutResult result) {
+        return result.isPlaced()
+                ? new CheckoutStatus(checkoutId, userId, COMPLETED, result.getOrder(), null, List.of())
+                : new CheckoutStatus(checkoutId, userId, FAILED, null, result.getError(), result.getShortages());
+    }
+
+    public long getCheckoutId() {
+        return checkoutId;
+    }
+
+    // who placed it; only that user may read the status
+    @JsonIgnore
+    public int getUserId() {
+        return userId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    // the order id once completed, so clients can go on with GET /orders/{orderId}
+    public Integer getOrderId() {
+        return order == null ? null : order.getOrderId();
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public List<StockShortage> getShortages() {
+        return shortages;
+    }
+}
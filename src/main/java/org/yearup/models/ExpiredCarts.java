@@ -0,0 +1,66 @@
+package org.yearup.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Result of one expiry batch: whose carts were deleted, how many shopping_cart rows that freed,
+// and how far the batch got (the next batch continues after scannedUpTo; more is false at the end)
+public class ExpiredCarts
+{
+    private List<Integer> userIds = new ArrayList<>();
+    private int rowsDeleted;
+    private int scannedUpTo;
+    private boolean more;
+
+    public ExpiredCarts()
+    {
+    }
+
+    public ExpiredCarts(List<Integer> userIds, int rowsDeleted, int scannedUpTo, boolean more)
+    {
+        this.userIds = userIds;
+        this.rowsDeleted = rowsDeleted;
+        this.scannedUpTo = scannedUpTo;
+        this.more = more;
+    }
+
+    public List<Integer> getUserIds()
+    {
+        return userIds;
+    }
+
+    public void setUserIds(List<Integer> userIds)
+    {
+        this.userIds = userIds;
+    }
+
+    public int getRowsDeleted()
+    {
+        return rowsDeleted;
+    }
+
+    public void setRowsDeleted(int rowsDeleted)
+    {
+        this.rowsDeleted = rowsDeleted;
+    }
+
+    public int getScannedUpTo()
+    {
+        return scannedUpTo;
+    }
+
+    public void setScannedUpTo(int scannedUpTo)
+    {
+        this.scannedUpTo = scannedUpTo;
+    }
+
+    public boolean isMore()
+    {
+        return more;
+    }
+
+    public void setMore(boolean more)
+    {
+        this.more = more;
+    }
+}
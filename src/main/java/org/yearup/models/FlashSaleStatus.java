@@ -0,0 +1,76 @@
+package org.yearup.models;
+
+// State of one flash-sale product: stock left in memory, units sold during the sale,
+// how many of those are not written to products.stock yet, and whether the sale is ending (it is
+// removed once the checkouts still in flight finished and everything sold is written back)
+public class FlashSaleStatus
+{
+    private int productId;
+    private int available;
+    private long sold;
+    private int unreconciled;
+    private boolean ending;
+
+    public FlashSaleStatus()
+    {
+    }
+
+    public FlashSaleStatus(int productId, int available, long sold, int unreconciled, boolean ending)
+    {
+        this.productId = productId;
+        this.available = available;
+        this.sold = sold;
+        this.unreconciled = unreconciled;
+        this.ending = ending;
+    }
+
+    public int getProductId()
+    {
+        return productId;
+    }
+
+    public void setProductId(int productId)
+    {
+        this.productId = productId;
+    }
+
+    public int getAvailable()
+    {
+        return available;
+    }
+
+    public void setAvailable(int available)
+    {
+        this.available = available;
+    }
+
+    public long getSold()
+    {
+        return sold;
+    }
+
+    public void setSold(long sold)
+    {
+        this.sold = sold;
+    }
+
+    public int getUnreconciled()
+    {
+        return unreconciled;
+    }
+
+    public void setUnreconciled(int unreconciled)
+    {
+        this.unreconciled = unreconciled;
+    }
+
+    public boolean isEnding()
+    {
+        return ending;
+    }
+
+    public void setEnding(boolean ending)
+    {
+        this.ending = ending;
+    }
+}
@@ -10,6 +10,7 @@ public class OrderLineItem {
     private BigDecimal salesPrice;
     private int quantity;
     private BigDecimal discount;
+    private Product product; // filled in for order details, null otherwise
 
     public OrderLineItem() {
     }
@@ -61,5 +62,13 @@ public class OrderLineItem {
     public void setDiscount(BigDecimal discount) {
         this.discount = discount;
     }
+
+    public Product getProduct() {
+        return product;
+    }
+
+    public void setProduct(Product product) {
+        this.product = product;
+    }
 }
 
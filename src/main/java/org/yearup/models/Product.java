@@ -1,5 +1,8 @@
 package org.yearup.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.yearup.pricing.PricingEngine;
+
 import java.math.BigDecimal;
 
 public class Product
@@ -13,6 +16,8 @@ public class Product
     private int stock;
     private boolean isFeatured;
     private String imageUrl;
+    // price in whole cents, worked out once so pricing a cart does not convert it again
+    private long priceCents;
 
     public Product()
     {
@@ -22,7 +27,7 @@ public class Product
     {
         this.productId = productId;
         this.name = name;
-        this.price = price;
+        setPrice(price);
         this.categoryId = categoryId;
         this.description = description;
         this.subCategory = subCategory;
@@ -59,6 +64,13 @@ public class Product
     public void setPrice(BigDecimal price)
     {
         this.price = price;
+        this.priceCents = price == null ? 0 : PricingEngine.toCents(price);
+    }
+
+    @JsonIgnore
+    public long getPriceCents()
+    {
+        return priceCents;
     }
 
     public int getCategoryId()
@@ -0,0 +1,103 @@
+package org.yearup.models;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ProductFacets
+{
+    private int total;                                              // products matching every filter
+    private Map<Integer, Integer> categories = new LinkedHashMap<>(); // categoryId -> count
+    private Map<String, Integer> subCategories = new LinkedHashMap<>();
+    private List<PriceBucket> prices = new ArrayList<>();
+
+    public int getTotal()
+    {
+        return total;
+    }
+
+    public void setTotal(int total)
+    {
+        this.total = total;
+    }
+
+    public Map<Integer, Integer> getCategories()
+    {
+        return categories;
+    }
+
+    public void setCategories(Map<Integer, Integer> categories)
+    {
+        this.categories = categories;
+    }
+
+    public Map<String, Integer> getSubCategories()
+    {
+        return subCategories;
+    }
+
+    public void setSubCategories(Map<String, Integer> subCategories)
+    {
+        this.subCategories = subCategories;
+    }
+
+    public List<PriceBucket> getPrices()
+    {
+        return prices;
+    }
+
+    public void setPrices(List<PriceBucket> prices)
+    {
+        this.prices = prices;
+    }
+
+    public static class PriceBucket
+    {
+        private BigDecimal min;   // inclusive
+        private BigDecimal max;   // exclusive, null for the open top bucket
+        private int count;
+
+        public PriceBucket()
+        {
+        }
+
+        public PriceBucket(BigDecimal min, BigDecimal max, int count)
+        {
+            this.min = min;
+            this.max = max;
+            this.count = count;
+        }
+
+        public BigDecimal getMin()
+        {
+            return min;
+        }
+
+        public void setMin(BigDecimal min)
+        {
+            this.min = min;
+        }
+
+        public BigDecimal getMax()
+        {
+            return max;
+        }
+
+        public void setMax(BigDecimal max)
+        {
+            this.max = max;
+        }
+
+        public int getCount()
+        {
+            return count;
+        }
+
+        public void setCount(int count)
+        {
+            this.count = count;
+        }
+    }
+}
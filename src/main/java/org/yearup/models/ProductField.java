@@ -0,0 +1,102 @@
+package org.yearup.models;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+// Product properties a client can ask for with ?fields=, by their JSON names
+public enum ProductField
+{
+    PRODUCT_ID("productId", Product::getProductId),
+    NAME("name", Product::getName),
+    PRICE("price", Product::getPrice),
+    CATEGORY_ID("categoryId", Product::getCategoryId),
+    DESCRIPTION("description", Product::getDescription),
+    SUB_CATEGORY("subCategory", Product::getSubCategory),
+    STOCK("stock", Product::getStock),
+    FEATURED("featured", Product::isFeatured),
+    IMAGE_URL("imageUrl", Product::getImageUrl);
+
+    private final String jsonName;
+    private final Function<Product, Object> getter;
+
+    ProductField(String jsonName, Function<Product, Object> getter)
+    {
+        this.jsonName = jsonName;
+        this.getter = getter;
+    }
+
+    public String getJsonName()
+    {
+        return jsonName;
+    }
+
+    public Object valueOf(Product product)
+    {
+        return getter.apply(product);
+    }
+
+    // "productId,name,price" -> the matching fields; null or blank means every field (returns null)
+    public static Set<ProductField> parse(String fields)
+    {
+        if (fields == null || fields.isBlank())
+            return null;
+
+        Set<ProductField> parsed = EnumSet.noneOf(ProductField.class);
+        for (String name : fields.split(","))
+        {
+            parsed.add(byJsonName(name.trim()));
+        }
+        return Collections.unmodifiableSet(parsed);
+    }
+
+    // Only the requested properties, in declaration order
+    public static Map<String, Object> project(Product product, Set<ProductField> fields)
+    {
+        Map<String, Object> projected = new LinkedHashMap<>();
+        for (ProductField field : fields)
+        {
+            projected.put(field.jsonName, field.valueOf(product));
+        }
+        return projected;
+    }
+
+    // A new Product with only the requested properties set, the same as a projected database read;
+    // null means every property
+    public static Product copy(Product product, Set<ProductField> fields)
+    {
+        if (fields == null)
+            fields = EnumSet.allOf(ProductField.class);
+
+        Product copy = new Product();
+        for (ProductField field : fields)
+        {
+            switch (field)
+            {
+                case PRODUCT_ID -> copy.setProductId(product.getProductId());
+                case NAME -> copy.setName(product.getName());
+                case PRICE -> copy.setPrice(product.getPrice());
+                case CATEGORY_ID -> copy.setCategoryId(product.getCategoryId());
+                case DESCRIPTION -> copy.setDescription(product.getDescription());
+                case SUB_CATEGORY -> copy.setSubCategory(product.getSubCategory());
+                case STOCK -> copy.setStock(product.getStock());
+                case FEATURED -> copy.setFeatured(product.isFeatured());
+                case IMAGE_URL -> copy.setImageUrl(product.getImageUrl());
+            }
+        }
+        return copy;
+    }
+
+    private static ProductField byJsonName(String name)
+    {
+        for (ProductField field : values())
+        {
+            if (field.jsonName.equalsIgnoreCase(name))
+                return field;
+        }
+        throw new IllegalArgumentException("Unknown product field: " + name);
+    }
+}
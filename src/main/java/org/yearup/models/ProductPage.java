@@ -0,0 +1,40 @@
+package org.yearup.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ProductPage
+{
+    private List<Product> items = new ArrayList<>();
+    private String next; // opaque cursor for the following page, null on the last page
+
+    public ProductPage()
+    {
+    }
+
+    public ProductPage(List<Product> items, String next)
+    {
+        this.items = items;
+        this.next = next;
+    }
+
+    public List<Product> getItems()
+    {
+        return items;
+    }
+
+    public void setItems(List<Product> items)
+    {
+        this.items = items;
+    }
+
+    public String getNext()
+    {
+        return next;
+    }
+
+    public void setNext(String next)
+    {
+        this.next = next;
+    }
+}
@@ -0,0 +1,125 @@
+package org.yearup.models;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// A discount rule from the promotions table; null scope/threshold/window fields mean "no restriction"
+public class Promotion
+{
+    private int promotionId;
+    private String name;
+    private Integer productId;
+    private Integer categoryId;
+    private String subCategory;
+    private BigDecimal minCartTotal;
+    private BigDecimal discountPercent;
+    private LocalDateTime startsAt;
+    private LocalDateTime endsAt;
+
+    public Promotion()
+    {
+    }
+
+    public Promotion(int promotionId, String name, Integer productId, Integer categoryId, String subCategory, BigDecimal minCartTotal, BigDecimal discountPercent, LocalDateTime startsAt, LocalDateTime endsAt)
+    {
+        this.promotionId = promotionId;
+        this.name = name;
+        this.productId = productId;
+        this.categoryId = categoryId;
+        this.subCategory = subCategory;
+        this.minCartTotal = minCartTotal;
+        this.discountPercent = discountPercent;
+        this.startsAt = startsAt;
+        this.endsAt = endsAt;
+    }
+
+    public int getPromotionId()
+    {
+        return promotionId;
+    }
+
+    public void setPromotionId(int promotionId)
+    {
+        this.promotionId = promotionId;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public void setName(String name)
+    {
+        this.name = name;
+    }
+
+    public Integer getProductId()
+    {
+        return productId;
+    }
+
+    public void setProductId(Integer productId)
+    {
+        this.productId = productId;
+    }
+
+    public Integer getCategoryId()
+    {
+        return categoryId;
+    }
+
+    public void setCategoryId(Integer categoryId)
+    {
+        this.categoryId = categoryId;
+    }
+
+    public String getSubCategory()
+    {
+        return subCategory;
+    }
+
+    public void setSubCategory(String subCategory)
+    {
+        this.subCategory = subCategory;
+    }
+
+    public BigDecimal getMinCartTotal()
+    {
+        return minCartTotal;
+    }
+
+    public void setMinCartTotal(BigDecimal minCartTotal)
+    {
+        this.minCartTotal = minCartTotal;
+    }
+
+    public BigDecimal getDiscountPercent()
+    {
+        return discountPercent;
+    }
+
+    public void setDiscountPercent(BigDecimal discountPercent)
+    {
+        this.discountPercent = discountPercent;
+    }
+
+    public LocalDateTime getStartsAt()
+    {
+        return startsAt;
+    }
+
+    public void setStartsAt(LocalDateTime startsAt)
+    {
+        this.startsAt = startsAt;
+    }
+
+    public LocalDateTime getEndsAt()
+    {
+        return endsAt;
+    }
+
+    public void setEndsAt(LocalDateTime endsAt)
+    {
+        this.endsAt = endsAt;
+    }
+}
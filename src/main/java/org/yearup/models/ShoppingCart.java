@@ -1,5 +1,8 @@
 package org.yearup.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.yearup.pricing.PricingEngine;
+
 import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.Map;
@@ -7,7 +10,11 @@ import java.util.Map;
 public class ShoppingCart
 {
     private Map<Integer, ShoppingCartItem> items = new HashMap<>();
-    private BigDecimal total = BigDecimal.ZERO; // FIX: store total
+    // FIX: store total (in cents, see PricingEngine; converted to BigDecimal only for JSON)
+    private long totalCents;
+    private boolean totalSet;
+    // changes with every change to the cart (see CartVersions); 0 when unknown
+    private long version;
 
     public Map<Integer, ShoppingCartItem> getItems()
     {
@@ -36,19 +43,41 @@ public class ShoppingCart
 
     public BigDecimal getTotal()
     {
-        // FIX: return stored total if set, otherwise compute dynamically
-        if (total != null)
-            return total;
-
-        return items.values()
-                .stream()
-                .map(ShoppingCartItem::getLineTotal)
-                .reduce( BigDecimal.ZERO, (lineTotal, subTotal) -> subTotal.add(lineTotal));
+        return PricingEngine.toAmount(getTotalCents());
     }
 
     public void setTotal(BigDecimal total)
     {
         // FIX: actually store the total
-        this.total = total;
+        setTotalCents(PricingEngine.toCents(total));
+    }
+
+    @JsonIgnore
+    public long getTotalCents()
+    {
+        // FIX: return stored total if set, otherwise compute dynamically
+        if (totalSet)
+            return totalCents;
+
+        long total = 0;
+        for (ShoppingCartItem item : items.values())
+            total = Math.addExact(total, item.getLineTotalCents());
+        return total;
+    }
+
+    public void setTotalCents(long totalCents)
+    {
+        this.totalCents = totalCents;
+        this.totalSet = true;
+    }
+
+    public long getVersion()
+    {
+        return version;
+    }
+
+    public void setVersion(long version)
+    {
+        this.version = version;
     }
 }
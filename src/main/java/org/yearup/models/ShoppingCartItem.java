@@ -1,6 +1,7 @@
 package org.yearup.models;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.yearup.pricing.PricingEngine;
 
 import java.math.BigDecimal;
 
@@ -9,7 +10,9 @@ public class ShoppingCartItem
     private Product product = null;
     private int quantity = 1;
     private BigDecimal discountPercent = BigDecimal.ZERO;
-    private BigDecimal lineTotal = null; // FIX: store lineTotal when set
+    // FIX: store lineTotal when set (in cents, see PricingEngine)
+    private long lineTotalCents;
+    private boolean lineTotalSet;
 
     public ShoppingCartItem()
     {
@@ -51,19 +54,39 @@ public class ShoppingCartItem
         return this.product.getProductId();
     }
 
-    public BigDecimal getLineTotal(){
+    public BigDecimal getLineTotal()
+    {
+        return PricingEngine.toAmount(getLineTotalCents());
+    }
+
+    public void setLineTotal(BigDecimal lineTotal)
+    {
+        setLineTotalCents(PricingEngine.toCents(lineTotal));
+    }
+
+    @JsonIgnore
+    public long getLineTotalCents()
+    {
         // FIX: if lineTotal was explicitly set (from DAO), return it
-        if (lineTotal != null)
-            return lineTotal;
-        BigDecimal basePrice = product.getPrice();  // otherwise compute it
-        BigDecimal qty = new BigDecimal(this.quantity);
-        BigDecimal subTotal = basePrice.multiply(qty);
-        BigDecimal discountAmount = subTotal.multiply(discountPercent);
-        return subTotal.subtract(discountAmount);
+        if (lineTotalSet)
+            return lineTotalCents;
 
+        // otherwise compute it
+        return PricingEngine.lineTotal(product.getPriceCents(), quantity,
+                PricingEngine.toBasisPoints(discountPercent));
+    }
 
-    }  public void setLineTotal(BigDecimal lineTotal)
-{this.lineTotal = lineTotal;
-}
+    // amount taken off this line by its discount
+    @JsonIgnore
+    public long getDiscountCents()
+    {
+        return Math.multiplyExact(product.getPriceCents(), quantity) - getLineTotalCents();
+    }
+
+    public void setLineTotalCents(long lineTotalCents)
+    {
+        this.lineTotalCents = lineTotalCents;
+        this.lineTotalSet = true;
+    }
 }
 
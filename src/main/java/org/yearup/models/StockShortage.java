@@ -0,0 +1,57 @@
+package org.yearup.models;
+
+// One cart line checkout could not reserve: how many were ordered and how many are left
+public class StockShortage {
+
+    private int productId;
+    private String name;
+    private int requested;
+    private int available;
+
+    public StockShortage() {
+    }
+
+    public StockShortage(int productId, String name, int requested, int available) {
+        this.productId = productId;
+        this.name = name;
+        this.requested = requested;
+        this.available = available;
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+
+    public void setProductId(int productId) {
+        this.productId = productId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public int getRequested() {
+        return requested;
+    }
+
+    public void setRequested(int requested) {
+        this.requested = requested;
+    }
+
+    public int getAvailable() {
+        return available;
+    }
+
+    public void setAvailable(int available) {
+        this.available = available;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (requested " + requested + ", available " + available + ")";
+    }
+}
@@ -9,6 +9,8 @@ public class LoginDto {
 
    private String username;
    private String password;
+   // optional X-Guest-Cart token; its products are added to the user's cart on login
+   private String guestCart;
 
    public String getUsername() {
       return username;
@@ -26,6 +28,14 @@ public class LoginDto {
       this.password = password;
    }
 
+   public String getGuestCart() {
+      return guestCart;
+   }
+
+   public void setGuestCart(String guestCart) {
+      this.guestCart = guestCart;
+   }
+
    @Override
    public String toString() {
       return "LoginDTO{" +
@@ -0,0 +1,76 @@
+package org.yearup.pricing;
+
+import org.yearup.models.ShoppingCart;
+import org.yearup.models.ShoppingCartItem;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Cart arithmetic on whole cents held in a long, so pricing a cart allocates nothing per line.
+ * Amounts only become BigDecimal at the JSON boundary (see {@link #toAmount(long)}).
+ *
+ * Rounding: a price with more than two decimals is rounded half-up to cents once, when it is
+ * converted; a line discount is rounded half-up to whole cents before it is subtracted.
+ * Every multiply and add is overflow checked and throws ArithmeticException instead of wrapping.
+ */
+public final class PricingEngine
+{
+    // discounts are carried in basis points: 10000 = 100%
+    public static final long BASIS_POINTS = 10_000;
+
+    private PricingEngine()
+    {
+    }
+
+    public static long toCents(BigDecimal amount)
+    {
+        return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal toAmount(long cents)
+    {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    // discountPercent is a fraction of the line (0.10 = 10% off), as in ShoppingCartItem
+    public static long toBasisPoints(BigDecimal discountPercent)
+    {
+        if (discountPercent == null || discountPercent.signum() == 0)
+            return 0;
+        return discountPercent.movePointRight(4).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    public static long lineTotal(long priceCents, int quantity, long discountBasisPoints)
+    {
+        long subTotal = Math.multiplyExact(priceCents, quantity);
+        if (discountBasisPoints == 0)
+            return subTotal;
+        return subTotal - discount(subTotal, discountBasisPoints);
+    }
+
+    // subTotal * basisPoints / 10000, rounded half-up to whole cents
+    static long discount(long subTotal, long discountBasisPoints)
+    {
+        long scaled = Math.multiplyExact(subTotal, discountBasisPoints);
+        long cents = scaled / BASIS_POINTS;
+        long remainder = Math.abs(scaled % BASIS_POINTS);
+        if (remainder * 2 >= BASIS_POINTS)
+            cents += Long.signum(scaled);
+        return cents;
+    }
+
+    // Fills in every line total and the cart total
+    public static void price(ShoppingCart cart)
+    {
+        long total = 0;
+        for (ShoppingCartItem item : cart.getItems().values())
+        {
+            long lineTotal = lineTotal(item.getProduct().getPriceCents(), item.getQuantity(),
+                    toBasisPoints(item.getDiscountPercent()));
+            item.setLineTotalCents(lineTotal);
+            total = Math.addExact(total, lineTotal);
+        }
+        cart.setTotalCents(total);
+    }
+}
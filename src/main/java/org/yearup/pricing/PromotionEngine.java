@@ -0,0 +1,151 @@
+package org.yearup.pricing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yearup.data.PromotionDao;
+import org.yearup.models.ShoppingCart;
+import org.yearup.models.ShoppingCartItem;
+
+import java.math.BigDecimal;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sets each cart line's discountPercent from the best matching promotion and prices the cart.
+ * Promotions are read from the database and compiled into a {@link PromotionIndex} at most once
+ * per refresh interval; carts are priced against whatever index is current.
+ * Only the very first load runs on a request thread. After that an index that is due is still
+ * used while one background refresh replaces it, and a failed refresh keeps the last good index
+ * and is retried after a backoff (1s, 2s, 4s, ... up to the refresh interval) instead of on
+ * every request.
+ */
+public class PromotionEngine implements AutoCloseable
+{
+    private static final long FIRST_RETRY_MILLIS = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(PromotionEngine.class);
+
+    private final PromotionDao promotionDao;
+    private final long refreshMillis;
+    private final Executor refresher;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private volatile PromotionIndex index;
+    // when the next load is due: one interval after a success, the backoff after a failure
+    private volatile long dueAt;
+    // failed loads in a row; guarded by this
+    private int failures;
+
+    public PromotionEngine(PromotionDao promotionDao, long refreshSeconds)
+    {
+        this(promotionDao, refreshSeconds, Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "promotion-refresh");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    PromotionEngine(PromotionDao promotionDao, long refreshSeconds, Executor refresher)
+    {
+        this.promotionDao = promotionDao;
+        this.refreshMillis = TimeUnit.SECONDS.toMillis(refreshSeconds);
+        this.refresher = refresher;
+    }
+
+    public void apply(ShoppingCart cart)
+    {
+        // thresholds are checked against the subtotal before any discount
+        long subTotal = 0;
+        for (ShoppingCartItem item : cart.getItems().values())
+            subTotal = Math.addExact(subTotal, Math.multiplyExact(item.getProduct().getPriceCents(), item.getQuantity()));
+
+        PromotionIndex current = index();
+        long now = System.currentTimeMillis();
+        for (ShoppingCartItem item : cart.getItems().values())
+        {
+            PromotionIndex.Rule rule = current.best(item.getProduct(), subTotal, now);
+            item.setDiscountPercent(rule == null ? BigDecimal.ZERO : rule.getDiscountPercent());
+        }
+
+        PricingEngine.price(cart);
+    }
+
+    // Rebuilds the index now, e.g. right after promotions were changed; on failure the current index stays
+    public synchronized void refresh()
+    {
+        try
+        {
+            index = PromotionIndex.compile(promotionDao.getCurrent());
+            failures = 0;
+            dueAt = System.currentTimeMillis() + refreshMillis;
+        }
+        catch (RuntimeException e)
+        {
+            failures++;
+            long backoff = Math.min(FIRST_RETRY_MILLIS << Math.min(failures - 1, 20), Math.max(refreshMillis, FIRST_RETRY_MILLIS));
+            dueAt = System.currentTimeMillis() + backoff;
+            throw e;
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        if (refresher instanceof ExecutorService service)
+            service.shutdownNow();
+    }
+
+    private PromotionIndex index()
+    {
+        PromotionIndex current = index;
+        if (current == null)
+            return firstIndex();
+
+        if (System.currentTimeMillis() >= dueAt && refreshing.compareAndSet(false, true))
+        {
+            try
+            {
+                refresher.execute(this::refreshInBackground);
+            }
+            catch (RejectedExecutionException e)
+            {
+                // shutting down
+                refreshing.set(false);
+            }
+        }
+        return current;
+    }
+
+    // Nothing to price with yet, so this one load is waited for; while it keeps failing,
+    // requests fail fast until the backoff is over
+    private synchronized PromotionIndex firstIndex()
+    {
+        if (index == null)
+        {
+            if (failures > 0 && System.currentTimeMillis() < dueAt)
+                throw new IllegalStateException("Promotions could not be loaded, retrying shortly.");
+            refresh();
+        }
+        return index;
+    }
+
+    private void refreshInBackground()
+    {
+        try
+        {
+            refresh();
+        }
+        catch (RuntimeException e)
+        {
+            logger.warn("Refreshing promotions failed, keeping the last ones loaded: " + e.getMessage());
+        }
+        finally
+        {
+            refreshing.set(false);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.yearup.pricing;
+
+import org.yearup.models.Product;
+import org.yearup.models.Promotion;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Promotions compiled into lookup tables, so pricing a line only looks at the rules that can
+ * match it: the rules for its product id, its category id, its subcategory and the cart-wide
+ * rules. Each rule is filed under the most specific scope it sets and still has to match the
+ * others. Every list is sorted by discount, biggest first, so the first rule that applies is
+ * the best one in that list. Discounts do not stack; a line gets the single best rule.
+ * Immutable; PromotionEngine swaps in a new index when promotions are reloaded.
+ */
+public final class PromotionIndex
+{
+    private static final Rule[] NONE = new Rule[0];
+
+    private final Map<Integer, Rule[]> byProduct;
+    private final Map<Integer, Rule[]> byCategory;
+    private final Map<String, Rule[]> bySubCategory;
+    private final Rule[] cartWide;
+    private final int size;
+
+    private PromotionIndex(Map<Integer, Rule[]> byProduct, Map<Integer, Rule[]> byCategory,
+                           Map<String, Rule[]> bySubCategory, Rule[] cartWide, int size)
+    {
+        this.byProduct = byProduct;
+        this.byCategory = byCategory;
+        this.bySubCategory = bySubCategory;
+        this.cartWide = cartWide;
+        this.size = size;
+    }
+
+    public static PromotionIndex compile(List<Promotion> promotions)
+    {
+        Map<Integer, List<Rule>> byProduct = new HashMap<>();
+        Map<Integer, List<Rule>> byCategory = new HashMap<>();
+        Map<String, List<Rule>> bySubCategory = new HashMap<>();
+        List<Rule> cartWide = new ArrayList<>();
+
+        for (Promotion promotion : promotions)
+        {
+            Rule rule = new Rule(promotion);
+            if (rule.productId != null)
+                byProduct.computeIfAbsent(rule.productId, id -> new ArrayList<>()).add(rule);
+            else if (rule.categoryId != null)
+                byCategory.computeIfAbsent(rule.categoryId, id -> new ArrayList<>()).add(rule);
+            else if (rule.subCategory != null)
+                bySubCategory.computeIfAbsent(rule.subCategory.toLowerCase(), key -> new ArrayList<>()).add(rule);
+            else
+                cartWide.add(rule);
+        }
+
+        return new PromotionIndex(freeze(byProduct), freeze(byCategory), freeze(bySubCategory),
+                sorted(cartWide), promotions.size());
+    }
+
+    public static PromotionIndex empty()
+    {
+        return compile(List.of());
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    // The best rule for this line at this moment, or null when none applies
+    public Rule best(Product product, long cartSubtotalCents, long nowMillis)
+    {
+        Rule best = first(byProduct.getOrDefault(product.getProductId(), NONE), product, cartSubtotalCents, nowMillis, null);
+        best = first(byCategory.getOrDefault(product.getCategoryId(), NONE), product, cartSubtotalCents, nowMillis, best);
+        if (product.getSubCategory() != null)
+            best = first(bySubCategory.getOrDefault(product.getSubCategory().toLowerCase(), NONE), product, cartSubtotalCents, nowMillis, best);
+        return first(cartWide, product, cartSubtotalCents, nowMillis, best);
+    }
+
+    private static Rule first(Rule[] rules, Product product, long cartSubtotalCents, long nowMillis, Rule best)
+    {
+        for (Rule rule : rules)
+        {
+            // sorted biggest first: nothing further down can beat the current best
+            if (best != null && rule.basisPoints <= best.basisPoints)
+                return best;
+            if (rule.applies(product, cartSubtotalCents, nowMillis))
+                return rule;
+        }
+        return best;
+    }
+
+    private static <K> Map<K, Rule[]> freeze(Map<K, List<Rule>> rules)
+    {
+        Map<K, Rule[]> frozen = new HashMap<>();
+        rules.forEach((key, list) -> frozen.put(key, sorted(list)));
+        return frozen;
+    }
+
+    private static Rule[] sorted(List<Rule> rules)
+    {
+        Rule[] array = rules.toArray(NONE);
+        Arrays.sort(array, Comparator.comparingLong((Rule rule) -> rule.basisPoints).reversed());
+        return array;
+    }
+
+    public static final class Rule
+    {
+        private final int promotionId;
+        private final Integer productId;
+        private final Integer categoryId;
+        private final String subCategory;
+        private final long minCartCents;
+        private final long basisPoints;
+        private final BigDecimal discountPercent;
+        private final long startsAt;
+        private final long endsAt;
+
+        private Rule(Promotion promotion)
+        {
+            promotionId = promotion.getPromotionId();
+            productId = promotion.getProductId();
+            categoryId = promotion.getCategoryId();
+            subCategory = promotion.getSubCategory();
+            minCartCents = promotion.getMinCartTotal() == null ? 0 : PricingEngine.toCents(promotion.getMinCartTotal());
+            basisPoints = PricingEngine.toBasisPoints(promotion.getDiscountPercent());
+            discountPercent = promotion.getDiscountPercent();
+            startsAt = promotion.getStartsAt() == null ? Long.MIN_VALUE : epochMillis(promotion.getStartsAt());
+            endsAt = promotion.getEndsAt() == null ? Long.MAX_VALUE : epochMillis(promotion.getEndsAt());
+        }
+
+        public int getPromotionId()
+        {
+            return promotionId;
+        }
+
+        public BigDecimal getDiscountPercent()
+        {
+            return discountPercent;
+        }
+
+        boolean applies(Product product, long cartSubtotalCents, long nowMillis)
+        {
+            return nowMillis >= startsAt && nowMillis < endsAt
+                    && cartSubtotalCents >= minCartCents
+                    && (productId == null || productId == product.getProductId())
+                    && (categoryId == null || categoryId == product.getCategoryId())
+                    && (subCategory == null || subCategory.equalsIgnoreCase(product.getSubCategory()));
+        }
+
+        private static long epochMillis(LocalDateTime time)
+        {
+            // DATETIME columns hold server-local times
+            return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+    }
+}
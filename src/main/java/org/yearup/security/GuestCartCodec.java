@@ -0,0 +1,164 @@
+package org.yearup.security;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.yearup.security.jwt.TokenProvider;
+
+import javax.crypto.Mac;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Encodes a guest's cart (product id -> quantity) into a signed token the client keeps and sends
+ * back, so carts of shoppers who never log in are never written to the database.
+ * Layout before base64url: version byte, issued-at seconds, line count, then per line the product id
+ * (as the gap to the previous id) and the quantity, all as varints; followed by a truncated
+ * HMAC-SHA256 over everything before it. The key is derived from the JWT secret.
+ * A token older than maxAge decodes as an empty cart.
+ */
+@Component
+public class GuestCartCodec
+{
+    public static final String HEADER = "X-Guest-Cart";
+
+    public static final int MAX_LINES = 100;
+    public static final int MAX_QUANTITY = 999;
+
+    private static final byte VERSION = 1;
+    private static final int MAC_BYTES = 16;
+
+    private final Key key;
+    private final long maxAgeSeconds;
+
+    @Autowired
+    public GuestCartCodec(TokenProvider tokenProvider, @Value("${guest-cart.max-age-days:30}") long maxAgeDays)
+    {
+        this(tokenProvider.deriveKey("guest-cart"), Duration.ofDays(maxAgeDays));
+    }
+
+    public GuestCartCodec(Key key, Duration maxAge)
+    {
+        this.key = key;
+        this.maxAgeSeconds = maxAge.getSeconds();
+    }
+
+    public String encode(Map<Integer, Integer> quantities)
+    {
+        if (quantities.size() > MAX_LINES)
+            throw new IllegalArgumentException("A guest cart holds at most " + MAX_LINES + " products.");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8 + quantities.size() * 4 + MAC_BYTES);
+        out.write(VERSION);
+        writeVarint(out, System.currentTimeMillis() / 1000);
+        writeVarint(out, quantities.size());
+
+        int previous = 0;
+        for (Map.Entry<Integer, Integer> line : new TreeMap<>(quantities).entrySet())
+        {
+            int quantity = line.getValue();
+            if (line.getKey() <= 0 || quantity < 1 || quantity > MAX_QUANTITY)
+                throw new IllegalArgumentException("Guest cart quantities must be between 1 and " + MAX_QUANTITY + ".");
+            writeVarint(out, line.getKey() - previous);
+            writeVarint(out, quantity);
+            previous = line.getKey();
+        }
+
+        byte[] payload = out.toByteArray();
+        byte[] token = Arrays.copyOf(payload, payload.length + MAC_BYTES);
+        System.arraycopy(mac(payload, payload.length), 0, token, payload.length, MAC_BYTES);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+    }
+
+    // Returns the cart in the token (in product id order), an empty cart when the token is missing or expired;
+    // throws IllegalArgumentException when the token was not issued by us
+    public Map<Integer, Integer> decode(String token)
+    {
+        Map<Integer, Integer> quantities = new TreeMap<>();
+        if (token == null || token.isBlank())
+            return quantities;
+
+        byte[] bytes;
+        try
+        {
+            bytes = Base64.getUrlDecoder().decode(token.trim());
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw invalid();
+        }
+        if (bytes.length <= MAC_BYTES || bytes[0] != VERSION)
+            throw invalid();
+
+        int payloadLength = bytes.length - MAC_BYTES;
+        byte[] expected = Arrays.copyOf(mac(bytes, payloadLength), MAC_BYTES);
+        byte[] actual = Arrays.copyOfRange(bytes, payloadLength, bytes.length);
+        if (!MessageDigest.isEqual(expected, actual))
+            throw invalid();
+
+        // signed by us, so the content is well formed
+        ByteBuffer in = ByteBuffer.wrap(bytes, 1, payloadLength - 1);
+        long issuedAt = readVarint(in);
+        if (System.currentTimeMillis() / 1000 >= issuedAt + maxAgeSeconds)
+            return quantities;
+
+        int lines = (int) readVarint(in);
+        int productId = 0;
+        for (int i = 0; i < lines; i++)
+        {
+            productId += (int) readVarint(in);
+            quantities.put(productId, (int) readVarint(in));
+        }
+        return quantities;
+    }
+
+    private byte[] mac(byte[] bytes, int length)
+    {
+        try
+        {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            mac.update(bytes, 0, length);
+            return mac.doFinal();
+        }
+        catch (GeneralSecurityException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static IllegalArgumentException invalid()
+    {
+        return new IllegalArgumentException("Invalid guest cart token.");
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value)
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(ByteBuffer in)
+    {
+        long value = 0;
+        for (int shift = 0; ; shift += 7)
+        {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+    }
+}
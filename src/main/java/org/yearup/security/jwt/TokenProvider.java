@@ -16,6 +16,10 @@ import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.stereotype.Component;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.Key;
 import java.util.Arrays;
 import java.util.Collection;
@@ -51,6 +55,25 @@ public class TokenProvider implements InitializingBean
         this.key = Keys.hmacShaKeyFor(keyBytes);
     }
 
+    /**
+     * Derives a separate HMAC-SHA256 key for another kind of signed token (e.g. guest carts) from the
+     * JWT secret, so those tokens need no secret of their own but can never pass for a JWT or each other.
+     */
+    public Key deriveKey(String purpose)
+    {
+        try
+        {
+            Mac mac = Mac.getInstance("HmacSHA512");
+            mac.init(key);
+            byte[] derived = mac.doFinal(purpose.getBytes(StandardCharsets.UTF_8));
+            return new SecretKeySpec(derived, 0, 32, "HmacSHA256");
+        }
+        catch (GeneralSecurityException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
     public String createToken(Authentication authentication, boolean rememberMe)
     {
         String authorities = authentication.getAuthorities().stream()
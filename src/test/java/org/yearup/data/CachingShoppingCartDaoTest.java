@@ -0,0 +1,179 @@
+package org.yearup.data;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.yearup.models.Product;
+import org.yearup.models.ShoppingCart;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+class CachingShoppingCartDaoTest
+{
+    // runs inside the next delegate read, after the cart was read: a write racing with that load
+    private Runnable duringRead;
+    private FakeShoppingCartDao stored;
+    private CachingShoppingCartDao dao;
+
+    @BeforeEach
+    public void setup()
+    {
+        stored = new FakeShoppingCartDao()
+        {
+            @Override
+            public ShoppingCart getByUserId(int userId)
+            {
+                ShoppingCart cart = super.getByUserId(userId);
+                if (duringRead != null)
+                {
+                    Runnable write = duringRead;
+                    duringRead = null;
+                    write.run();
+                }
+                return cart;
+            }
+        };
+        stored.products.put(1, new Product(1, "Smartphone", new BigDecimal("499.99"), 1, "", "Black", 50, false, ""));
+        stored.products.put(2, new Product(2, "Laptop", new BigDecimal("899.99"), 1, "", "Gray", 30, false, ""));
+        stored.put(7, 1, 1).put(8, 2, 1);
+
+        dao = new CachingShoppingCartDao(stored, 100);
+    }
+
+    @Test
+    public void getByUserId_shouldBeServed_fromTheCache()
+    {
+        // act
+        dao.getByUserId(7);
+        var second = dao.getByUserId(7);
+        var third = dao.getByUserId(7);
+
+        // assert
+        assertEquals(1, stored.getReads());
+        assertNotSame(second, third, "Because every caller gets its own copy.");
+        assertEquals(new BigDecimal("499.99"), third.getTotal());
+    }
+
+    @Test
+    public void getByUserIdWithoutDescriptions_shouldUse_butNotFill_theCache()
+    {
+        // act
+        dao.getByUserIdWithoutDescriptions(7);
+        dao.getByUserId(7);
+        var cached = dao.getByUserIdWithoutDescriptions(7);
+
+        // assert
+        assertEquals(2, stored.getReads(), "Because the slim read was not cached, and the second one was served from the cache.");
+        assertEquals(new BigDecimal("499.99"), cached.getTotal());
+    }
+
+    @Test
+    public void cartChange_shouldDrop_onlyThatUsersCart()
+    {
+        // arrange
+        dao.getByUserId(7);
+        dao.getByUserId(8);
+
+        // act
+        dao.updateProduct(7, 1, 3);
+        var actual = dao.getByUserId(7);
+        dao.getByUserId(8);
+
+        // assert
+        assertEquals(3, stored.getReads());
+        assertEquals(3, actual.get(1).getQuantity());
+    }
+
+    @Test
+    public void productSaved_shouldDrop_onlyTheCartsHoldingIt()
+    {
+        // arrange
+        dao.getByUserId(7);
+        dao.getByUserId(8);
+        Product cheaper = new Product(1, "Smartphone", new BigDecimal("399.99"), 1, "", "Black", 50, false, "");
+        stored.products.put(1, cheaper);
+
+        // act
+        dao.productSaved(cheaper);
+        var actual = dao.getByUserId(7);
+        dao.getByUserId(8);
+
+        // assert
+        assertEquals(3, stored.getReads(), "Because only user 7's cart held product 1.");
+        assertEquals(new BigDecimal("399.99"), actual.getTotal());
+    }
+
+    @Test
+    public void load_racingWithAWriteToTheSameCart_shouldNotBeCached()
+    {
+        // arrange
+        duringRead = () -> dao.updateProduct(7, 1, 3);
+
+        // act
+        dao.getByUserId(7);
+        var actual = dao.getByUserId(7);
+
+        // assert
+        assertEquals(2, stored.getReads(), "Because the first load read the cart before the write.");
+        assertEquals(3, actual.get(1).getQuantity());
+    }
+
+    @Test
+    public void load_racingWithAnotherUsersWrite_shouldStillBeCached()
+    {
+        // arrange
+        duringRead = () -> dao.updateProduct(8, 2, 3);
+
+        // act
+        dao.getByUserId(7);
+        dao.getByUserId(7);
+
+        // assert
+        assertEquals(1, stored.getReads());
+    }
+
+    @Test
+    public void load_racingWithAStockChangeOfItsProduct_shouldNotBeCached()
+    {
+        // arrange
+        duringRead = () -> dao.stockChanged(List.of(1));
+
+        // act
+        dao.getByUserId(7);
+        dao.getByUserId(7);
+
+        // assert
+        assertEquals(2, stored.getReads());
+    }
+
+    @Test
+    public void addProduct_shouldCache_theCartItReturns()
+    {
+        // act
+        dao.addProduct(9, 2);
+        var actual = dao.getByUserId(9);
+
+        // assert
+        assertEquals(0, stored.getReads());
+        assertEquals(1, actual.get(2).getQuantity());
+    }
+
+    @Test
+    public void deleteIdleCarts_shouldDrop_theExpiredCarts()
+    {
+        // arrange
+        dao.getByUserId(7);
+
+        // act
+        dao.deleteIdleCarts(LocalDateTime.now(), 0, 10);
+        var actual = dao.getByUserId(7);
+
+        // assert
+        assertEquals(2, stored.getReads());
+        assertEquals(0, actual.getItems().size());
+    }
+}
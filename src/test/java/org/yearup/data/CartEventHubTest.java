@@ -0,0 +1,274 @@
+package org.yearup.data;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.yearup.models.ShoppingCart;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CartEventHubTest
+{
+    // one dispatch thread, so sends run in the order they were scheduled
+    private final CartEventHub hub = new CartEventHub(2, 1, 10_000);
+
+    @AfterEach
+    public void tearDown()
+    {
+        hub.close();
+    }
+
+    @Test
+    public void publish_shouldOnlyReach_thatUsersSubscribers() throws InterruptedException
+    {
+        // arrange
+        Recorder seven = new Recorder(1);
+        Recorder eight = new Recorder(1);
+        hub.subscribe(7, seven);
+        hub.subscribe(8, eight);
+        ShoppingCart cart = new ShoppingCart();
+        ShoppingCart end = new ShoppingCart();
+
+        // act
+        hub.publish(7, cart);
+        seven.await();
+        hub.publish(8, end);
+        eight.await();
+
+        // assert
+        assertEquals(List.of(cart), seven.carts);
+        assertEquals(List.of(end), eight.carts, "Because user 7's cart never reached user 8.");
+    }
+
+    @Test
+    public void slowSubscriber_shouldOnlyGet_theLatestCart() throws InterruptedException
+    {
+        // arrange
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Recorder slow = new Recorder(3)
+        {
+            @Override
+            public void onCart(ShoppingCart cart) throws Exception
+            {
+                sending.countDown();
+                release.await();
+                super.onCart(cart);
+            }
+        };
+        hub.subscribe(7, slow);
+        ShoppingCart first = new ShoppingCart();
+        ShoppingCart latest = new ShoppingCart();
+        ShoppingCart end = new ShoppingCart();
+
+        // act
+        hub.publish(7, first);
+        sending.await();
+        for (int i = 0; i < 100; i++)
+            hub.publish(7, new ShoppingCart());
+        hub.publish(7, latest);
+        release.countDown();
+        slow.awaitCarts(2);
+        hub.publish(7, end);
+        slow.await();
+
+        // assert
+        assertEquals(List.of(first, latest, end), slow.carts, "Because the buffer holds one cart, the ones in between are skipped.");
+    }
+
+    @Test
+    public void olderCart_shouldBeDropped_whenANewerOneWasOffered() throws InterruptedException
+    {
+        // arrange
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Recorder slow = new Recorder(3)
+        {
+            @Override
+            public void onCart(ShoppingCart cart) throws Exception
+            {
+                sending.countDown();
+                release.await();
+                super.onCart(cart);
+            }
+        };
+        hub.subscribe(7, slow);
+
+        // act
+        hub.publish(7, cart(1));
+        sending.await();
+        hub.publish(7, cart(3));
+        hub.publish(7, cart(2));
+        release.countDown();
+        slow.awaitCarts(2);
+        hub.publish(7, cart(2));
+        hub.publish(7, cart(4));
+        slow.await();
+
+        // assert
+        assertEquals(List.of(1L, 3L, 4L), slow.versions(), "Because carts 2 were older than cart 3, whichever order they came in.");
+    }
+
+    @Test
+    public void offerInitial_shouldBeSkipped_afterAPublish() throws InterruptedException
+    {
+        // arrange
+        Recorder recorder = new Recorder(2);
+        CartEventHub.Subscription subscription = hub.subscribe(7, recorder);
+        ShoppingCart changed = new ShoppingCart();
+        ShoppingCart end = new ShoppingCart();
+
+        // act
+        hub.publish(7, changed);
+        subscription.offerInitial(new ShoppingCart());
+        recorder.awaitCarts(1);
+        hub.publish(7, end);
+        recorder.await();
+
+        // assert
+        assertEquals(List.of(changed, end), recorder.carts);
+    }
+
+    @Test
+    public void failingSubscriber_shouldBeDropped() throws InterruptedException
+    {
+        // arrange
+        Recorder broken = new Recorder(1)
+        {
+            @Override
+            public void onCart(ShoppingCart cart) throws Exception
+            {
+                super.onCart(cart);
+                throw new IOException("Broken pipe");
+            }
+        };
+        Recorder other = new Recorder(1);
+        hub.subscribe(7, broken);
+        hub.subscribe(8, other);
+
+        // act
+        hub.publish(7, new ShoppingCart());
+        hub.publish(8, new ShoppingCart());
+        other.await();
+
+        // assert
+        assertFalse(hub.hasSubscribers(7), "Because the failed send was handled before the next one ran.");
+        assertEquals(1, hub.getSubscriberCount());
+    }
+
+    @Test
+    public void stalledSend_shouldDropItsSubscription_withoutHoldingUpOthers() throws InterruptedException
+    {
+        // arrange
+        CartEventHub quickHub = new CartEventHub(2, 1, 50);
+        CountDownLatch release = new CountDownLatch(1);
+        Recorder stalled = new Recorder(1)
+        {
+            @Override
+            public void onCart(ShoppingCart cart) throws Exception
+            {
+                release.await();
+                super.onCart(cart);
+            }
+        };
+        Recorder other = new Recorder(1);
+        quickHub.subscribe(7, stalled);
+        quickHub.subscribe(8, other);
+
+        try
+        {
+            // act
+            quickHub.publish(7, new ShoppingCart());
+            quickHub.publish(8, new ShoppingCart());
+            other.await();
+            boolean droppedWhileBlocked = !quickHub.hasSubscribers(7);
+            release.countDown();
+
+            // assert
+            assertTrue(droppedWhileBlocked, "Because the send to user 7 ran past its timeout.");
+            assertTrue(stalled.dropped.await(2, TimeUnit.SECONDS), "Because the stream is ended once the send returns.");
+        }
+        finally
+        {
+            quickHub.close();
+        }
+    }
+
+    @Test
+    public void subscribe_shouldBeCapped_perUser()
+    {
+        // arrange
+        hub.subscribe(7, new Recorder(0));
+        hub.subscribe(7, new Recorder(0));
+
+        // act & assert
+        assertThrows(IllegalStateException.class, () -> hub.subscribe(7, new Recorder(0)));
+        hub.subscribe(8, new Recorder(0));
+        assertEquals(3, hub.getSubscriberCount());
+    }
+
+    private static ShoppingCart cart(long version)
+    {
+        ShoppingCart cart = new ShoppingCart();
+        cart.setVersion(version);
+        return cart;
+    }
+
+    private static class Recorder implements CartEventHub.CartListener
+    {
+        final List<ShoppingCart> carts = new CopyOnWriteArrayList<>();
+        final CountDownLatch dropped = new CountDownLatch(1);
+        private final int expected;
+        private final List<CountDownLatch> received = new CopyOnWriteArrayList<>();
+
+        Recorder(int expected)
+        {
+            this.expected = expected;
+            for (int i = 0; i < expected; i++)
+                received.add(new CountDownLatch(1));
+        }
+
+        @Override
+        public void onCart(ShoppingCart cart) throws Exception
+        {
+            carts.add(cart);
+            if (carts.size() <= expected)
+                received.get(carts.size() - 1).countDown();
+        }
+
+        @Override
+        public void onHeartbeat()
+        {
+        }
+
+        @Override
+        public void onDropped()
+        {
+            dropped.countDown();
+        }
+
+        // waits for the expected number of carts
+        void await() throws InterruptedException
+        {
+            awaitCarts(expected);
+        }
+
+        void awaitCarts(int count) throws InterruptedException
+        {
+            assertTrue(received.get(count - 1).await(2, TimeUnit.SECONDS), "Because " + count + " carts should have arrived.");
+        }
+
+        List<Long> versions()
+        {
+            return carts.stream().map(ShoppingCart::getVersion).toList();
+        }
+    }
+}
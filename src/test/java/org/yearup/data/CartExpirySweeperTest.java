@@ -0,0 +1,58 @@
+package org.yearup.data;
+
+import org.junit.jupiter.api.Test;
+import org.yearup.models.CartExpiryStats;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CartExpirySweeperTest
+{
+    @Test
+    public void sweep_shouldStop_atTheLastUser()
+    {
+        // arrange
+        FakeShoppingCartDao carts = cartsUpTo(250);
+        CartExpirySweeper sweeper = new CartExpirySweeper(carts, Duration.ofDays(30), 100, 10);
+
+        // act
+        long rows = sweeper.sweep();
+        CartExpiryStats actual = sweeper.getStats();
+
+        // assert
+        assertEquals(List.of(0, 100, 200), carts.sweptFrom);
+        assertEquals(500, rows);
+        assertEquals(3, actual.getBatches());
+        assertEquals(250, actual.getCartsDeleted());
+        assertEquals(1, actual.getPasses());
+    }
+
+    @Test
+    public void sweep_shouldContinue_whereThePreviousPassStopped()
+    {
+        // arrange
+        FakeShoppingCartDao carts = cartsUpTo(250);
+        CartExpirySweeper sweeper = new CartExpirySweeper(carts, Duration.ofDays(30), 100, 2);
+
+        // act
+        sweeper.sweep();
+        carts.put(50, 1, 1);
+        sweeper.sweep();
+        sweeper.sweep();
+
+        // assert
+        assertEquals(List.of(0, 100, 200, 0), carts.sweptFrom, "Because the second pass reached the end and wrapped.");
+        assertEquals(0, carts.table.size(), "Because the third pass found the cart left behind the cursor.");
+    }
+
+    // every user up to lastUserId has an idle cart of two lines
+    private FakeShoppingCartDao cartsUpTo(int lastUserId)
+    {
+        FakeShoppingCartDao carts = new FakeShoppingCartDao();
+        for (int userId = 1; userId <= lastUserId; userId++)
+            carts.put(userId, 1, 1).put(userId, 2, 1);
+        return carts;
+    }
+}
@@ -0,0 +1,208 @@
+package org.yearup.data;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.yearup.models.CheckoutResult;
+import org.yearup.models.CheckoutStatus;
+import org.yearup.models.Order;
+import org.yearup.models.StockShortage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CheckoutPipelineTest
+{
+    private final List<List<Integer>> groups = new CopyOnWriteArrayList<>();
+    private final List<Integer> singles = new CopyOnWriteArrayList<>();
+    // evicting user 98's cart fails
+    private final FakeShoppingCartDao carts = new FakeShoppingCartDao()
+    {
+        @Override
+        public void evict(int userId)
+        {
+            if (userId == 98)
+                throw new IllegalStateException("Cart cache unavailable");
+            super.evict(userId);
+        }
+    };
+    // counted down when the first group checkout starts
+    private final CountDownLatch grouping = new CountDownLatch(1);
+    // the first group checkout waits on this, so the next checkouts pile up behind it
+    private final CountDownLatch release = new CountDownLatch(1);
+    private boolean failGroups;
+    private CheckoutPipeline pipeline;
+
+    @AfterEach
+    public void tearDown() throws InterruptedException
+    {
+        release.countDown();
+        if (pipeline != null)
+            pipeline.close();
+    }
+
+    @Test
+    public void queuedCheckouts_shouldBeGrouped_intoOneTransaction() throws InterruptedException
+    {
+        // arrange
+        pipeline = pipeline(1, 50, 100);
+        pipeline.start();
+        CheckoutStatus first = pipeline.submit(1);
+        List<CheckoutStatus> queued = new ArrayList<>();
+        awaitGrouping();
+
+        // act
+        for (int userId = 2; userId <= 11; userId++)
+            queued.add(pipeline.submit(userId));
+        release.countDown();
+        pipeline.close();
+
+        // assert
+        assertEquals(List.of(List.of(1), List.of(2, 3, 4, 5, 6, 7, 8, 9, 10, 11)), groups);
+        assertEquals(CheckoutStatus.COMPLETED, pipeline.getStatus(1, first.getCheckoutId()).getStatus());
+        assertEquals(7, pipeline.getStatus(7, queued.get(5).getCheckoutId()).getOrderId());
+        assertEquals(CheckoutStatus.COMPLETED, pipeline.getStatus(11, queued.get(9).getCheckoutId()).getStatus());
+        assertEquals(11, carts.evicted.size(), "Because every placed order emptied a cart.");
+    }
+
+    @Test
+    public void failedGroup_shouldBePlaced_oneByOne() throws InterruptedException
+    {
+        // arrange
+        failGroups = true;
+        release.countDown();
+        pipeline = pipeline(1, 50, 100);
+        pipeline.start();
+
+        // act
+        CheckoutStatus placed = pipeline.submit(1);
+        CheckoutStatus shortOfStock = pipeline.submit(99);
+        pipeline.close();
+
+        // assert
+        assertEquals(List.of(1, 99), singles);
+        assertEquals(CheckoutStatus.FAILED, pipeline.getStatus(99, shortOfStock.getCheckoutId()).getStatus());
+        assertEquals(CheckoutStatus.COMPLETED, pipeline.getStatus(1, placed.getCheckoutId()).getStatus());
+        assertEquals(1, pipeline.getStatus(99, shortOfStock.getCheckoutId()).getShortages().size());
+    }
+
+    @Test
+    public void placedOrders_shouldStayCompleted_whenEvictingACartFails() throws InterruptedException
+    {
+        // arrange
+        release.countDown();
+        pipeline = pipeline(1, 50, 100);
+        pipeline.start();
+
+        // act
+        CheckoutStatus actual = pipeline.submit(98);
+        pipeline.close();
+
+        // assert
+        assertEquals(CheckoutStatus.COMPLETED, pipeline.getStatus(98, actual.getCheckoutId()).getStatus(),
+                "Because the order was placed before the cart layers failed.");
+    }
+
+    @Test
+    public void status_shouldOnlyBeVisible_toItsUser()
+    {
+        // arrange
+        pipeline = pipeline(1, 50, 100);
+        pipeline.start();
+
+        // act
+        CheckoutStatus status = pipeline.submit(1);
+
+        // assert
+        assertNull(pipeline.getStatus(2, status.getCheckoutId()));
+        assertNull(pipeline.getStatus(1, status.getCheckoutId() + 1));
+    }
+
+    @Test
+    public void fullQueue_shouldRefuse_newCheckouts() throws InterruptedException
+    {
+        // arrange
+        pipeline = pipeline(1, 1, 1);
+        pipeline.start();
+        pipeline.submit(1);
+        awaitGrouping();
+        pipeline.submit(2);
+
+        // act & assert
+        assertThrows(IllegalStateException.class, () -> pipeline.submit(3));
+    }
+
+    private CheckoutPipeline pipeline(int workers, int batchSize, int maxQueued)
+    {
+        return new CheckoutPipeline(ordersDao(), carts, new FlashSaleStock(null, ids -> {}, 1, 1, 0), ids -> {}, workers, batchSize, maxQueued, 100);
+    }
+
+    // user 99 always asks for more than there is
+    private OrdersDao ordersDao()
+    {
+        return new OrdersDao()
+        {
+            public List<CheckoutResult> checkoutAll(List<Integer> userIds, StockReservation inMemory)
+            {
+                groups.add(List.copyOf(userIds));
+                grouping.countDown();
+                if (failGroups)
+                    throw new RuntimeException("Deadlock found when trying to get lock");
+                await();
+
+                List<CheckoutResult> results = new ArrayList<>();
+                for (Integer userId : userIds)
+                    results.add(userId == 99 ? shortOfStock() : CheckoutResult.placed(order(userId)));
+                return results;
+            }
+
+            public Order checkout(int userId, StockReservation reservation)
+            {
+                singles.add(userId);
+                if (userId == 99)
+                    throw new InsufficientStockException(shortOfStock().getShortages());
+                return order(userId);
+            }
+
+            public List<Order> getOrdersByUserId(int userId) { throw new UnsupportedOperationException(); }
+            public Order getOrderDetails(int userId, int orderId) { throw new UnsupportedOperationException(); }
+        };
+    }
+
+    private void await()
+    {
+        try
+        {
+            release.await(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Order order(int userId)
+    {
+        Order order = new Order();
+        order.setOrderId(userId);
+        order.setUserId(userId);
+        return order;
+    }
+
+    private static CheckoutResult shortOfStock()
+    {
+        return CheckoutResult.shortOfStock(List.of(new StockShortage(1, "Smartphone", 51, 50)));
+    }
+
+    private void awaitGrouping() throws InterruptedException
+    {
+        assertTrue(grouping.await(5, TimeUnit.SECONDS), "Because the first checkout should have been taken.");
+    }
+}
@@ -0,0 +1,139 @@
+package org.yearup.data;
+
+import org.yearup.models.CartOperation;
+import org.yearup.models.ExpiredCarts;
+import org.yearup.models.Product;
+import org.yearup.models.ShoppingCart;
+import org.yearup.models.ShoppingCartItem;
+import org.yearup.pricing.PricingEngine;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ShoppingCartDao for the tests of the classes built on one: the carts are held in `table`
+ * (user id -> product id -> quantity) and priced with the products in `products`. It counts reads
+ * and records flushes, evictions and where each expiry batch started; deleteIdleCarts treats every
+ * stored cart as idle. Tests override a method to watch a call more closely or to make it fail.
+ */
+public class FakeShoppingCartDao implements ShoppingCartDao
+{
+    public final Map<Integer, Product> products = new ConcurrentHashMap<>();
+    public final Map<Integer, Map<Integer, Integer>> table = new ConcurrentHashMap<>();
+    public final Set<Integer> flushed = ConcurrentHashMap.newKeySet();
+    public final Set<Integer> evicted = ConcurrentHashMap.newKeySet();
+    public final List<Integer> sweptFrom = new CopyOnWriteArrayList<>();
+    private final AtomicInteger reads = new AtomicInteger();
+
+    public FakeShoppingCartDao put(int userId, int productId, int quantity)
+    {
+        table.computeIfAbsent(userId, id -> new ConcurrentHashMap<>()).put(productId, quantity);
+        return this;
+    }
+
+    public int getReads()
+    {
+        return reads.get();
+    }
+
+    @Override
+    public ShoppingCart getByUserId(int userId)
+    {
+        reads.incrementAndGet();
+        return cart(userId);
+    }
+
+    @Override
+    public ShoppingCart addProduct(int userId, int productId)
+    {
+        if (!products.containsKey(productId))
+            return null;
+        table.computeIfAbsent(userId, id -> new ConcurrentHashMap<>()).merge(productId, 1, Integer::sum);
+        return cart(userId);
+    }
+
+    @Override
+    public void updateProduct(int userId, int productId, int quantity)
+    {
+        Map<Integer, Integer> quantities = table.get(userId);
+        if (quantities != null && quantities.containsKey(productId))
+            quantities.put(productId, quantity);
+    }
+
+    @Override
+    public void clearCart(int userId)
+    {
+        table.remove(userId);
+    }
+
+    @Override
+    public void removeProduct(int userId, int productId)
+    {
+        Map<Integer, Integer> quantities = table.get(userId);
+        if (quantities != null)
+            quantities.remove(productId);
+    }
+
+    @Override
+    public ShoppingCart applyOperations(int userId, List<CartOperation> operations)
+    {
+        Map<Integer, Integer> quantities = table.computeIfAbsent(userId, id -> new ConcurrentHashMap<>());
+        for (CartOperation operation : operations)
+            operation.applyTo(quantities);
+        return cart(userId);
+    }
+
+    @Override
+    public void flush(int userId)
+    {
+        flushed.add(userId);
+    }
+
+    @Override
+    public void evict(int userId)
+    {
+        evicted.add(userId);
+    }
+
+    @Override
+    public ExpiredCarts deleteIdleCarts(LocalDateTime idleSince, int afterUserId, int limit)
+    {
+        sweptFrom.add(afterUserId);
+        List<Integer> userIds = new ArrayList<>();
+        int rows = 0;
+        for (Integer userId : new TreeSet<>(table.keySet()).tailSet(afterUserId, false))
+        {
+            if (userIds.size() == limit)
+                break;
+            userIds.add(userId);
+            rows += table.remove(userId).size();
+        }
+        int scannedUpTo = userIds.isEmpty() ? afterUserId : userIds.get(userIds.size() - 1);
+        return new ExpiredCarts(userIds, rows, scannedUpTo, userIds.size() == limit);
+    }
+
+    // the stored cart as the database layer would return it: lines with their products, priced
+    public ShoppingCart cart(int userId)
+    {
+        Map<Integer, ShoppingCartItem> items = new LinkedHashMap<>();
+        table.getOrDefault(userId, Map.of()).forEach((productId, quantity) -> {
+            ShoppingCartItem item = new ShoppingCartItem();
+            item.setProduct(products.get(productId));
+            item.setQuantity(quantity);
+            items.put(productId, item);
+        });
+
+        ShoppingCart cart = new ShoppingCart();
+        cart.setItems(items);
+        PricingEngine.price(cart);
+        return cart;
+    }
+}
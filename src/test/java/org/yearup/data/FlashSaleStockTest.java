@@ -0,0 +1,215 @@
+package org.yearup.data;
+
+import org.junit.jupiter.api.Test;
+import org.yearup.models.Product;
+import org.yearup.models.ShoppingCart;
+import org.yearup.models.ShoppingCartItem;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FlashSaleStockTest
+{
+    private final Map<Integer, Integer> stock = new HashMap<>(Map.of(1, 100, 2, 5));
+    private final List<Map<Integer, Integer>> writes = new ArrayList<>();
+    private final List<Collection<Integer>> refreshed = new ArrayList<>();
+
+    @Test
+    public void concurrentReservations_shouldNeverOversell() throws Exception
+    {
+        // arrange
+        FlashSaleStock flashSale = new FlashSaleStock(stockDao(), refreshed::add, 8, 1_000, 1_000);
+        flashSale.start(1);
+        AtomicInteger won = new AtomicInteger();
+        AtomicInteger lost = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+
+        // act
+        for (int i = 0; i < 1_000; i++)
+        {
+            int quantity = i % 3 + 1;
+            executor.execute(() -> {
+                try
+                {
+                    start.await();
+                    flashSale.reserve(cart(1, quantity)).commit();
+                    won.addAndGet(quantity);
+                }
+                catch (InsufficientStockException e)
+                {
+                    lost.incrementAndGet();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        flashSale.reconcile();
+
+        // assert
+        assertTrue(won.get() <= 100, "Sold " + won.get());
+        assertTrue(won.get() >= 98, "Because only the last units can be out of reach of a larger order, sold " + won.get());
+        assertTrue(lost.get() > 0);
+        assertEquals(100 - won.get(), flashSale.getStatus().get(0).getAvailable());
+        assertEquals(won.get(), writes.stream().mapToInt(write -> write.get(1)).sum());
+    }
+
+    @Test
+    public void reserve_shouldBeAllOrNothing()
+    {
+        // arrange
+        FlashSaleStock flashSale = new FlashSaleStock(stockDao(), refreshed::add, 4, 10, 100);
+        flashSale.start(1);
+        flashSale.start(2);
+        ShoppingCart cart = cart(1, 10);
+        cart.add(item(2, 6));
+
+        // act
+        InsufficientStockException actual = assertThrows(InsufficientStockException.class, () -> flashSale.reserve(cart));
+
+        // assert
+        assertEquals(2, actual.getShortages().get(0).getProductId());
+        assertEquals(100, flashSale.getStatus().get(0).getAvailable(), "Because the units of product 1 were given back.");
+    }
+
+    @Test
+    public void releasedUnits_shouldGoBackOnSale() throws InterruptedException
+    {
+        // arrange
+        FlashSaleStock flashSale = new FlashSaleStock(stockDao(), refreshed::add, 4, 10, 100);
+        flashSale.start(2);
+
+        // act
+        flashSale.reserve(cart(2, 5)).release();
+        flashSale.reserve(cart(2, 5)).commit();
+        flashSale.reconcile();
+
+        // assert
+        assertEquals(0, flashSale.getStatus().get(0).getAvailable());
+        assertEquals(List.of(Map.of(2, 5)), writes, "Because only the committed units are written back.");
+        assertEquals(List.of(Set.of(2)), refreshed, "Because the product layers must re-read the stock that was written.");
+    }
+
+    @Test
+    public void reserve_shouldAdmit_atMostMaxConcurrent() throws InterruptedException
+    {
+        // arrange
+        FlashSaleStock flashSale = new FlashSaleStock(stockDao(), refreshed::add, 4, 1, 10);
+        flashSale.start(1);
+        FlashSaleStock.Reservation first = flashSale.reserve(cart(1, 1));
+
+        // act & assert
+        assertThrows(CheckoutConflictException.class, () -> flashSale.reserve(cart(1, 1)));
+        assertEquals(99, flashSale.getStatus().get(0).getAvailable(), "Because the refused checkout gave its unit back.");
+        first.commit();
+        flashSale.reserve(cart(1, 1)).commit();
+    }
+
+    @Test
+    public void stop_shouldWriteBack_whatWasSold() throws InterruptedException
+    {
+        // arrange
+        FlashSaleStock flashSale = new FlashSaleStock(stockDao(), refreshed::add, 4, 10, 100);
+        flashSale.start(1);
+        flashSale.reserve(cart(1, 3)).commit();
+
+        // act
+        flashSale.stop(1);
+
+        // assert
+        assertEquals(List.of(Map.of(1, 3)), writes);
+        assertFalse(flashSale.isHeldInMemory(1));
+    }
+
+    @Test
+    public void stop_shouldKeepTheSale_untilTheCheckoutsInFlightFinished() throws InterruptedException
+    {
+        // arrange
+        FlashSaleStock flashSale = new FlashSaleStock(stockDao(), refreshed::add, 4, 10, 100);
+        flashSale.start(1);
+        FlashSaleStock.Reservation inFlight = flashSale.reserve(cart(1, 2));
+
+        // act
+        flashSale.stop(1);
+        boolean heldWhileInFlight = flashSale.isHeldInMemory(1);
+        inFlight.commit();
+
+        // assert
+        assertTrue(heldWhileInFlight, "Because the checkout in flight skips the database stock update.");
+        assertEquals(List.of(Map.of(1, 2)), writes, "Because the last checkout out writes the sale back.");
+        assertFalse(flashSale.isHeldInMemory(1));
+    }
+
+    @Test
+    public void reserve_shouldBeRefused_onceTheSaleIsEnding() throws InterruptedException
+    {
+        // arrange
+        FlashSaleStock flashSale = new FlashSaleStock(stockDao(), refreshed::add, 4, 10, 100);
+        flashSale.start(1);
+        FlashSaleStock.Reservation inFlight = flashSale.reserve(cart(1, 1));
+        flashSale.stop(1);
+
+        // act & assert
+        assertThrows(CheckoutConflictException.class, () -> flashSale.reserve(cart(1, 1)));
+        assertThrows(CheckoutConflictException.class, () -> flashSale.start(1));
+        assertTrue(flashSale.getStatus().get(0).isEnding());
+        inFlight.release();
+        assertTrue(writes.isEmpty(), "Because nothing was sold.");
+        assertTrue(flashSale.start(1), "Because the ended sale is gone.");
+    }
+
+    private StockDao stockDao()
+    {
+        return new StockDao()
+        {
+            public boolean readStockLocked(int productId, IntConsumer whileLocked)
+            {
+                if (!stock.containsKey(productId))
+                    return false;
+                whileLocked.accept(stock.get(productId));
+                return true;
+            }
+
+            public synchronized void takeStock(Map<Integer, Integer> quantities)
+            {
+                writes.add(new HashMap<>(quantities));
+            }
+        };
+    }
+
+    private static ShoppingCart cart(int productId, int quantity)
+    {
+        ShoppingCart cart = new ShoppingCart();
+        cart.add(item(productId, quantity));
+        return cart;
+    }
+
+    private static ShoppingCartItem item(int productId, int quantity)
+    {
+        ShoppingCartItem item = new ShoppingCartItem();
+        item.setProduct(new Product(productId, "Product " + productId, new BigDecimal("10.00"), 1, "", "", 0, false, ""));
+        item.setQuantity(quantity);
+        return item;
+    }
+}
@@ -0,0 +1,148 @@
+package org.yearup.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IdempotencyStoreTest
+{
+    private final AtomicInteger runs = new AtomicInteger();
+
+    @Test
+    public void retry_shouldReplay_theOriginalResult() throws InterruptedException
+    {
+        // arrange
+        IdempotencyStore<String> store = new IdempotencyStore<>(10, Duration.ofHours(1), 1_000);
+        IdempotencyStore.Result<String> first = store.execute("7:abc", this::order);
+
+        // act
+        IdempotencyStore.Result<String> retry = store.execute("7:abc", this::order);
+        IdempotencyStore.Result<String> other = store.execute("7:def", this::order);
+
+        // assert
+        assertEquals(2, runs.get());
+        assertFalse(first.isReplayed());
+        assertTrue(retry.isReplayed());
+        assertSame(first.getValue(), retry.getValue());
+        assertEquals("order 2", other.getValue());
+    }
+
+    @Test
+    public void concurrentRetries_shouldWait_forTheRunningRequest() throws Exception
+    {
+        // arrange
+        IdempotencyStore<String> store = new IdempotencyStore<>(10, Duration.ofHours(1), 5_000);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        // act
+        Future<IdempotencyStore.Result<String>> original = executor.submit(() -> store.execute("7:abc", () -> {
+            running.countDown();
+            release.await();
+            return order();
+        }));
+        running.await();
+        Future<?>[] retries = new Future<?>[7];
+        for (int i = 0; i < retries.length; i++)
+            retries[i] = executor.submit(() -> store.execute("7:abc", this::order));
+        release.countDown();
+
+        // assert
+        assertEquals("order 1", original.get().getValue());
+        for (Future<?> retry : retries)
+            assertEquals("order 1", ((IdempotencyStore.Result<?>) retry.get()).getValue());
+        assertEquals(1, runs.get(), "Because the retries never ran the action.");
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void retry_shouldTimeOut_whileTheOriginalStillRuns() throws Exception
+    {
+        // arrange
+        IdempotencyStore<String> store = new IdempotencyStore<>(10, Duration.ofHours(1), 10);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.submit(() -> store.execute("7:abc", () -> {
+            running.countDown();
+            release.await();
+            return order();
+        }));
+        running.await();
+
+        // act & assert
+        assertThrows(IdempotencyConflictException.class, () -> store.execute("7:abc", this::order));
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void failure_shouldNotBeKept() throws InterruptedException
+    {
+        // arrange
+        IdempotencyStore<String> store = new IdempotencyStore<>(10, Duration.ofHours(1), 1_000);
+
+        // act
+        assertThrows(IllegalArgumentException.class, () -> store.execute("7:abc", () -> {
+            throw new IllegalArgumentException("Cart is empty.");
+        }));
+        IdempotencyStore.Result<String> retry = store.execute("7:abc", this::order);
+
+        // assert
+        assertFalse(retry.isReplayed(), "Because the failed request wrote nothing, the retry runs it again.");
+        assertEquals("order 1", retry.getValue());
+    }
+
+    @Test
+    public void entries_shouldExpire_afterTheTtl() throws InterruptedException
+    {
+        // arrange
+        IdempotencyStore<String> store = new IdempotencyStore<>(10, Duration.ZERO, 1_000);
+        store.execute("7:abc", this::order);
+
+        // act
+        IdempotencyStore.Result<String> actual = store.execute("7:abc", this::order);
+
+        // assert
+        assertFalse(actual.isReplayed());
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void store_shouldDrop_theOldestResults_whenFull() throws InterruptedException
+    {
+        // arrange
+        IdempotencyStore<String> store = new IdempotencyStore<>(2, Duration.ofHours(1), 1_000);
+        store.execute("1", this::order);
+        store.execute("2", this::order);
+
+        // act
+        store.execute("3", this::order);
+        IdempotencyStore.Result<String> oldest = store.execute("1", this::order);
+
+        // assert
+        assertEquals(2, store.size());
+        assertFalse(oldest.isReplayed());
+    }
+
+    private String order()
+    {
+        return "order " + runs.incrementAndGet();
+    }
+}
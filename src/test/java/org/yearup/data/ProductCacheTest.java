@@ -0,0 +1,153 @@
+package org.yearup.data;
+
+import org.junit.jupiter.api.Test;
+import org.yearup.models.Product;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ProductCacheTest
+{
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    public void get_shouldOnlyLoad_onTheFirstRequest()
+    {
+        // arrange
+        ProductCache cache = new ProductCache(10, 60);
+
+        // act
+        cache.get(1, this::load);
+        cache.get(1, this::load);
+        var actual = cache.get(1, this::load);
+
+        // assert
+        assertNotNull(actual);
+        assertEquals(1, loads.get());
+        assertEquals(2, cache.getStats().getHits());
+        assertEquals(1, cache.getStats().getMisses());
+    }
+
+    @Test
+    public void get_shouldHandOut_copies()
+    {
+        // arrange
+        ProductCache cache = new ProductCache(10, 60);
+        Product first = cache.get(1, this::load);
+
+        // act
+        first.setPrice(new BigDecimal("0.01"));
+        var actual = cache.get(1, this::load);
+
+        // assert
+        assertNotSame(first, actual);
+        assertEquals(new BigDecimal("1.00"), actual.getPrice(), "Because the caller only changed its own copy.");
+    }
+
+    @Test
+    public void get_shouldCache_missingProducts()
+    {
+        // arrange
+        ProductCache cache = new ProductCache(10, 60);
+
+        // act
+        cache.get(404, this::load);
+        var actual = cache.get(404, this::load);
+
+        // assert
+        assertNull(actual);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void invalidate_shouldForce_aReload()
+    {
+        // arrange
+        ProductCache cache = new ProductCache(10, 60);
+        cache.get(1, this::load);
+
+        // act
+        cache.invalidate(1);
+        cache.get(1, this::load);
+
+        // assert
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.getStats().getInvalidations());
+    }
+
+    @Test
+    public void get_whenFull_shouldEvict_andKeepTheSizeBounded()
+    {
+        // arrange
+        ProductCache cache = new ProductCache(3, 60);
+
+        // act
+        for (int id = 1; id <= 10; id++)
+            cache.get(id, this::load);
+
+        // assert
+        assertEquals(3, cache.getStats().getSize());
+        assertEquals(7, cache.getStats().getEvictions());
+    }
+
+    @Test
+    public void get_withZeroTtl_shouldExpire_immediately()
+    {
+        // arrange
+        ProductCache cache = new ProductCache(3, 0);
+
+        // act
+        cache.get(1, this::load);
+        cache.get(1, this::load);
+
+        // assert
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.getStats().getExpirations());
+    }
+
+    @Test
+    public void getAll_shouldOnlyLoad_theMissingIds()
+    {
+        // arrange
+        ProductCache cache = new ProductCache(10, 60);
+        cache.get(1, this::load);
+
+        // act
+        var actual = cache.getAll(List.of(1, 2, 404), this::loadAll);
+        var again = cache.getAll(List.of(1, 2, 404), this::loadAll);
+
+        // assert
+        assertEquals(2, actual.size());
+        assertEquals(2, again.size());
+        assertEquals(3, loads.get(), "Because 2 and 404 are loaded once, in one batch, and then cached.");
+    }
+
+    private Map<Integer, Product> loadAll(Collection<Integer> ids)
+    {
+        Map<Integer, Product> products = new HashMap<>();
+        for (Integer id : ids)
+        {
+            Product product = load(id);
+            if (product != null)
+                products.put(id, product);
+        }
+        return products;
+    }
+
+    private Product load(int id)
+    {
+        loads.incrementAndGet();
+        if (id == 404)
+            return null;
+        return new Product(id, "Product " + id, new BigDecimal("1.00"), 1, "", "", 1, false, "");
+    }
+}
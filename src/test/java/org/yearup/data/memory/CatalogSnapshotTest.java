@@ -0,0 +1,158 @@
+package org.yearup.data.memory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.yearup.data.ProductCursor;
+import org.yearup.data.ProductSort;
+import org.yearup.models.Product;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CatalogSnapshotTest
+{
+    private CatalogSnapshot snapshot;
+
+    @BeforeEach
+    public void setup()
+    {
+        snapshot = CatalogSnapshot.of(1, List.of(
+                product(1, "499.99", 1, "Black"),
+                product(2, "899.99", 1, "Gray"),
+                product(3, "99.99", 1, "White"),
+                product(4, "29.99", 2, "Charcoal"),
+                product(5, "59.99", 2, "Blue"),
+                product(8, "69.99", 2, "Blue"),
+                product(11, "79.99", 3, "Black")
+        ));
+    }
+
+    @Test
+    public void search_withoutFilters_shouldReturn_everyProductInIdOrder()
+    {
+        // act
+        var actual = ids(snapshot.search(null, null, null, null));
+
+        // assert
+        assertEquals(List.of(1, 2, 3, 4, 5, 8, 11), actual);
+    }
+
+    @Test
+    public void search_shouldIntersect_categorySubCategoryAndPriceRange()
+    {
+        // act
+        var actual = ids(snapshot.search(2, new BigDecimal("50"), new BigDecimal("69.99"), "blue"));
+
+        // assert
+        assertEquals(List.of(5, 8), actual, "Because the price range is inclusive and subcategory ignores case.");
+    }
+
+    @Test
+    public void search_byPriceOnly_shouldUse_inclusiveBounds()
+    {
+        // act
+        var actual = ids(snapshot.search(null, new BigDecimal("79.99"), new BigDecimal("499.99"), null));
+
+        // assert
+        assertEquals(List.of(1, 3, 11), actual);
+    }
+
+    @Test
+    public void search_pagedByPrice_shouldWalk_everyMatchOnce()
+    {
+        // arrange
+        List<Integer> actual = new ArrayList<>();
+        ProductCursor after = null;
+
+        // act
+        do
+        {
+            var page = snapshot.search(null, new BigDecimal("50"), null, null, ProductSort.PRICE, after, 2);
+            actual.addAll(ids(page.getItems()));
+            after = ProductCursor.decode(page.getNext(), ProductSort.PRICE);
+        }
+        while (after != null);
+
+        // assert
+        assertEquals(List.of(5, 8, 11, 3, 1, 2), actual);
+    }
+
+    @Test
+    public void search_pagedByIdAndName_withFilters_shouldWalk_everyMatchOnce()
+    {
+        // arrange
+        List<Integer> byId = new ArrayList<>();
+        List<Integer> byName = new ArrayList<>();
+
+        // act
+        for (ProductSort sort : List.of(ProductSort.ID, ProductSort.NAME))
+        {
+            List<Integer> actual = sort == ProductSort.ID ? byId : byName;
+            ProductCursor after = null;
+            do
+            {
+                var page = snapshot.search(1, null, new BigDecimal("500"), null, sort, after, 1);
+                actual.addAll(ids(page.getItems()));
+                after = ProductCursor.decode(page.getNext(), sort);
+            }
+            while (after != null);
+        }
+
+        // assert
+        assertEquals(List.of(1, 3), byId);
+        assertEquals(List.of(1, 3), byName, "Because \"Product 1\" sorts before \"Product 3\".");
+        assertEquals(List.of(5, 8), ids(snapshot.search(2, null, null, "BLUE", ProductSort.NAME, null, 0).getItems()));
+    }
+
+    @Test
+    public void withProduct_andWithoutProduct_shouldPublish_newVersions()
+    {
+        // act
+        var added = snapshot.withProduct(product(12, "10.00", 3, "Silver"));
+        var removed = added.withoutProduct(1);
+
+        // assert
+        assertEquals(2, added.getVersion());
+        assertEquals(3, removed.getVersion());
+        assertEquals(List.of(11, 12), ids(added.listByCategoryId(3)));
+        assertNull(removed.getById(1));
+        assertEquals(7, snapshot.size(), "Because older snapshots are never modified.");
+    }
+
+    @Test
+    public void withProducts_shouldSwapIn_reloadedRows_andKeepTheIndexesWorking()
+    {
+        // arrange
+        Product lessStock = product(5, "59.99", 2, "Blue");
+        lessStock.setStock(3);
+        Product repriced = product(8, "9.99", 2, "Blue");
+
+        // act
+        var stockOnly = snapshot.withProducts(List.of(5), Map.of(5, lessStock));
+        var reordered = stockOnly.withProducts(List.of(8, 11), Map.of(8, repriced));
+
+        // assert
+        assertEquals(3, stockOnly.getById(5).getStock());
+        assertEquals(List.of(5, 8), ids(stockOnly.search(2, null, null, "blue")));
+        assertEquals(3, stockOnly.search(2, null, null, "blue").get(0).getStock(), "Because search reads the new row too.");
+        assertEquals(List.of(8, 4, 5), ids(reordered.search(null, null, new BigDecimal("60"), null, ProductSort.PRICE, null, 0).getItems()));
+        assertNull(reordered.getById(11), "Because an id without a row was deleted.");
+        assertEquals(10, snapshot.getById(5).getStock(), "Because older snapshots are never modified.");
+    }
+
+    private static List<Integer> ids(List<Product> products)
+    {
+        return products.stream().map(Product::getProductId).collect(Collectors.toList());
+    }
+
+    private static Product product(int id, String price, int categoryId, String subCategory)
+    {
+        return new Product(id, "Product " + id, new BigDecimal(price), categoryId, "", subCategory, 10, false, "");
+    }
+}
@@ -0,0 +1,60 @@
+package org.yearup.data.memory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.yearup.models.Product;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ColumnarCatalogTest
+{
+    private ColumnarCatalog catalog;
+
+    @BeforeEach
+    public void setup()
+    {
+        catalog = ColumnarCatalog.of(List.of(
+                product(1, "499.99", 1, "Black"),
+                product(3, "99.99", 1, "White"),
+                product(4, "29.99", 2, "Charcoal"),
+                product(5, "59.99", 2, "Blue"),
+                product(8, "69.99", 2, "blue"),
+                product(11, "79.99", 3, "Black")
+        ));
+    }
+
+    @Test
+    public void facets_withoutFilters_shouldCount_everyProduct()
+    {
+        // act
+        var facets = catalog.facets(null, null, null, null);
+
+        // assert
+        assertEquals(6, facets.getTotal());
+        assertEquals(Map.of(1, 2, 2, 3, 3, 1), facets.getCategories());
+        assertEquals(2, facets.getSubCategories().get("Blue"), "Because subcategories are grouped ignoring case.");
+        assertEquals(1, facets.getPrices().get(1).getCount(), "Because only 29.99 is in the 25-50 bucket.");
+    }
+
+    @Test
+    public void facets_shouldCount_eachFacetWithoutItsOwnFilter()
+    {
+        // act
+        var facets = catalog.facets(2, new BigDecimal("50"), null, null);
+
+        // assert
+        assertEquals(2, facets.getTotal());
+        assertEquals(Map.of(1, 2, 2, 2, 3, 1), facets.getCategories(), "Because the category filter does not narrow the category facet.");
+        assertEquals(Map.of("Blue", 2), facets.getSubCategories());
+        assertEquals(1, facets.getPrices().get(1).getCount(), "Because the price filter does not narrow the price facet.");
+    }
+
+    private static Product product(int id, String price, int categoryId, String subCategory)
+    {
+        return new Product(id, "Product " + id, new BigDecimal(price), categoryId, "", subCategory, 10, false, "");
+    }
+}
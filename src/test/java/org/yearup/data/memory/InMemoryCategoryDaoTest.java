@@ -0,0 +1,62 @@
+package org.yearup.data.memory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.yearup.data.CategoryDao;
+import org.yearup.models.Category;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class InMemoryCategoryDaoTest
+{
+    private final List<Category> table = new ArrayList<>();
+    private int reads;
+    private InMemoryCategoryDao dao;
+
+    @BeforeEach
+    public void setup()
+    {
+        table.add(new Category(1, "Electronics", ""));
+        table.add(new Category(2, "Fashion", ""));
+
+        dao = new InMemoryCategoryDao(new CategoryDao()
+        {
+            public List<Category> getAllCategories() { reads++; return new ArrayList<>(table); }
+            public Category getById(int categoryId) { throw new AssertionError("reads must come from the snapshot"); }
+            public Category create(Category category) { table.add(category); return category; }
+            public void update(int categoryId, Category category) { }
+            public void delete(int categoryId) { table.removeIf(c -> c.getCategoryId() == categoryId); }
+        });
+    }
+
+    @Test
+    public void reads_shouldShare_oneSnapshot()
+    {
+        // act
+        var first = dao.getSnapshot();
+        dao.getAllCategories();
+        dao.getById(2);
+
+        // assert
+        assertSame(first, dao.getSnapshot());
+        assertEquals(1, reads, "Because the table is only read once.");
+    }
+
+    @Test
+    public void writes_shouldPublish_theNextVersion()
+    {
+        // arrange
+        long version = dao.getSnapshot().getVersion();
+
+        // act
+        dao.create(new Category(3, "Home & Kitchen", ""));
+
+        // assert
+        assertEquals(version + 1, dao.getSnapshot().getVersion());
+        assertEquals("Home & Kitchen", dao.getById(3).getName());
+    }
+}
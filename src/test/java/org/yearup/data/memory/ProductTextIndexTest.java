@@ -0,0 +1,129 @@
+package org.yearup.data.memory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.yearup.models.Product;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProductTextIndexTest
+{
+    private List<Product> database;
+    private ProductTextIndex index;
+
+    @BeforeEach
+    public void setup()
+    {
+        database = new ArrayList<>(List.of(
+                product(1, "Smartphone", "A powerful and feature-rich smartphone for all your communication needs."),
+                product(3, "Headphones", "Immerse yourself in music with these high-quality headphones."),
+                product(4, "Men's T-Shirt", "A comfortable and stylish t-shirt for everyday wear."),
+                product(5, "Men's Jeans", "Classic denim jeans for a timeless and casual look."),
+                product(8, "Women's Jeans", "Comfortable and stylish jeans for a fashionable look.")
+        ));
+        index = new ProductTextIndex(() -> database);
+    }
+
+    @Test
+    public void search_shouldRequire_everyQueryWord()
+    {
+        // act
+        var actual = ids(index.search("stylish jeans", 10));
+
+        // assert
+        assertEquals(List.of(8), actual, "Because only Women's Jeans has both words.");
+    }
+
+    @Test
+    public void search_shouldRank_nameMatchesAboveDescriptionMatches()
+    {
+        // arrange
+        database.add(product(20, "Leather Belt", "Goes with any jeans."));
+
+        // act
+        var actual = ids(index.search("jeans", 10));
+
+        // assert
+        assertEquals(3, actual.size());
+        assertEquals(20, actual.get(2), "Because the belt only mentions jeans in its description.");
+    }
+
+    @Test
+    public void search_shouldMatch_wordPrefixes()
+    {
+        // act
+        var actual = ids(index.search("head", 10));
+
+        // assert
+        assertEquals(List.of(3), actual);
+    }
+
+    @Test
+    public void put_andRemove_shouldUpdate_theLoadedIndex()
+    {
+        // arrange
+        index.search("jeans", 10); // loads the index
+
+        // act
+        index.productSaved(product(12, "Skinny Jeans", "Slim fit."));
+        index.productDeleted(5);
+
+        // assert
+        var actual = ids(index.search("jeans", 10));
+        assertTrue(actual.contains(12));
+        assertTrue(!actual.contains(5));
+        assertEquals(5, index.size());
+    }
+
+    @Test
+    public void changes_madeWhileTheIndexLoads_shouldNotBeLost()
+    {
+        // arrange
+        index = new ProductTextIndex(() -> {
+            List<Product> read = new ArrayList<>(database);
+            index.productSaved(product(12, "Skinny Jeans", "Slim fit."));
+            index.productDeleted(5);
+            return read;
+        });
+        index.productSaved(product(13, "Bootcut Jeans", "Saved before anything was loaded."));
+
+        // act
+        var actual = ids(index.search("jeans", 10));
+
+        // assert
+        assertEquals(List.of(8, 12, 13), actual.stream().sorted().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void search_shouldKeep_theMostCommonExpansions_pastTheCap()
+    {
+        // arrange
+        for (int i = 0; i < 300; i++)
+            database.add(product(100 + i, "Part zz" + i, ""));
+        for (int i = 0; i < 3; i++)
+            database.add(product(1000 + i, "Zzcommon", ""));
+
+        // act
+        var actual = ids(index.search("zz", 1000));
+
+        // assert
+        assertTrue(actual.containsAll(List.of(1000, 1001, 1002)), "Because zzcommon is in the most products, though it sorts after zz0..zz299.");
+        assertEquals(3 + 255, actual.size());
+    }
+
+    private static List<Integer> ids(List<Product> products)
+    {
+        return products.stream().map(Product::getProductId).collect(Collectors.toList());
+    }
+
+    private static Product product(int id, String name, String description)
+    {
+        return new Product(id, name, new BigDecimal("10.00"), 1, description, "", 10, false, "");
+    }
+}
@@ -0,0 +1,268 @@
+package org.yearup.data.memory;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.yearup.data.FakeShoppingCartDao;
+import org.yearup.data.ProductCursor;
+import org.yearup.data.ProductDao;
+import org.yearup.data.ProductHandler;
+import org.yearup.data.ProductSort;
+import org.yearup.data.mysql.MySqlShoppingCartDao;
+import org.yearup.models.CartOperation;
+import org.yearup.models.Product;
+import org.yearup.models.ProductField;
+import org.yearup.models.ProductPage;
+import org.yearup.models.ShoppingCart;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteBehindShoppingCartDaoTest
+{
+    private final FakeShoppingCartDao stored = new FakeShoppingCartDao();
+    private final List<Map<Integer, Map<Integer, Integer>>> writes = new ArrayList<>();
+    private final List<Set<Integer>> clears = new ArrayList<>();
+    // runs at the start of every write with the users it writes
+    private Consumer<Set<Integer>> duringWrite = userIds -> { };
+    private WriteBehindShoppingCartDao dao;
+
+    @BeforeEach
+    public void setup()
+    {
+        stored.products.put(1, new Product(1, "Smartphone", new BigDecimal("499.99"), 1, "", "Black", 50, false, ""));
+        stored.products.put(2, new Product(2, "Laptop", new BigDecimal("899.99"), 1, "", "Gray", 30, false, ""));
+
+        // the batched writes go to the fake's table, so reloads see what was flushed
+        MySqlShoppingCartDao mySql = new MySqlShoppingCartDao(null)
+        {
+            public ShoppingCart getByUserId(int userId) { return stored.getByUserId(userId); }
+            public ShoppingCart getByUserIdWithoutDescriptions(int userId) { return stored.getByUserId(userId); }
+            public void writeChanges(Set<Integer> clearedUserIds, Map<Integer, Map<Integer, Integer>> quantities)
+            {
+                duringWrite.accept(quantities.keySet());
+                clears.add(clearedUserIds);
+                writes.add(quantities);
+                clearedUserIds.forEach(stored::clearCart);
+                quantities.forEach((userId, lines) -> lines.forEach((productId, quantity) -> {
+                    if (quantity > 0)
+                        stored.put(userId, productId, quantity);
+                    else
+                        stored.removeProduct(userId, productId);
+                }));
+            }
+        };
+
+        // long interval so only the explicit flushes in the tests write anything
+        dao = new WriteBehindShoppingCartDao(mySql, products(), 60_000);
+    }
+
+    @AfterEach
+    public void tearDown()
+    {
+        dao.close();
+    }
+
+    @Test
+    public void quickIncrements_shouldBeCoalesced_intoOneWrite()
+    {
+        // act
+        for (int i = 0; i < 10; i++)
+            dao.addProduct(7, 1);
+        dao.flushAll();
+
+        // assert
+        assertEquals(1, writes.size());
+        assertEquals(Map.of(7, Map.of(1, 10)), writes.get(0), "Because only the latest quantity is written.");
+        assertEquals(new BigDecimal("4999.90"), dao.getByUserId(7).getTotal());
+    }
+
+    @Test
+    public void flush_shouldWrite_onlyThatUsersCart()
+    {
+        // arrange
+        dao.addProduct(7, 1);
+        dao.addProduct(8, 2);
+
+        // act
+        dao.flush(7);
+
+        // assert
+        assertEquals(Map.of(7, Map.of(1, 1)), writes.get(0));
+        assertEquals(1, dao.getDirtyCartCount(), "Because user 8 still waits for the flusher.");
+    }
+
+    @Test
+    public void flush_shouldNotWait_forAnotherUsersWrite() throws InterruptedException
+    {
+        // arrange
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        duringWrite = userIds -> {
+            if (!userIds.contains(8))
+                return;
+            writing.countDown();
+            try
+            {
+                release.await(5, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        };
+        dao.addProduct(7, 1);
+        dao.addProduct(8, 2);
+        Thread other = new Thread(() -> dao.flush(8));
+        other.start();
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        // act
+        dao.flush(7);
+        boolean otherStillWriting = other.isAlive();
+        release.countDown();
+        other.join();
+
+        // assert
+        assertTrue(otherStillWriting, "Because user 7's flush went ahead while user 8's write was in flight.");
+        assertEquals(Map.of(1, 1), stored.table.get(7));
+        assertEquals(Map.of(2, 1), stored.table.get(8));
+    }
+
+    @Test
+    public void clearCart_shouldEmpty_theStoredCartBeforeNewLines()
+    {
+        // arrange
+        dao.addProduct(7, 1);
+        dao.flushAll();
+
+        // act
+        dao.clearCart(7);
+        dao.addProduct(7, 2);
+        dao.flushAll();
+
+        // assert
+        assertTrue(clears.get(1).contains(7));
+        assertEquals(Map.of(7, Map.of(2, 1)), writes.get(1));
+    }
+
+    @Test
+    public void removeProduct_shouldWrite_aZeroQuantity()
+    {
+        // arrange
+        dao.addProduct(7, 1);
+
+        // act
+        dao.removeProduct(7, 1);
+        dao.flushAll();
+
+        // assert
+        assertEquals(Map.of(7, Map.of(1, 0)), writes.get(0), "Because 0 deletes the row.");
+        assertTrue(dao.getByUserId(7).getItems().isEmpty());
+    }
+
+    @Test
+    public void applyOperations_shouldOnlyWrite_changedLines()
+    {
+        // arrange
+        dao.addProduct(7, 1);
+        dao.addProduct(7, 2);
+        dao.flushAll();
+
+        // act
+        ShoppingCart actual = dao.applyOperations(7, List.of(
+                new CartOperation("set", 1, 3),
+                new CartOperation("set", 2, 1),
+                new CartOperation("set", 9, 5)));
+        dao.flushAll();
+
+        // assert
+        assertEquals(3, actual.get(1).getQuantity());
+        assertEquals(Map.of(7, Map.of(1, 3)), writes.get(1), "Because line 2 kept its quantity and 9 is not in the cart.");
+    }
+
+    @Test
+    public void maxOperations_appliedTwice_shouldLeaveTheCart_asTheFirstTime()
+    {
+        // arrange
+        dao.addProduct(7, 1);
+        dao.addProduct(7, 1);
+        dao.addProduct(7, 1);
+        List<CartOperation> guestCart = List.of(new CartOperation("max", 1, 2), new CartOperation("max", 2, 4));
+
+        // act
+        dao.applyOperations(7, guestCart);
+        ShoppingCart actual = dao.applyOperations(7, guestCart);
+
+        // assert
+        assertEquals(3, actual.get(1).getQuantity(), "Because the line already held more than the guest cart.");
+        assertEquals(4, actual.get(2).getQuantity(), "Because the second merge did not add on top of the first.");
+    }
+
+    @Test
+    public void evict_shouldKeep_linesChangedAfterTheCheckoutsFlush()
+    {
+        // arrange
+        dao.addProduct(7, 1);
+        dao.flush(7);
+        dao.addProduct(7, 2);
+
+        // act
+        stored.clearCart(7);
+        dao.evict(7);
+        dao.flushAll();
+
+        // assert
+        ShoppingCart actual = dao.getByUserId(7);
+        assertEquals(Set.of(2), actual.getItems().keySet(), "Because the flushed line was bought by the checkout.");
+        assertEquals(Map.of(7, Map.of(2, 1)), writes.get(1), "Because the line added during the checkout is still written.");
+    }
+
+    @Test
+    public void addProduct_shouldReturnNull_forAnUnknownProduct()
+    {
+        // act
+        ShoppingCart actual = dao.addProduct(7, 999);
+
+        // assert
+        assertNull(actual);
+        assertEquals(0, dao.getDirtyCartCount());
+    }
+
+    private ProductDao products()
+    {
+        return new ProductDao()
+        {
+            public Product getById(int productId) { return stored.products.get(productId); }
+            public Map<Integer, Product> getByIds(Collection<Integer> productIds)
+            {
+                Map<Integer, Product> found = new HashMap<>();
+                for (Integer productId : productIds)
+                    if (stored.products.containsKey(productId)) found.put(productId, stored.products.get(productId));
+                return found;
+            }
+            public List<Product> search(Integer categoryId, BigDecimal minPrice, BigDecimal maxPrice, String subCategory) { throw new UnsupportedOperationException(); }
+            public ProductPage search(Integer categoryId, BigDecimal minPrice, BigDecimal maxPrice, String subCategory,
+                                      ProductSort sort, ProductCursor after, int limit, Set<ProductField> fields) { throw new UnsupportedOperationException(); }
+            public void streamSearch(Integer categoryId, BigDecimal minPrice, BigDecimal maxPrice, String subCategory,
+                                     Set<ProductField> fields, ProductHandler handler) { throw new UnsupportedOperationException(); }
+            public List<Product> listByCategoryId(int categoryId) { throw new UnsupportedOperationException(); }
+            public Product create(Product product) { throw new UnsupportedOperationException(); }
+            public void update(int productId, Product product) { throw new UnsupportedOperationException(); }
+            public void delete(int productId) { throw new UnsupportedOperationException(); }
+            public void stockChanged(Collection<Integer> productIds) { }
+        };
+    }
+}
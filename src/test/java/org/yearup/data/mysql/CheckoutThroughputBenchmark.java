@@ -0,0 +1,190 @@
+package org.yearup.data.mysql;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.yearup.data.CheckoutPipeline;
+import org.yearup.data.FlashSaleStock;
+import org.yearup.models.CheckoutStatus;
+import org.yearup.models.Order;
+import org.yearup.pricing.PromotionEngine;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Orders per second placed by THREADS shoppers at once, each filling a two-line cart and checking out:
+ * synchronously (every checkout its own transaction on a pooled connection) and through the
+ * CheckoutPipeline (queued, group-committed by two workers, waiting for the completed status).
+ * Both share a pool of POOL_SIZE connections, as the application does at peak.
+ * Needs the easyshop database; it adds benchmark users and orders and removes them again afterwards.
+ * Not part of the test run; start it with
+ *   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.yearup.data.mysql.CheckoutThroughputBenchmark
+ * (-Dbenchmark.url, -Dbenchmark.username and -Dbenchmark.password point it at another server).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(CheckoutThroughputBenchmark.THREADS)
+@Fork(1)
+public class CheckoutThroughputBenchmark
+{
+    static final int THREADS = 32;
+    private static final int POOL_SIZE = 8;
+    private static final String USER_PREFIX = "checkout-benchmark-";
+
+    private BasicDataSource pool;
+    private MySqlOrdersDao ordersDao;
+    private FlashSaleStock flashSaleStock;
+    private CheckoutPipeline pipeline;
+    private int smartphoneStock;
+    private int headphonesStock;
+    private final List<Integer> userIds = new ArrayList<>();
+    private final AtomicInteger nextUser = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class Shopper
+    {
+        int userId;
+
+        @Setup
+        public void setup(CheckoutThroughputBenchmark benchmark)
+        {
+            userId = benchmark.userIds.get(benchmark.nextUser.getAndIncrement());
+        }
+    }
+
+    @Setup
+    public void setup() throws SQLException
+    {
+        pool = new BasicDataSource();
+        pool.setUrl(System.getProperty("benchmark.url", "jdbc:mysql://localhost:3306/easyshop?rewriteBatchedStatements=true"));
+        pool.setUsername(System.getProperty("benchmark.username", "root"));
+        pool.setPassword(System.getProperty("benchmark.password", "Yearup"));
+        pool.setMaxTotal(POOL_SIZE);
+
+        removeBenchmarkData();
+        for (int i = 0; i < THREADS; i++)
+            userIds.add(insertUser(USER_PREFIX + i));
+
+        // enough stock that no checkout is refused
+        MySqlProductDao productDao = new MySqlProductDao(pool);
+        smartphoneStock = productDao.getById(1).getStock();
+        headphonesStock = productDao.getById(3).getStock();
+        execute("UPDATE products SET stock = 100000000 WHERE product_id IN (1, 3)");
+
+        ordersDao = new MySqlOrdersDao(pool, new PromotionEngine(new MySqlPromotionDao(pool), 60));
+        flashSaleStock = new FlashSaleStock(new MySqlStockDao(pool), ids -> {}, 1, 1, 0);
+        pipeline = new CheckoutPipeline(ordersDao, new MySqlShoppingCartDao(pool), flashSaleStock, ids -> {}, 2, 64, 10_000, 100_000);
+        pipeline.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        pipeline.close();
+        removeBenchmarkData();
+        execute("UPDATE products SET stock = " + smartphoneStock + " WHERE product_id = 1");
+        execute("UPDATE products SET stock = " + headphonesStock + " WHERE product_id = 3");
+        pool.close();
+    }
+
+    @Benchmark
+    public Order synchronous(Shopper shopper) throws SQLException
+    {
+        fillCart(shopper.userId);
+        return ordersDao.checkout(shopper.userId, flashSaleStock.none());
+    }
+
+    @Benchmark
+    public CheckoutStatus groupCommit(Shopper shopper) throws SQLException
+    {
+        fillCart(shopper.userId);
+        CheckoutStatus status = pipeline.submit(shopper.userId);
+        while (true)
+        {
+            CheckoutStatus current = pipeline.getStatus(shopper.userId, status.getCheckoutId());
+            if (current.getStatus().equals(CheckoutStatus.COMPLETED) || current.getStatus().equals(CheckoutStatus.FAILED))
+                return current;
+            LockSupport.parkNanos(50_000);
+        }
+    }
+
+    private void fillCart(int userId) throws SQLException
+    {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "INSERT INTO shopping_cart (user_id, product_id, quantity) VALUES (?, 1, 1), (?, 3, 2)"))
+        {
+            statement.setInt(1, userId);
+            statement.setInt(2, userId);
+            statement.executeUpdate();
+        }
+    }
+
+    private int insertUser(String username) throws SQLException
+    {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "INSERT INTO users (username, hashed_password, role) VALUES (?, '', 'ROLE_USER')",
+                     Statement.RETURN_GENERATED_KEYS))
+        {
+            statement.setString(1, username);
+            statement.executeUpdate();
+            try (ResultSet keys = statement.getGeneratedKeys())
+            {
+                keys.next();
+                return keys.getInt(1);
+            }
+        }
+    }
+
+    private void removeBenchmarkData() throws SQLException
+    {
+        String users = "(SELECT user_id FROM (SELECT user_id FROM users WHERE username LIKE '" + USER_PREFIX + "%') benchmark_users)";
+        execute("DELETE FROM order_line_items WHERE order_id IN (SELECT order_id FROM orders WHERE user_id IN " + users + ")");
+        execute("DELETE FROM orders WHERE user_id IN " + users);
+        execute("DELETE FROM shopping_cart WHERE user_id IN " + users);
+        execute("DELETE FROM users WHERE username LIKE '" + USER_PREFIX + "%'");
+    }
+
+    private void execute(String sql) throws SQLException
+    {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql))
+        {
+            statement.executeUpdate();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder()
+                .include(CheckoutThroughputBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,212 @@
+package org.yearup.data.mysql;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Value;
+import org.yearup.data.InsufficientStockException;
+import org.yearup.data.StockReservation;
+import org.yearup.models.Order;
+import org.yearup.pricing.PromotionEngine;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Hammers one hot product from many threads: CHECKOUTS shoppers each check out their own cart through
+// checkout(), on its own pooled connection and committing for real (the shoppers, their orders and
+// the stock are put back afterwards)
+class MySqlOrdersDaoConcurrencyTest extends BaseDaoTestClass
+{
+    private static final int HOT_STOCK = 50;
+    private static final int OTHER_STOCK = 1000;
+    private static final int CHECKOUTS = 200;
+    private static final int THREADS = 16;
+    private static final String USER_PREFIX = "concurrency-test-";
+    // the ids of the test's shoppers; binds USER_PREFIX + "%" as the first parameter
+    private static final String SHOPPERS = "SELECT user_id FROM (SELECT user_id FROM users WHERE username LIKE ?) shoppers";
+
+    private static final StockReservation NO_RESERVATION = new StockReservation()
+    {
+        public int getReserved(int productId) { return 0; }
+        public int getReservedLineCount() { return 0; }
+        public boolean isHeldInMemory(int productId) { return false; }
+    };
+
+    @Value("${datasource.url}")
+    private String serverUrl;
+    @Value("${datasource.testdb}")
+    private String testDb;
+    @Value("${datasource.username}")
+    private String username;
+    @Value("${datasource.password}")
+    private String password;
+
+    private BasicDataSource pool;
+    private int hotStock;
+    private int otherStock;
+    private final List<Integer> userIds = new ArrayList<>();
+
+    @BeforeEach
+    public void setup() throws SQLException
+    {
+        pool = new BasicDataSource();
+        pool.setUrl(serverUrl + testDb + "?rewriteBatchedStatements=true");
+        pool.setUsername(username);
+        pool.setPassword(password);
+        pool.setMaxTotal(THREADS);
+
+        MySqlProductDao productDao = new MySqlProductDao(pool);
+        hotStock = productDao.getById(1).getStock();
+        otherStock = productDao.getById(2).getStock();
+        execute("UPDATE products SET stock = ? WHERE product_id = ?", HOT_STOCK, 1);
+        execute("UPDATE products SET stock = ? WHERE product_id = ?", OTHER_STOCK, 2);
+
+        // every other cart also holds a second product, so two checkouts lock
+        // more than one row and would deadlock without a fixed lock order
+        removeShoppers();
+        for (int i = 0; i < CHECKOUTS; i++)
+        {
+            int userId = insertUser(USER_PREFIX + i);
+            userIds.add(userId);
+            execute("INSERT INTO shopping_cart (user_id, product_id, quantity) VALUES (?, 1, 1)", userId);
+            if (i % 2 == 1)
+                execute("INSERT INTO shopping_cart (user_id, product_id, quantity) VALUES (?, 2, 1)", userId);
+        }
+    }
+
+    @AfterEach
+    public void restore() throws SQLException
+    {
+        removeShoppers();
+        execute("UPDATE products SET stock = ? WHERE product_id = ?", hotStock, 1);
+        execute("UPDATE products SET stock = ? WHERE product_id = ?", otherStock, 2);
+        pool.close();
+    }
+
+    @Test
+    public void concurrentCheckouts_shouldNeverOversell_orTimeOut() throws Exception
+    {
+        // arrange
+        MySqlOrdersDao dao = new MySqlOrdersDao(pool, new PromotionEngine(new MySqlPromotionDao(pool), 60));
+        MySqlProductDao productDao = new MySqlProductDao(pool);
+
+        AtomicInteger placed = new AtomicInteger();
+        AtomicInteger refused = new AtomicInteger();
+        AtomicInteger otherSold = new AtomicInteger();
+        ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        // act
+        for (Integer userId : userIds)
+        {
+            executor.execute(() -> {
+                try
+                {
+                    start.await();
+                    Order order = dao.checkout(userId, NO_RESERVATION);
+                    placed.incrementAndGet();
+                    otherSold.addAndGet(order.getItems().size() - 1);
+                }
+                catch (InsufficientStockException e)
+                {
+                    refused.incrementAndGet();
+                    if (e.getShortages().size() != 1 || e.getShortages().get(0).getProductId() != 1)
+                        errors.add(e);
+                }
+                catch (Throwable e)
+                {
+                    // a deadlock or lock wait timeout ends up here
+                    errors.add(e);
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(2, TimeUnit.MINUTES));
+
+        // assert
+        assertTrue(errors.isEmpty(), "Unexpected failures: " + errors);
+        assertEquals(HOT_STOCK, placed.get(), "Because exactly the stock there was is sold.");
+        assertEquals(CHECKOUTS - HOT_STOCK, refused.get());
+        assertEquals(0, productDao.getById(1).getStock());
+        assertEquals(OTHER_STOCK - otherSold.get(), productDao.getById(2).getStock());
+        assertEquals(CHECKOUTS - HOT_STOCK, countCarts(), "Because a refused checkout leaves its cart as it was.");
+    }
+
+    private int insertUser(String username) throws SQLException
+    {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "INSERT INTO users (username, hashed_password, role) VALUES (?, '', 'ROLE_USER')",
+                     Statement.RETURN_GENERATED_KEYS))
+        {
+            statement.setString(1, username);
+            statement.executeUpdate();
+            try (ResultSet keys = statement.getGeneratedKeys())
+            {
+                keys.next();
+                return keys.getInt(1);
+            }
+        }
+    }
+
+    private int countCarts() throws SQLException
+    {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT COUNT(DISTINCT user_id) FROM shopping_cart WHERE user_id IN (" + SHOPPERS + ")"))
+        {
+            statement.setString(1, USER_PREFIX + "%");
+            try (ResultSet rs = statement.executeQuery())
+            {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    private void removeShoppers() throws SQLException
+    {
+        executeForShoppers("DELETE FROM order_line_items WHERE order_id IN (SELECT order_id FROM orders WHERE user_id IN (" + SHOPPERS + "))");
+        executeForShoppers("DELETE FROM orders WHERE user_id IN (" + SHOPPERS + ")");
+        executeForShoppers("DELETE FROM shopping_cart WHERE user_id IN (" + SHOPPERS + ")");
+        executeForShoppers("DELETE FROM users WHERE username LIKE ?");
+    }
+
+    private void executeForShoppers(String sql) throws SQLException
+    {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql))
+        {
+            statement.setString(1, USER_PREFIX + "%");
+            statement.executeUpdate();
+        }
+    }
+
+    private void execute(String sql, int... parameters) throws SQLException
+    {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql))
+        {
+            for (int i = 0; i < parameters.length; i++)
+                statement.setInt(i + 1, parameters[i]);
+            statement.executeUpdate();
+        }
+    }
+}
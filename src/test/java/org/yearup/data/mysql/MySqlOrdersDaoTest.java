@@ -0,0 +1,114 @@
+package org.yearup.data.mysql;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.yearup.data.InsufficientStockException;
+import org.yearup.data.StockReservation;
+import org.yearup.models.CartOperation;
+import org.yearup.models.CheckoutResult;
+import org.yearup.models.Order;
+import org.yearup.pricing.PromotionEngine;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MySqlOrdersDaoTest extends BaseDaoTestClass
+{
+    private static final StockReservation NO_RESERVATION = new StockReservation()
+    {
+        public int getReserved(int productId) { return 0; }
+        public int getReservedLineCount() { return 0; }
+        public boolean isHeldInMemory(int productId) { return false; }
+    };
+
+    private MySqlOrdersDao dao;
+    private MySqlShoppingCartDao cartDao;
+    private MySqlProductDao productDao;
+
+    @BeforeEach
+    public void setup()
+    {
+        dao = new MySqlOrdersDao(dataSource, new PromotionEngine(new MySqlPromotionDao(dataSource), 60));
+        cartDao = new MySqlShoppingCartDao(dataSource);
+        productDao = new MySqlProductDao(dataSource);
+    }
+
+    @Test
+    public void checkout_shouldPlaceTheOrder_takeTheStock_andClearTheCart()
+    {
+        // arrange
+        cartDao.addProduct(1, 1);
+        cartDao.addProduct(1, 1);
+        cartDao.addProduct(1, 3);
+        int smartphoneStock = productDao.getById(1).getStock();
+
+        // act
+        Order actual = dao.checkout(1, NO_RESERVATION);
+
+        // assert
+        assertEquals(2, actual.getItems().size());
+        assertEquals(new BigDecimal("1099.97"), actual.getTotal());
+        assertEquals(actual.getTotal(), dao.getOrderDetails(1, actual.getOrderId()).getTotal(),
+                "Because the response is built from what was written.");
+        assertEquals(smartphoneStock - 2, productDao.getById(1).getStock());
+        assertTrue(cartDao.getByUserId(1).getItems().isEmpty());
+    }
+
+    @Test
+    public void checkout_shouldReturnNull_forAnEmptyCart()
+    {
+        // act
+        Order actual = dao.checkout(2, NO_RESERVATION);
+
+        // assert
+        assertNull(actual);
+    }
+
+    @Test
+    public void checkout_shouldReport_everyShortLine_andChangeNothing()
+    {
+        // arrange
+        cartDao.applyOperations(1, List.of(
+                new CartOperation("add", 1, 51),
+                new CartOperation("add", 2, 31),
+                new CartOperation("add", 3, 1)));
+
+        // act
+        InsufficientStockException actual = assertThrows(InsufficientStockException.class, () -> dao.checkout(1, NO_RESERVATION));
+
+        // assert
+        assertEquals(2, actual.getShortages().size());
+        assertEquals(50, actual.getShortages().get(0).getAvailable());
+        assertEquals(100, productDao.getById(3).getStock(), "Because the reservation of line 3 was rolled back.");
+        assertEquals(3, cartDao.getByUserId(1).getItems().size());
+    }
+
+    @Test
+    public void checkoutAll_shouldPlace_eachCheckoutInQueueOrder_withinOneTransaction()
+    {
+        // arrange
+        cartDao.applyOperations(1, List.of(
+                new CartOperation("add", 1, 2),
+                new CartOperation("add", 3, 1)));
+        cartDao.applyOperations(2, List.of(new CartOperation("add", 1, 49)));
+
+        // act
+        List<CheckoutResult> actual = dao.checkoutAll(List.of(1, 2, 1), NO_RESERVATION);
+
+        // assert
+        assertEquals(3, actual.size());
+        assertTrue(actual.get(0).isPlaced());
+        assertEquals(2, actual.get(0).getOrder().getItems().size());
+        assertEquals(actual.get(0).getOrder().getTotal(), dao.getOrderDetails(1, actual.get(0).getOrder().getOrderId()).getTotal());
+        assertEquals(48, actual.get(1).getShortages().get(0).getAvailable(), "Because user 1 got the first 2 smartphones.");
+        assertEquals("Cart is empty.", actual.get(2).getError(), "Because user 1's first checkout emptied the cart.");
+        assertEquals(48, productDao.getById(1).getStock());
+        assertTrue(cartDao.getByUserId(1).getItems().isEmpty());
+        assertEquals(1, cartDao.getByUserId(2).getItems().size(), "Because user 2's checkout failed.");
+    }
+}
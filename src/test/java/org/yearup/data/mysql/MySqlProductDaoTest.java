@@ -3,12 +3,26 @@ package org.yearup.data.mysql;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.yearup.data.ProductCursor;
+import org.yearup.data.ProductSort;
 import org.yearup.models.Product;
+import org.yearup.models.ProductField;
 
 import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class MySqlProductDaoTest extends BaseDaoTestClass
 {
@@ -45,4 +59,118 @@ class MySqlProductDaoTest extends BaseDaoTestClass
         assertEquals(expected.getPrice(), actual.getPrice(), "Because I tried to get product 1 from the database.");
     }
 
-}
\ No newline at end of file
+    @Test
+    public void search_shouldOnlyFilter_onSuppliedParameters()
+    {
+        // act
+        var actual = dao.search(2, new BigDecimal("50"), new BigDecimal("70"), "Blue");
+
+        // assert
+        assertEquals(2, actual.size(), "Because only Men's and Women's Jeans are blue fashion items between 50 and 70.");
+    }
+
+    @Test
+    public void search_filterCombinations_shouldUseAnIndex_insteadOfAFullScan() throws SQLException
+    {
+        // arrange
+        List<MySqlProductDao.SearchQuery> queries = List.of(
+                MySqlProductDao.SearchQuery.of(1, null, null, null),
+                MySqlProductDao.SearchQuery.of(1, new BigDecimal("400"), new BigDecimal("500"), null),
+                MySqlProductDao.SearchQuery.of(null, null, null, "Black"),
+                MySqlProductDao.SearchQuery.of(null, new BigDecimal("400"), new BigDecimal("500"), "Black"),
+                MySqlProductDao.SearchQuery.of(null, new BigDecimal("400"), new BigDecimal("500"), null),
+                MySqlProductDao.SearchQuery.of(null, new BigDecimal("800"), null, null),
+                MySqlProductDao.SearchQuery.of(2, null, null, "Blue")
+        );
+
+        for (var query : queries)
+        {
+            // act
+            String[] plan = explain(query);
+
+            // assert
+            assertNotNull(plan[1], "Because an index should be chosen for: " + query.sql);
+            assertNotEquals("ALL", plan[0], "Because a full scan was planned for: " + query.sql);
+            assertTrue(plan[0].equals("ref") || plan[0].equals("range"), "Because expected ref/range access for: " + query.sql + " but got " + plan[0]);
+        }
+    }
+
+    @Test
+    public void search_pagedByName_shouldContinue_afterTheCursor()
+    {
+        // act
+        var first = dao.search(2, null, null, null, ProductSort.NAME, null, 4, null);
+        var second = dao.search(2, null, null, null, ProductSort.NAME, ProductCursor.decode(first.getNext(), ProductSort.NAME), 4, null);
+
+        // assert
+        assertEquals(4, first.getItems().size());
+        assertEquals(2, second.getItems().size(), "Because category 2 has 6 products.");
+        assertEquals(null, second.getNext(), "Because the second page is the last one.");
+        assertEquals("Women's Dress", second.getItems().get(0).getName());
+    }
+
+    @Test
+    public void search_withFields_shouldOnlyLoad_theRequestedColumns()
+    {
+        // act
+        var page = dao.search(2, null, null, null, ProductSort.ID, null, 10,
+                EnumSet.of(ProductField.PRODUCT_ID, ProductField.NAME, ProductField.PRICE));
+
+        // assert
+        Product first = page.getItems().get(0);
+        assertNotNull(first.getName());
+        assertNotNull(first.getPrice());
+        assertNull(first.getDescription(), "Because description was not requested.");
+    }
+
+    @Test
+    public void streamSearch_shouldHand_everyMatchingRowToTheHandler()
+    {
+        // arrange
+        List<Product> streamed = new ArrayList<>();
+
+        // act
+        dao.streamSearch(3, null, null, null, null, streamed::add);
+
+        // assert
+        assertEquals(dao.listByCategoryId(3).size(), streamed.size(), "Because streaming should return the same rows as the list query.");
+    }
+
+    @Test
+    public void getByIds_shouldReturn_onlyExistingProducts()
+    {
+        // act
+        var actual = dao.getByIds(List.of(1, 3, 3, 999));
+
+        // assert
+        assertEquals(2, actual.size(), "Because duplicates collapse and product 999 does not exist.");
+        assertEquals("Headphones", actual.get(3).getName());
+    }
+
+    @Test
+    public void getByIds_shouldReject_aNullId()
+    {
+        // arrange
+        List<Integer> ids = new ArrayList<>(List.of(1, 3));
+        ids.add(null);
+
+        // act & assert
+        assertThrows(IllegalArgumentException.class, () -> dao.getByIds(ids));
+    }
+
+    // returns { access type, chosen key } for the products table
+    private String[] explain(MySqlProductDao.SearchQuery query) throws SQLException
+    {
+        Connection connection = dataSource.getConnection();
+        try (PreparedStatement statement = connection.prepareStatement("EXPLAIN " + query.sql))
+        {
+            query.bind(statement);
+            try (ResultSet row = statement.executeQuery())
+            {
+                row.next();
+                return new String[] { row.getString("type"), row.getString("key") };
+            }
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+package org.yearup.data.mysql;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.yearup.models.CartOperation;
+import org.yearup.models.ExpiredCarts;
+import org.yearup.models.ShoppingCart;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MySqlShoppingCartDaoTest extends BaseDaoTestClass
+{
+    private MySqlShoppingCartDao dao;
+
+    @BeforeEach
+    public void setup()
+    {
+        dao = new MySqlShoppingCartDao(dataSource);
+    }
+
+    @Test
+    public void addProduct_twice_shouldIncrease_theQuantity()
+    {
+        // act
+        dao.addProduct(1, 3);
+        ShoppingCart actual = dao.addProduct(1, 3);
+
+        // assert
+        assertEquals(2, actual.get(3).getQuantity(), "Because the second add should bump the existing row.");
+        assertEquals(actual.get(3).getLineTotal(), actual.getTotal());
+    }
+
+    @Test
+    public void addProduct_shouldReturnNull_forAnUnknownProduct()
+    {
+        // act
+        ShoppingCart actual = dao.addProduct(1, 999);
+
+        // assert
+        assertNull(actual, "Because the product_id foreign key rejects the insert.");
+    }
+
+    @Test
+    public void applyOperations_shouldApply_everyOperationInOrder()
+    {
+        // arrange
+        dao.addProduct(1, 3);
+        dao.addProduct(1, 5);
+
+        // act
+        ShoppingCart actual = dao.applyOperations(1, List.of(
+                new CartOperation("add", 3, 2),
+                new CartOperation("set", 3, 4),
+                new CartOperation("remove", 5, null),
+                new CartOperation("add", 7, null)));
+
+        // assert
+        assertEquals(2, actual.getItems().size());
+        assertEquals(4, actual.get(3).getQuantity(), "Because set comes after add.");
+        assertEquals(1, actual.get(7).getQuantity());
+    }
+
+    @Test
+    public void deleteIdleCarts_shouldOnlyDelete_cartsWithNoRecentLine() throws SQLException
+    {
+        // arrange
+        dao.addProduct(1, 3);
+        dao.addProduct(2, 5);
+        dao.addProduct(2, 7);
+        ageLines("UPDATE shopping_cart SET last_modified = NOW() - INTERVAL 40 DAY WHERE user_id = 1 OR product_id = 5");
+
+        // act
+        ExpiredCarts actual = dao.deleteIdleCarts(LocalDateTime.now().minusDays(30), 0, 10);
+
+        // assert
+        assertEquals(List.of(1), actual.getUserIds(), "Because user 2 still changed a line recently.");
+        assertEquals(1, actual.getRowsDeleted());
+        assertTrue(dao.getByUserId(1).getItems().isEmpty());
+        assertEquals(2, dao.getByUserId(2).getItems().size());
+    }
+
+    @Test
+    public void removeProduct_shouldKeep_theRestOfTheCartFromLookingIdle() throws SQLException
+    {
+        // arrange
+        dao.addProduct(1, 3);
+        dao.addProduct(1, 5);
+        ageLines("UPDATE shopping_cart SET last_modified = NOW() - INTERVAL 40 DAY WHERE user_id = 1");
+
+        // act
+        dao.removeProduct(1, 5);
+        ExpiredCarts actual = dao.deleteIdleCarts(LocalDateTime.now().minusDays(30), 0, 10);
+
+        // assert
+        assertTrue(actual.getUserIds().isEmpty(), "Because removing a line is a change to the cart too.");
+        assertEquals(1, dao.getByUserId(1).getItems().size());
+    }
+
+    private void ageLines(String sql) throws SQLException
+    {
+        Connection connection = dataSource.getConnection();
+        try (PreparedStatement statement = connection.prepareStatement(sql))
+        {
+            statement.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package org.yearup.models;
+
+import org.junit.jupiter.api.Test;
+import org.yearup.pricing.PricingEngine;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CartDeltaTest
+{
+    @Test
+    public void between_shouldHold_onlyTheChangedLines()
+    {
+        // arrange
+        ShoppingCart before = cart(1, line(1, 1), line(2, 1), line(3, 2));
+        ShoppingCart after = cart(2, line(1, 1), line(2, 4), line(9, 1));
+
+        // act
+        CartDelta actual = CartDelta.between(before, after);
+
+        // assert
+        assertEquals(List.of(2, 9), actual.getItems().stream().map(ShoppingCartItem::getProductId).sorted().toList());
+        assertEquals(List.of(3), actual.getRemoved());
+        assertEquals(1, actual.getPreviousVersion());
+        assertEquals(2, actual.getVersion());
+        assertEquals(after.getTotal(), actual.getTotal());
+        assertEquals(3, actual.getLineCount());
+    }
+
+    @Test
+    public void between_shouldInclude_linesWhoseDiscountChanged()
+    {
+        // arrange
+        ShoppingCart before = cart(1, line(1, 1));
+        ShoppingCartItem discounted = line(1, 1);
+        discounted.setDiscountPercent(new BigDecimal("0.10"));
+        ShoppingCart after = cart(2, discounted, line(2, 1));
+
+        // act
+        CartDelta actual = CartDelta.between(before, after);
+
+        // assert
+        assertEquals(2, actual.getItems().size(), "Because the cart-wide promotion also changed line 1.");
+    }
+
+    private static ShoppingCart cart(long version, ShoppingCartItem... items)
+    {
+        ShoppingCart cart = new ShoppingCart();
+        for (ShoppingCartItem item : items)
+            cart.add(item);
+        PricingEngine.price(cart);
+        cart.setVersion(version);
+        return cart;
+    }
+
+    private static ShoppingCartItem line(int productId, int quantity)
+    {
+        ShoppingCartItem item = new ShoppingCartItem();
+        item.setProduct(new Product(productId, "Product " + productId, new BigDecimal("10.00"), 1, "", "", 10, false, ""));
+        item.setQuantity(quantity);
+        return item;
+    }
+}
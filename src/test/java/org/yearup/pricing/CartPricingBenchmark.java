@@ -0,0 +1,88 @@
+package org.yearup.pricing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.yearup.models.Product;
+import org.yearup.models.ShoppingCart;
+import org.yearup.models.ShoppingCartItem;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prices 1-, 10- and 100-line carts the old way (BigDecimal per line, as the cart DAO used to)
+ * and with PricingEngine. Not part of the test run; start it with
+ *   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.yearup.pricing.CartPricingBenchmark
+ * or run main() from the IDE. The GC profiler reports gc.alloc.rate.norm (bytes per cart).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CartPricingBenchmark
+{
+    @Param({"1", "10", "100"})
+    public int lines;
+
+    private ShoppingCart cart;
+
+    @Setup
+    public void setup()
+    {
+        Map<Integer, ShoppingCartItem> items = new HashMap<>();
+        for (int i = 1; i <= lines; i++)
+        {
+            ShoppingCartItem item = new ShoppingCartItem();
+            item.setProduct(new Product(i, "Product " + i, new BigDecimal(i + ".99"), 1, "", "", 10, false, ""));
+            item.setQuantity(1 + i % 4);
+            item.setDiscountPercent(BigDecimal.ZERO);
+            items.put(i, item);
+        }
+        cart = new ShoppingCart();
+        cart.setItems(items);
+    }
+
+    @Benchmark
+    public BigDecimal bigDecimal()
+    {
+        BigDecimal total = BigDecimal.ZERO;
+        for (ShoppingCartItem item : cart.getItems().values())
+        {
+            BigDecimal lineTotal = item.getProduct().getPrice().multiply(BigDecimal.valueOf(item.getQuantity()));
+            total = total.add(lineTotal);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public BigDecimal longCents()
+    {
+        PricingEngine.price(cart);
+        return cart.getTotal();
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder()
+                .include(CartPricingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
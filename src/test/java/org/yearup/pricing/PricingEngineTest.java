@@ -0,0 +1,61 @@
+package org.yearup.pricing;
+
+import org.junit.jupiter.api.Test;
+import org.yearup.models.Product;
+import org.yearup.models.ShoppingCart;
+import org.yearup.models.ShoppingCartItem;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PricingEngineTest
+{
+    @Test
+    public void toCents_shouldRound_halfUp()
+    {
+        assertEquals(1999, PricingEngine.toCents(new BigDecimal("19.99")));
+        assertEquals(1000, PricingEngine.toCents(new BigDecimal("9.995")));
+        assertEquals(500, PricingEngine.toCents(new BigDecimal("5")));
+    }
+
+    @Test
+    public void lineTotal_shouldRoundTheDiscount_toWholeCents()
+    {
+        // 3 x 3.33 = 9.99, 15% of that is 1.4985 -> 1.50
+        assertEquals(849, PricingEngine.lineTotal(333, 3, 1500));
+    }
+
+    @Test
+    public void lineTotal_shouldThrow_onOverflow()
+    {
+        assertThrows(ArithmeticException.class, () -> PricingEngine.lineTotal(Long.MAX_VALUE / 2, 3, 0));
+    }
+
+    @Test
+    public void price_shouldFill_lineTotalsAndTheCartTotal()
+    {
+        // arrange
+        ShoppingCart cart = new ShoppingCart();
+        cart.add(item(1, "499.99", 2, "0"));
+        cart.add(item(2, "19.99", 1, "0.10"));
+
+        // act
+        PricingEngine.price(cart);
+
+        // assert
+        assertEquals(new BigDecimal("999.98"), cart.get(1).getLineTotal());
+        assertEquals(new BigDecimal("17.99"), cart.get(2).getLineTotal(), "Because 10% of 19.99 rounds to 2.00.");
+        assertEquals(new BigDecimal("1017.97"), cart.getTotal());
+    }
+
+    private static ShoppingCartItem item(int productId, String price, int quantity, String discountPercent)
+    {
+        ShoppingCartItem item = new ShoppingCartItem();
+        item.setProduct(new Product(productId, "Product " + productId, new BigDecimal(price), 1, "", "", 10, false, ""));
+        item.setQuantity(quantity);
+        item.setDiscountPercent(new BigDecimal(discountPercent));
+        return item;
+    }
+}
@@ -0,0 +1,96 @@
+package org.yearup.pricing;
+
+import org.junit.jupiter.api.Test;
+import org.yearup.models.Product;
+import org.yearup.models.Promotion;
+import org.yearup.models.ShoppingCart;
+import org.yearup.models.ShoppingCartItem;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PromotionEngineTest
+{
+    private final Product shirt = new Product(9, "Shirt", new BigDecimal("20.00"), 2, "", "Red", 50, false, "");
+    private final AtomicInteger loads = new AtomicInteger();
+    private final List<Runnable> backgroundRefreshes = new ArrayList<>();
+
+    @Test
+    public void dueIndex_shouldStillBeUsed_whileItIsRefreshedInTheBackground()
+    {
+        // arrange
+        PromotionEngine engine = new PromotionEngine(() -> {
+            loads.incrementAndGet();
+            return List.of(halfOff());
+        }, 0, backgroundRefreshes::add);
+        engine.apply(cart());
+
+        // act
+        ShoppingCart actual = cart();
+        engine.apply(actual);
+        engine.apply(cart());
+
+        // assert
+        assertEquals(new BigDecimal("10.00"), actual.getTotal());
+        assertEquals(1, loads.get(), "Because the request did not wait for the refresh.");
+        assertEquals(1, backgroundRefreshes.size(), "Because one refresh at a time is queued.");
+    }
+
+    @Test
+    public void failedRefresh_shouldKeep_theLastGoodIndex_andBackOff()
+    {
+        // arrange
+        PromotionEngine engine = new PromotionEngine(() -> {
+            if (loads.incrementAndGet() > 1)
+                throw new IllegalStateException("Connection refused");
+            return List.of(halfOff());
+        }, 0, Runnable::run);
+        engine.apply(cart());
+
+        // act
+        engine.apply(cart());
+        ShoppingCart actual = cart();
+        engine.apply(actual);
+
+        // assert
+        assertEquals(new BigDecimal("10.00"), actual.getTotal(), "Because the promotions loaded before are still used.");
+        assertEquals(2, loads.get(), "Because the next attempt waits for the backoff.");
+    }
+
+    @Test
+    public void failedFirstLoad_shouldNotBeRetried_onEveryRequest()
+    {
+        // arrange
+        PromotionEngine engine = new PromotionEngine(() -> {
+            loads.incrementAndGet();
+            throw new IllegalStateException("Connection refused");
+        }, 60, Runnable::run);
+
+        // act
+        assertThrows(IllegalStateException.class, () -> engine.apply(cart()));
+        assertThrows(IllegalStateException.class, () -> engine.apply(cart()));
+
+        // assert
+        assertEquals(1, loads.get());
+    }
+
+    private Promotion halfOff()
+    {
+        return new Promotion(1, "Half off", null, 2, null, null, new BigDecimal("0.50"), null, null);
+    }
+
+    private ShoppingCart cart()
+    {
+        ShoppingCartItem item = new ShoppingCartItem();
+        item.setProduct(shirt);
+        item.setQuantity(1);
+        ShoppingCart cart = new ShoppingCart();
+        cart.add(item);
+        return cart;
+    }
+}
@@ -0,0 +1,102 @@
+package org.yearup.pricing;
+
+import org.junit.jupiter.api.Test;
+import org.yearup.models.Product;
+import org.yearup.models.Promotion;
+import org.yearup.models.ShoppingCart;
+import org.yearup.models.ShoppingCartItem;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class PromotionIndexTest
+{
+    private final Product phone = new Product(1, "Smartphone", new BigDecimal("100.00"), 1, "", "Black", 50, false, "");
+    private final Product shirt = new Product(9, "Shirt", new BigDecimal("20.00"), 2, "", "Red", 50, false, "");
+
+    @Test
+    public void best_shouldPick_theBiggestApplicableDiscount()
+    {
+        // arrange
+        PromotionIndex index = PromotionIndex.compile(List.of(
+                promotion(1, null, 1, null, null, "0.10"),
+                promotion(2, 1, null, null, null, "0.05"),
+                promotion(3, null, null, "black", null, "0.20")));
+
+        // act
+        var actual = index.best(phone, 10000, System.currentTimeMillis());
+
+        // assert
+        assertEquals(3, actual.getPromotionId(), "Because subcategory rules match case-insensitively and 20% beats the rest.");
+    }
+
+    @Test
+    public void best_shouldSkip_rulesBelowTheCartThreshold()
+    {
+        // arrange
+        PromotionIndex index = PromotionIndex.compile(List.of(
+                promotion(1, null, null, null, "150.00", "0.15"),
+                promotion(2, null, 1, null, null, "0.05")));
+
+        // act + assert
+        assertEquals(2, index.best(phone, 10000, System.currentTimeMillis()).getPromotionId());
+        assertEquals(1, index.best(phone, 15000, System.currentTimeMillis()).getPromotionId());
+    }
+
+    @Test
+    public void best_shouldIgnore_rulesOutsideTheirWindow()
+    {
+        // arrange
+        Promotion expired = promotion(1, null, 2, null, null, "0.50");
+        expired.setEndsAt(LocalDateTime.now().minusDays(1));
+        Promotion upcoming = promotion(2, null, 2, null, null, "0.50");
+        upcoming.setStartsAt(LocalDateTime.now().plusDays(1));
+        PromotionIndex index = PromotionIndex.compile(List.of(expired, upcoming));
+
+        // act + assert
+        assertNull(index.best(shirt, 2000, System.currentTimeMillis()));
+    }
+
+    @Test
+    public void apply_shouldDiscount_onlyMatchingLines()
+    {
+        // arrange
+        List<Promotion> promotions = new ArrayList<>();
+        promotions.add(promotion(1, null, 2, null, null, "0.25"));
+        for (int i = 0; i < 1000; i++)
+            promotions.add(promotion(100 + i, 1000 + i, null, null, null, "0.90"));
+        PromotionEngine engine = new PromotionEngine(() -> promotions, 60);
+
+        ShoppingCart cart = new ShoppingCart();
+        cart.add(item(phone, 1));
+        cart.add(item(shirt, 2));
+
+        // act
+        engine.apply(cart);
+
+        // assert
+        assertEquals(new BigDecimal("100.00"), cart.get(1).getLineTotal());
+        assertEquals(new BigDecimal("30.00"), cart.get(9).getLineTotal(), "Because 25% is taken off 2 x 20.00.");
+        assertEquals(new BigDecimal("130.00"), cart.getTotal());
+    }
+
+    private static Promotion promotion(int id, Integer productId, Integer categoryId, String subCategory,
+                                       String minCartTotal, String discountPercent)
+    {
+        return new Promotion(id, "Promotion " + id, productId, categoryId, subCategory,
+                minCartTotal == null ? null : new BigDecimal(minCartTotal), new BigDecimal(discountPercent), null, null);
+    }
+
+    private static ShoppingCartItem item(Product product, int quantity)
+    {
+        ShoppingCartItem item = new ShoppingCartItem();
+        item.setProduct(product);
+        item.setQuantity(quantity);
+        return item;
+    }
+}
@@ -0,0 +1,89 @@
+package org.yearup.security;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GuestCartCodecTest
+{
+    private final GuestCartCodec codec = new GuestCartCodec(key("first"), Duration.ofDays(30));
+
+    @Test
+    public void decode_shouldReturn_theEncodedCart()
+    {
+        // arrange
+        Map<Integer, Integer> cart = Map.of(3, 2, 12, 1, 4500, 999);
+
+        // act
+        var actual = codec.decode(codec.encode(cart));
+
+        // assert
+        assertEquals(cart, actual);
+    }
+
+    @Test
+    public void encode_shouldStay_compact()
+    {
+        // arrange
+        Map<Integer, Integer> cart = new HashMap<>();
+        for (int productId = 1; productId <= 100; productId++)
+            cart.put(productId * 3, 2);
+
+        // act
+        String actual = codec.encode(cart);
+
+        // assert
+        assertTrue(actual.length() < 320, "Because a full cart must still fit in a request header, was " + actual.length());
+    }
+
+    @Test
+    public void decode_shouldReject_aChangedToken()
+    {
+        // arrange
+        byte[] token = Base64.getUrlDecoder().decode(codec.encode(Map.of(3, 2)));
+        token[token.length - 17]++;
+        String tampered = Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+
+        // act & assert
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(tampered));
+    }
+
+    @Test
+    public void decode_shouldReject_aTokenSignedWithAnotherKey()
+    {
+        // arrange
+        String token = new GuestCartCodec(key("second"), Duration.ofDays(30)).encode(Map.of(3, 2));
+
+        // act & assert
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(token));
+    }
+
+    @Test
+    public void decode_shouldReturnAnEmptyCart_forAnExpiredToken()
+    {
+        // arrange
+        GuestCartCodec expiring = new GuestCartCodec(key("first"), Duration.ZERO);
+
+        // act
+        var actual = expiring.decode(expiring.encode(Map.of(3, 2)));
+
+        // assert
+        assertTrue(actual.isEmpty());
+    }
+
+    private static SecretKeySpec key(String seed)
+    {
+        byte[] bytes = new byte[32];
+        byte[] seedBytes = seed.getBytes();
+        System.arraycopy(seedBytes, 0, bytes, 0, seedBytes.length);
+        return new SecretKeySpec(bytes, "HmacSHA256");
+    }
+}